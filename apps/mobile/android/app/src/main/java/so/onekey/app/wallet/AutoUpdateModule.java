@@ -4,7 +4,6 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.icu.text.SimpleDateFormat;
 import android.os.Build;
 import android.content.Intent;
 import android.net.Uri;
@@ -14,20 +13,13 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.File;
-import java.io.FileReader;
-import java.io.InputStreamReader;
-import java.security.MessageDigest;
-import java.util.Date;
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-import com.betomorrow.rnfilelogger.FileLoggerModule;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -38,15 +30,13 @@ import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import okhttp3.Call;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-import okio.Buffer;
-import okio.BufferedSink;
-import okio.BufferedSource;
-import okio.Okio;
+import so.onekey.app.wallet.update.DigestRecord;
+import so.onekey.app.wallet.update.FileHasher;
+import so.onekey.app.wallet.update.ProgressReporter;
+import so.onekey.app.wallet.update.SegmentedDownload;
+import so.onekey.app.wallet.update.SignatureCache;
+import so.onekey.app.wallet.update.UpdateHttpClient;
+import so.onekey.app.wallet.update.UpdateScheduler;
 
 public class AutoUpdateModule extends ReactContextBaseJavaModule {
     private static final String CHANNEL_ID = "updateApp";
@@ -54,15 +44,13 @@ public class AutoUpdateModule extends ReactContextBaseJavaModule {
     private NotificationManagerCompat mNotifyManager;
     private NotificationCompat.Builder mBuilder;
     private ReactApplicationContext rContext;
-    private FileLoggerModule fileLogger;
-    private Thread rThread;
-    private boolean isDownloading = false;
+    private volatile UpdateScheduler.Job currentDownloadJob;
 
     public AutoUpdateModule(ReactApplicationContext context) {
         super(context);
         rContext = context;
         mNotifyManager = NotificationManagerCompat.from(this.rContext.getApplicationContext());
-        fileLogger = new FileLoggerModule(getReactApplicationContext());
+        NativeLogger.init(getReactApplicationContext());
     }
 
     @Override
@@ -75,67 +63,64 @@ public class AutoUpdateModule extends ReactContextBaseJavaModule {
     }
 
     public void log(String name, String msg) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-        String currentTime = sdf.format(new Date());
-        fileLogger.write(1, currentTime + " | INFO : app => native => AutoUpdate:" + name + ": " + msg);
+        NativeLogger.info("AutoUpdate", name, msg);
     }
 
-    private void sendDownloadError(Exception e, Promise promise) {
-        isDownloading = false;
+    private void sendDownloadError(Exception e) {
         WritableMap params = Arguments.createMap();
         params.putString("message", e.getMessage());
         sendEvent("update/error", params);
-        promise.reject(e);
     }
 
     private File buildFile(String path) {
         return new File(path.replace("file:///", "/"));
     }
 
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
-        }
-        return result.toString();
-    }
-
-    public boolean checkFilePackage(File file, Promise promise) {
+    // Null when the APK belongs to this app and matches its signed SHA256, otherwise the error to reject with
+    private Exception checkFilePackage(File file) {
         PackageManager pm = getReactApplicationContext().getPackageManager();
         PackageInfo info = pm.getPackageArchiveInfo(file.getAbsolutePath(), 0);
         String appPackageName = getReactApplicationContext().getPackageName();
         if (info != null && info.packageName != null) {
             log("checkFilePackage", info.packageName + " " + appPackageName + " " + String.valueOf(info.packageName.equals(appPackageName)));
             if (!info.packageName.equals(appPackageName)) {
-                promise.reject(new Exception("PACKAGE_NAME_MISMATCH"));
-                return false;
+                return new Exception("PACKAGE_NAME_MISMATCH");
             }
         }
 
         // Verify SHA256
         try {
             String extractedSha256 = getSha256(file.getAbsolutePath());
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
-                byte[] buffer = new byte[8192];
-                int count;
-                while ((count = bis.read(buffer)) > 0) {
-                    digest.update(buffer, 0, count);
-                }
+            // Reuse the digest computed during download when the APK is unchanged since
+            String calculatedSha256 = DigestRecord.readIfFresh(file);
+            if (calculatedSha256 == null) {
+                calculatedSha256 = FileHasher.sha256(file);
             }
-            String calculatedSha256 = bytesToHex(digest.digest());
 
             log("calSha256 ", calculatedSha256 + " " + extractedSha256 + " " + String.valueOf(calculatedSha256.equals(extractedSha256)));
             if (!calculatedSha256.equals(extractedSha256)) {
-                promise.reject(new Exception("UPDATE_INSTALLATION_NOT_SAFE_ALERT_TEXT"));
-                return false;
+                return new Exception("UPDATE_INSTALLATION_NOT_SAFE_ALERT_TEXT");
             }
             
-            return true;
+            return null;
         } catch (Exception e) {
-            promise.reject(e);
-            return false;
+            return e;
+        }
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < content.length) {
+                int read = fis.read(content, offset, content.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += read;
+            }
         }
+        return content;
     }
 
     public String getSha256(final String filePath) {
@@ -143,28 +128,16 @@ public class AutoUpdateModule extends ReactContextBaseJavaModule {
         if (!ascFile.exists()) {
             return "";
         }
-        String cacheFilePath = getReactApplicationContext().getCacheDir().getAbsolutePath() + "/gpg-verification-temp";
-        File cacheFile = new File(cacheFilePath);
-        if (cacheFile.exists()) {
-            cacheFile.delete();
-        }
         String ascFileContentString = "";
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(ascFile));
-            StringBuilder content = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
-            }
-            reader.close();
-            ascFileContentString = content.toString();
+            ascFileContentString = new String(readBytes(ascFile), StandardCharsets.UTF_8);
         } catch (IOException e) {
             log("AutoUpdateModule", "Error reading ASC file: " + e.getMessage());
             return "";
         }
         String extractedSha256 = "";
         try {
-            extractedSha256 = Verification.extractedSha256FromVerifyAscFile(ascFileContentString, cacheFilePath);
+            extractedSha256 = Verification.extractedSha256FromVerifyAscFile(rContext, ascFileContentString);
             log("extractedSha256", extractedSha256);
         } catch (Exception e) {
             log("AutoUpdateModule", "Error extracting SHA256: " + e.getMessage());
@@ -209,94 +182,88 @@ public class AutoUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void verifyASC(final ReadableMap map, final Promise promise) {
-        String filePath = map.getString("filePath");
-        String downloadUrl = map.getString("downloadUrl");
-        // Verify GPG signature
-        // Extract SHA256 from the verified content
-        try {
-            String extractedSha256 = getSha256(filePath);
-            if (extractedSha256.isEmpty()) {
+        BundleUpdateModule.runOnUpdateScheduler(UpdateScheduler.JobType.VERIFY, "verifyASC", promise, () -> {
+            String filePath = map.getString("filePath");
+            String downloadUrl = map.getString("downloadUrl");
+            // Verify GPG signature
+            // Extract SHA256 from the verified content
+            try {
+                String extractedSha256 = getSha256(filePath);
+                if (extractedSha256.isEmpty()) {
+                    promise.reject(new Exception("UPDATE_SIGNATURE_VERIFICATION_FAILED_ALERT_TEXT"));
+                    return;
+                }
+                promise.resolve(null);
+            } catch (Exception e) {
+                log("verifyASC", "Error verifying ASC file: " + e.getMessage());
                 promise.reject(new Exception("UPDATE_SIGNATURE_VERIFICATION_FAILED_ALERT_TEXT"));
-                return;
             }
-            promise.resolve(null);
-        } catch (Exception e) {
-            log("verifyASC", "Error verifying ASC file: " + e.getMessage());
-            promise.reject(new Exception("UPDATE_SIGNATURE_VERIFICATION_FAILED_ALERT_TEXT"));
-        }
-        promise.resolve(null);
+        });
     }
 
     @ReactMethod
     public void downloadASC(final ReadableMap map, final Promise promise) {
-         String url = map.getString("downloadUrl");
-         String filePath = map.getString("filePath");
-         // Fetch the signature file
-         String ascFileUrl = url + ".SHA256SUMS.asc";
-         String ascFilePath = filePath + ".SHA256SUMS.asc";
-         promise.resolve(null);
-         try {
-            OkHttpClient client = new OkHttpClient();
-            Request request = new Request.Builder()
-                .url(ascFileUrl)
-                .build();
-             Response response = client.newCall(request).execute();
-             if (!response.isSuccessful()) {
-                 promise.reject(new IOException(String.valueOf(response.code())));
-                 return;
-             }
-             
-             StringBuilder ascFileContent = new StringBuilder();
-             String line = "";
-             try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body().byteStream()))) {
-                 while ((line = reader.readLine()) != null) {
-                     ascFileContent.append(line).append("\n");
-                 }
-             }
+        BundleUpdateModule.runOnUpdateScheduler(UpdateScheduler.JobType.METADATA, "downloadASC", promise, () -> {
+             String url = map.getString("downloadUrl");
+             String filePath = map.getString("filePath");
+             // Fetch the signature file
+             String ascFileUrl = url + ".SHA256SUMS.asc";
+             String ascFilePath = filePath + ".SHA256SUMS.asc";
+             try {
+                // Revalidated against the last copy, an unchanged signature comes back as a 304
+                String ascFileContentString = SignatureCache.fetch(rContext, UpdateHttpClient.get(), ascFileUrl);
+                if (ascFileContentString.isEmpty()) {
+                    promise.reject(new Exception(""));
+                    return;
+                }
+                log("ascFileContent", ascFileContentString);
+                // Write the ASC file content to the specified path, unless it is already there
+                File ascFile = buildFile(ascFilePath);
+                byte[] ascFileBytes = ascFileContentString.getBytes(StandardCharsets.UTF_8);
+                if (!ascFile.exists() || ascFile.length() != ascFileBytes.length
+                        || !Arrays.equals(readBytes(ascFile), ascFileBytes)) {
+                    File tmpFile = buildFile(ascFilePath + ".tmp");
+                    try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+                        fos.write(ascFileBytes);
+                    }
+                    if (!tmpFile.renameTo(ascFile)) {
+                        tmpFile.delete();
+                        throw new IOException("Failed to write " + ascFile.getName());
+                    }
+                }
 
-             String ascFileContentString = ascFileContent.toString();
-             if (ascFileContentString.isEmpty()) {
-                 promise.reject(new Exception(""));
-                 return;
+                promise.resolve(null);
+             } catch (Exception e) {
+                log("downloadASC", "Error writing ASC file: " + e.getMessage());
+                promise.reject(e);
              }
-             log("ascFileContent", ascFileContentString);
-            // Write the ASC file content to the specified path
-            File ascFile = buildFile(ascFilePath);
-            if (ascFile.exists()) {
-                ascFile.delete();
-            }
-            
-            try (FileOutputStream fos = new FileOutputStream(ascFile)) {
-                fos.write(ascFileContentString.getBytes());
-            }
-            
-            promise.resolve(null);
-         } catch (Exception e) {
-            log("downloadASC", "Error writing ASC file: " + e.getMessage());
-            promise.reject(e);
-         }
+        });
     }
 
     @ReactMethod void verifyAPK(final ReadableMap map, final Promise promise) {
-        String filePath = map.getString("filePath");
-        File downloadedFile = buildFile(filePath);
-        if (!downloadedFile.exists()) {
-            promise.reject(new Exception("NOT_FOUND_PACKAGE"));
-        }
-        boolean isValidAPK = this.checkFilePackage(downloadedFile, promise);
-        if (isValidAPK) {
+        BundleUpdateModule.runOnUpdateScheduler(UpdateScheduler.JobType.VERIFY, "verifyAPK", promise, () -> {
+            String filePath = map.getString("filePath");
+            File downloadedFile = buildFile(filePath);
+            if (!downloadedFile.exists()) {
+                promise.reject(new Exception("NOT_FOUND_PACKAGE"));
+                return;
+            }
+            Exception error = this.checkFilePackage(downloadedFile);
+            if (error != null) {
+                promise.reject(error);
+                return;
+            }
             promise.resolve(null);
-        } else {
-            promise.reject(new Exception("UPDATE_INSTALLATION_NOT_SAFE_ALERT_TEXT"));
-        }
+        });
     }
 
     @ReactMethod
     public void clearCache(final Promise promise) {
-        if (this.rThread != null) {
-            this.rThread.interrupt();
+        UpdateScheduler.Job job = this.currentDownloadJob;
+        if (job != null) {
+            job.cancel();
+            this.currentDownloadJob = null;
         }
-        this.isDownloading = false;
         promise.resolve(null);
     }
 
@@ -307,144 +274,97 @@ public class AutoUpdateModule extends ReactContextBaseJavaModule {
         String notificationTitle = map.getString("notificationTitle");
         long fileSize = getFileSize(map);
         log("downloadAPK", "fileSize: " + fileSize);
-        if (this.isDownloading) {
-            return;
-        }
-        this.isDownloading = true;
-        this.rThread = new Thread(new Runnable() {
-            private Call call;
-            boolean checkInterrupt() {
-                boolean isInterrupted = Thread.currentThread().isInterrupted();
-                if (isInterrupted && call != null) {
-                    this.call.cancel();
-                }
-                return isInterrupted;
-            };
-
-            public void run() {
-                File downloadedFile = buildFile(filePath);
-                if (downloadedFile.exists()) {
-                    downloadedFile.delete();
-                }
-
-                mBuilder = new NotificationCompat.Builder(rContext.getApplicationContext(), CHANNEL_ID)
-                        .setContentTitle(notificationTitle)
-                        .setContentText("")
-                        .setOngoing(true)
-                        .setPriority(NotificationCompat.PRIORITY_LOW)
-                        .setSmallIcon(R.drawable.ic_notification);
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "updateApp", NotificationManager.IMPORTANCE_DEFAULT);
-                    mNotifyManager.createNotificationChannel(channel);
-                }
-
-                Request request = new Request.Builder().url(url).build();
-                OkHttpClient client = new OkHttpClient.Builder()
-                        .connectTimeout(10, TimeUnit.SECONDS)
-                        .build();
-                Response response = null;
-                this.call = client.newCall(request);
-                try {
-                    response = this.call.execute();
-                } catch (IOException e) {
-                    sendDownloadError(e, promise);
-                    return;
-                }
-
-                if (!response.isSuccessful()) {
-                    sendDownloadError(new Exception(String.valueOf(response.code())), promise);
-                    return;
-                }
+        // A second request for the same file joins the running download and settles with it
+        this.currentDownloadJob = BundleUpdateModule.getUpdateScheduler().submit(UpdateScheduler.JobType.DOWNLOAD, "downloadAPK", "apk:" + filePath, token -> {
+            File downloadedFile = buildFile(filePath);
+            if (downloadedFile.exists()) {
+                downloadedFile.delete();
+            }
+            DigestRecord.delete(downloadedFile);
+
+            mBuilder = new NotificationCompat.Builder(rContext.getApplicationContext(), CHANNEL_ID)
+                    .setContentTitle(notificationTitle)
+                    .setContentText("")
+                    .setOngoing(true)
+                    .setPriority(NotificationCompat.PRIORITY_LOW)
+                    .setSmallIcon(R.drawable.ic_notification);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "updateApp", NotificationManager.IMPORTANCE_DEFAULT);
+                mNotifyManager.createNotificationChannel(channel);
+            }
 
-                ResponseBody body = response.body();
-                long contentLength = fileSize > 0 ? fileSize : body.contentLength();
-                BufferedSource source = body.source();
+            SegmentedDownload download = new SegmentedDownload(UpdateHttpClient.segmented(), url, downloadedFile);
+            download.setSizeHint(fileSize);
+            token.onCancel(download::cancel);
 
-                BufferedSink sink = null;
-                try {
-                    sink = Okio.buffer(Okio.sink(downloadedFile));
-                } catch (FileNotFoundException e) {
-                    sendDownloadError(e, promise);
-                    return;
-                }
-                Buffer sinkBuffer = sink.buffer();
-
-                long totalBytesRead = 0;
-                int bufferSize = 8 * 1024;
-                sendEvent("update/start", null);
-                int prevProgress = 0;
-                try {
-                    for (long bytesRead; (bytesRead = source.read(sinkBuffer, bufferSize)) != -1;) {
-                        try {
-                            sink.emit();
-                        } catch (IOException e) {
-                            sendDownloadError(e, promise);
-                            return;
-                        }
-                        totalBytesRead += bytesRead;
-                        int progress = (int) ((totalBytesRead * 100) / contentLength);
-                        if (prevProgress != progress) {
-                            try {
-                                WritableMap params = Arguments.createMap();
-                                params.putInt("progress", progress);
-                                sendEvent("update/downloading", params);
-                                log("update/progress", progress + "");
-                            } catch (Exception e) {
-                                sendDownloadError(e, promise);
-                                return;
-                            }
-                            mBuilder.setProgress(100, progress, false);
-                            notifyNotification(NOTIFICATION_ID, mBuilder);
-                            prevProgress = progress;
-                            if (this.checkInterrupt()) {
-                                return;
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    sendDownloadError(e, promise);
-                    return;
-                }
-                try {
-                    sink.flush();
-                    sink.close();
-                    source.close();
-                } catch (IOException e) {
-                    sendDownloadError(e, promise);
+            sendEvent("update/start", null);
+            final int[] loggedProgress = {-1};
+            // Coalesced, and delivered off the download thread together with the notification
+            ProgressReporter progressReporter = new ProgressReporter(fileSize, progress -> {
+                if (progress.totalBytes <= 0) {
                     return;
                 }
-                log("downloadAPK", "downloadPackage: Download completed");
-                sendEvent("update/downloaded", null);
-
-                if (this.checkInterrupt()) {
-                    return;
+                int percent = (int) progress.percent;
+                WritableMap params = Arguments.createMap();
+                params.putInt("progress", percent);
+                params.putDouble("bytesWritten", progress.bytesWritten);
+                params.putDouble("totalBytes", progress.totalBytes);
+                params.putDouble("bytesPerSecond", progress.bytesPerSecond);
+                params.putDouble("etaSeconds", progress.etaSeconds);
+                sendEvent("update/downloading", params);
+                if (percent / 10 != loggedProgress[0]) {
+                    log("update/progress", percent + "% " + progress.bytesPerSecond + "B/s eta " + progress.etaSeconds + "s");
+                    loggedProgress[0] = percent / 10;
                 }
-                isDownloading = false;
-
-                // Intent installIntent = new Intent(Intent.ACTION_VIEW);
-
-                // boolean isValidAPK = checkFilePackage(downloadedFile, url, promise);
-                // Uri apkUri = OnekeyFileProvider.getUriForFile(rContext, downloadedFile);
-                // installIntent.setDataAndType(apkUri, "application/vnd.android.package-archive");
-                // installIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                // installIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                // PendingIntent pendingIntent = isValidAPK ? PendingIntent.getActivity(rContext, 0, installIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE)
-                //         : null;
-
-                mNotifyManager.cancel(NOTIFICATION_ID);
-                mBuilder.setContentText("")
-                        .setProgress(0, 0, false)
-                        .setOngoing(false)
-                        // .setContentIntent(pendingIntent)
-                        .setAutoCancel(true);
-
+                mBuilder.setProgress(100, percent, false);
                 notifyNotification(NOTIFICATION_ID, mBuilder);
-                log("downloadAPKFailed", "downloadPackage: notifyNotification done");
+            });
+            try {
+                download.run(progressReporter);
+            } catch (IOException e) {
+                token.throwIfCancelled();
+                sendDownloadError(e);
+                throw e;
+            } finally {
+                progressReporter.flush();
+            }
+            if (!download.promote()) {
+                IOException e = new IOException("Failed to move downloaded package into place");
+                sendDownloadError(e);
+                throw e;
+            }
+            DigestRecord.write(downloadedFile, download.getSha256());
+            log("downloadAPK", "downloadPackage: Download completed");
+            sendEvent("update/downloaded", null);
+            token.throwIfCancelled();
+
+            // Intent installIntent = new Intent(Intent.ACTION_VIEW);
+
+            // boolean isValidAPK = checkFilePackage(downloadedFile, url, promise);
+            // Uri apkUri = OnekeyFileProvider.getUriForFile(rContext, downloadedFile);
+            // installIntent.setDataAndType(apkUri, "application/vnd.android.package-archive");
+            // installIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            // installIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            // PendingIntent pendingIntent = isValidAPK ? PendingIntent.getActivity(rContext, 0, installIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE)
+            //         : null;
+
+            mNotifyManager.cancel(NOTIFICATION_ID);
+            mBuilder.setContentText("")
+                    .setProgress(0, 0, false)
+                    .setOngoing(false)
+                    // .setContentIntent(pendingIntent)
+                    .setAutoCancel(true);
+
+            notifyNotification(NOTIFICATION_ID, mBuilder);
+            log("downloadAPKFailed", "downloadPackage: notifyNotification done");
+        }, (job, error) -> {
+            if (error == null) {
                 promise.resolve(null);
+            } else {
+                promise.reject(error);
             }
         });
-        this.rThread.start();
     }
 
 
@@ -462,26 +382,33 @@ public class AutoUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void installAPK(final ReadableMap map, final Promise promise) {
-        String filePath = map.getString("filePath");
-        File file = buildFile(filePath);
-        if (!this.checkFilePackage(file, promise)) {
-            promise.reject("NOT_FOUND_PACKAGE");
-            return;
-        }
-        try {
-            Intent intent = new Intent(Intent.ACTION_VIEW);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                Uri apkUri = OnekeyFileProvider.getUriForFile(rContext, file);
-                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                intent.setDataAndType(apkUri, "application/vnd.android.package-archive");
-            } else {
-                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                intent.setDataAndType(Uri.fromFile(file), "application/vnd.android.package-archive");
+        BundleUpdateModule.runOnUpdateScheduler(UpdateScheduler.JobType.INSTALL, "installAPK", promise, () -> {
+            String filePath = map.getString("filePath");
+            File file = buildFile(filePath);
+            if (!file.exists()) {
+                promise.reject("NOT_FOUND_PACKAGE");
+                return;
             }
-            promise.resolve(null);
-            rContext.getCurrentActivity().startActivity(intent);
-        } catch (Exception e) {
-            promise.reject(e);
-        }
+            Exception error = this.checkFilePackage(file);
+            if (error != null) {
+                promise.reject(error);
+                return;
+            }
+            try {
+                Intent intent = new Intent(Intent.ACTION_VIEW);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    Uri apkUri = OnekeyFileProvider.getUriForFile(rContext, file);
+                    intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    intent.setDataAndType(apkUri, "application/vnd.android.package-archive");
+                } else {
+                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                    intent.setDataAndType(Uri.fromFile(file), "application/vnd.android.package-archive");
+                }
+                rContext.getCurrentActivity().startActivity(intent);
+                promise.resolve(null);
+            } catch (Exception e) {
+                promise.reject(e);
+            }
+        });
     }
 }
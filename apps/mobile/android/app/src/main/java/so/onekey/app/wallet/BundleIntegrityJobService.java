@@ -0,0 +1,135 @@
+package so.onekey.app.wallet;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import so.onekey.app.wallet.update.IntegrityJournal;
+import so.onekey.app.wallet.update.VerifiedBundleCache;
+
+/**
+ * Re-verifies the active bundle and the fallback bundles in the background while the device is
+ * idle or charging, so launches can rely on the cached verification state. A bundle whose files
+ * do not match its signed metadata is recorded as untrusted in the {@link IntegrityJournal} and
+ * refused on the next launch. When a bundle cannot be checked at all, nothing is recorded and the
+ * job is rescheduled.
+ */
+public class BundleIntegrityJobService extends JobService {
+    private static final String TAG = "BundleIntegrityJob";
+    private static final int JOB_ID_IDLE = 0x0B0E1;
+    private static final int JOB_ID_CHARGING = 0x0B0E2;
+    private static final long PERIOD_MS = 24 * 60 * 60 * 1000L;
+    // Both jobs may fire on the same day, the second one is skipped
+    private static final long MIN_RUN_INTERVAL_MS = 12 * 60 * 60 * 1000L;
+
+    // Replaced per run, so a stop of an old run cannot leak into the next one
+    private volatile AtomicBoolean stopFlag = new AtomicBoolean();
+
+    public static void schedule(Context context) {
+        try {
+            JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            if (jobScheduler == null) {
+                return;
+            }
+            ComponentName component = new ComponentName(context, BundleIntegrityJobService.class);
+            if (jobScheduler.getPendingJob(JOB_ID_IDLE) == null) {
+                jobScheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, component)
+                        .setRequiresDeviceIdle(true)
+                        .setPeriodic(PERIOD_MS)
+                        .build());
+            }
+            if (jobScheduler.getPendingJob(JOB_ID_CHARGING) == null) {
+                jobScheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, component)
+                        .setRequiresCharging(true)
+                        .setPeriodic(PERIOD_MS)
+                        .build());
+            }
+        } catch (Exception e) {
+            BundleUpdateModule.staticLog(TAG, "schedule: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (System.currentTimeMillis() - IntegrityJournal.lastRunTime(this) < MIN_RUN_INTERVAL_MS) {
+            return false;
+        }
+        AtomicBoolean runStopped = new AtomicBoolean();
+        stopFlag = runStopped;
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            boolean completed = verifyInstalledBundles(getApplicationContext(), runStopped);
+            jobFinished(params, !completed);
+        }, TAG).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Also stops the running verifier, it checks the flag between files
+        stopFlag.set(true);
+        return true;
+    }
+
+    // Returns false when the job was stopped, or failed, before every bundle was checked.
+    private boolean verifyInstalledBundles(Context context, AtomicBoolean stopped) {
+        String currentBundleVersion = BundleUpdateModule.getCurrentBundleVersion(context);
+        if (currentBundleVersion != null && !currentBundleVersion.isEmpty()) {
+            String signature = BundleUpdateModule.getBundleSignature(context, currentBundleVersion);
+            if (!verifyBundle(context, currentBundleVersion, signature, stopped)) {
+                return false;
+            }
+        }
+        List<Map<String, String>> fallbackUpdateBundleData = BundleUpdateModule.readFallbackUpdateBundleData(context);
+        for (Map<String, String> bundleData : fallbackUpdateBundleData) {
+            String appVersion = bundleData.get("appVersion");
+            String bundleVersion = bundleData.get("bundleVersion");
+            if (appVersion == null || bundleVersion == null) {
+                continue;
+            }
+            if (!verifyBundle(context, appVersion + "-" + bundleVersion, bundleData.get("signature"), stopped)) {
+                return false;
+            }
+        }
+        IntegrityJournal.recordRun(context);
+        return true;
+    }
+
+    private boolean verifyBundle(Context context, String bundleVersion, String signature, AtomicBoolean stopped) {
+        if (stopped.get()) {
+            return false;
+        }
+        if (!new File(BundleUpdateModule.getBundleDir(context), bundleVersion).exists()) {
+            return true;
+        }
+        String failure;
+        try {
+            failure = BundleUpdateModule.verifyInstalledBundle(context, bundleVersion, signature, true, stopped);
+        } catch (Exception e) {
+            // A read or signature check error says nothing about the bundle, try again on the next run
+            BundleUpdateModule.staticLog(TAG, "bundle " + bundleVersion + " could not be verified: " + e.getMessage());
+            return false;
+        }
+        if (stopped.get()) {
+            // The result of an interrupted run is not trustworthy either way
+            return false;
+        }
+        if (failure == null) {
+            IntegrityJournal.record(context, bundleVersion, IntegrityJournal.RESULT_OK, null);
+        } else {
+            BundleUpdateModule.staticLog(TAG, "bundle " + bundleVersion + " failed re-verification: " + failure);
+            IntegrityJournal.record(context, bundleVersion, IntegrityJournal.RESULT_UNTRUSTED, failure);
+            VerifiedBundleCache.invalidate(context, bundleVersion);
+        }
+        return true;
+    }
+}
@@ -5,70 +5,96 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
-import android.util.Log;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import androidx.annotation.Nullable;
-import androidx.annotation.RequiresApi;
 
-import com.betomorrow.rnfilelogger.FileLoggerModule;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
-import java.text.SimpleDateFormat;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import okhttp3.Call;
-import okhttp3.Callback;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import so.onekey.app.wallet.update.AssetStore;
+import so.onekey.app.wallet.update.BundleExtractor;
+import so.onekey.app.wallet.update.BundleStateStore;
+import so.onekey.app.wallet.update.BundleSync;
+import so.onekey.app.wallet.update.BundleTrash;
+import so.onekey.app.wallet.update.DigestRecord;
+import so.onekey.app.wallet.update.FileHasher;
+import so.onekey.app.wallet.update.IntegrityJournal;
+import so.onekey.app.wallet.update.ManifestIndex;
+import so.onekey.app.wallet.update.ManifestJson;
+import so.onekey.app.wallet.update.ParallelVerifier;
+import so.onekey.app.wallet.update.ProgressReporter;
+import so.onekey.app.wallet.update.ResumableDownload;
+import so.onekey.app.wallet.update.SegmentedDownload;
+import so.onekey.app.wallet.update.StreamingDigest;
+import so.onekey.app.wallet.update.UpdateHttpClient;
+import so.onekey.app.wallet.update.UpdateScheduler;
+import so.onekey.app.wallet.update.VerifiedBundleCache;
 
 public class BundleUpdateModule extends ReactContextBaseJavaModule {
     private static final String TAG = "BundleUpdateModule";
-    private static final String PREFS_NAME = "BundleUpdatePrefs";
-    private static final String NATIVE_VERSION_PREFS_NAME = "NativeVersionPrefs";
-    private static final String CURRENT_BUNDLE_VERSION_KEY = "currentBundleVersion";
-    private static FileLoggerModule staticFileLogger;
+    private static final String STATE_FILE_NAME = "onekey-bundle-state.journal";
+    // Where the state lived before BundleStateStore, read once for migration
+    private static final String LEGACY_PREFS_NAME = "BundleUpdatePrefs";
+    private static final String LEGACY_NATIVE_VERSION_PREFS_NAME = "NativeVersionPrefs";
+    private static final String LEGACY_CURRENT_BUNDLE_VERSION_KEY = "currentBundleVersion";
+    private static final String LEGACY_FALLBACK_FILE_NAME = "fallbackUpdateBundleData.json";
+    private static final int MAX_FALLBACK_BUNDLES = 3;
+    // Verification already fans out over ParallelVerifier, two disk jobs keep an install from
+    // waiting behind a long verification
+    private static final int UPDATE_DISK_PARALLELISM = 2;
     private ReactApplicationContext reactContext;
-    private FileLoggerModule fileLogger;
     private OkHttpClient httpClient;
-    private Call currentDownloadCall;
-    private boolean isDownloading = false;
+    private final Map<String, BundleExtractor.Result> verifiedExtractions = new ConcurrentHashMap<>();
+    // Bundle directory -> SHA256 of the full zip it stands for, for bundles rebuilt from a delta
+    private final Map<String, String> patchedBundles = new ConcurrentHashMap<>();
+    private static volatile AssetStore assetStore;
+    private static volatile BundleTrash bundleTrash;
+    private static volatile BundleStateStore bundleStateStore;
+    private static volatile UpdateScheduler updateScheduler;
+    private static final AtomicBoolean replaceRecovered = new AtomicBoolean();
+    private volatile UpdateScheduler.Job currentDownloadJob;
 
     public BundleUpdateModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
-        this.fileLogger = new FileLoggerModule(reactContext);
-        staticFileLogger = this.fileLogger;
-        this.httpClient = new OkHttpClient();
+        NativeLogger.init(reactContext);
+        this.httpClient = UpdateHttpClient.get();
+        recoverInterruptedReplace(reactContext);
+        getUpdateScheduler().submit(UpdateScheduler.JobType.CLEANUP, "scheduleIntegrityJob", null,
+                token -> BundleIntegrityJobService.schedule(reactContext), null);
+        // Directories trashed before the app was killed
+        if (getBundleTrash(reactContext).hasContents()) {
+            scheduleTrashSweep(reactContext);
+        }
     }
 
     @Override
@@ -88,18 +114,11 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
     }
 
     private void log(String method, String message) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-        String currentTime = sdf.format(new Date());
-        fileLogger.write(1, currentTime + " | INFO : app => native => BundleUpdate:" + method + ": " + message);
-        Log.d(TAG, method + ": " + message);
+        staticLog(method, message);
     }
 
     public static void staticLog(String method, String message) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-        String currentTime = sdf.format(new Date());
-        if (staticFileLogger != null) {
-            staticFileLogger.write(1, currentTime + " | INFO : app => native => BundleUpdate:" + method + ": " + message);
-        }
+        NativeLogger.info("BundleUpdate", method, message);
     }
 
     // Static utility methods equivalent to iOS
@@ -132,26 +151,188 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         return bundleDir.getAbsolutePath();
     }
 
+    /** Active bundle, signatures, native version and fallbacks, read from disk once per process. */
+    public static BundleStateStore getBundleStateStore(Context context) {
+        BundleStateStore store = bundleStateStore;
+        if (store == null) {
+            synchronized (BundleUpdateModule.class) {
+                if (bundleStateStore == null) {
+                    BundleStateStore created = new BundleStateStore(new File(context.getFilesDir(), STATE_FILE_NAME));
+                    if (!created.exists()) {
+                        migrateLegacyState(context, created);
+                    }
+                    bundleStateStore = created;
+                }
+                store = bundleStateStore;
+            }
+        }
+        return store;
+    }
+
+    // One-time move from the SharedPreferences files and fallbackUpdateBundleData.json
+    private static void migrateLegacyState(Context context, BundleStateStore store) {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences nativeVersionPrefs = context.getSharedPreferences(LEGACY_NATIVE_VERSION_PREFS_NAME, Context.MODE_PRIVATE);
+        String currentBundle = prefs.getString(LEGACY_CURRENT_BUNDLE_VERSION_KEY, null);
+        String currentSignature = currentBundle != null ? prefs.getString(currentBundle, "") : "";
+        String nativeVersion = nativeVersionPrefs.getString("nativeVersion", "");
+        File legacyFallbackFile = new File(getBundleDir(context), LEGACY_FALLBACK_FILE_NAME);
+        List<BundleStateStore.Fallback> fallbacks = new ArrayList<>();
+        if (legacyFallbackFile.exists()) {
+            try {
+                fallbacks.addAll(readLegacyFallbacks(legacyFallbackFile));
+            } catch (Exception e) {
+                staticLog(TAG, "migrateLegacyState: " + e.getMessage());
+            }
+        }
+        try {
+            store.update(state -> state.withCurrent(currentBundle, currentSignature)
+                    .withNativeVersion(nativeVersion)
+                    .withFallbacks(fallbacks));
+        } catch (IOException e) {
+            // Keep the legacy data, the next launch tries again
+            staticLog(TAG, "migrateLegacyState: " + e.getMessage());
+            return;
+        }
+        prefs.edit().clear().commit();
+        nativeVersionPrefs.edit().clear().commit();
+        legacyFallbackFile.delete();
+    }
+
+    // [{appVersion, bundleVersion, signature}, ...], streamed rather than parsed into a JSONArray
+    private static List<BundleStateStore.Fallback> readLegacyFallbacks(File file) throws IOException {
+        List<BundleStateStore.Fallback> fallbacks = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String appVersion = "";
+                String bundleVersion = "";
+                String signature = "";
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if (name.equals("appVersion")) {
+                        appVersion = reader.nextString();
+                    } else if (name.equals("bundleVersion")) {
+                        bundleVersion = reader.nextString();
+                    } else if (name.equals("signature")) {
+                        signature = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                fallbacks.add(new BundleStateStore.Fallback(appVersion, bundleVersion, signature));
+            }
+            reader.endArray();
+        }
+        return fallbacks;
+    }
+
     public static String getCurrentBundleVersion(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getString(CURRENT_BUNDLE_VERSION_KEY, null);
+        return getBundleStateStore(context).get().currentBundle;
     }
 
     public static void setCurrentBundleVersionAndSignature(Context context, String version, String signature) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String currentVersion = prefs.getString(CURRENT_BUNDLE_VERSION_KEY, "");
-        prefs.edit().putString(CURRENT_BUNDLE_VERSION_KEY, version).putString(version, signature).apply();
-        if (currentVersion != null && !currentVersion.isEmpty()) {
-            prefs.edit().remove(currentVersion).apply();
+        try {
+            getBundleStateStore(context).update(state -> state.withCurrent(version, signature));
+        } catch (IOException e) {
+            staticLog(TAG, "setCurrentBundleVersionAndSignature: " + e.getMessage());
+        }
+    }
+
+    private static File getAssetStoreDir(Context context) {
+        return new File(context.getFilesDir(), "onekey-bundle-store");
+    }
+
+    // Next to the bundle directories, so moving one in is a rename on the same filesystem
+    private static File getTrashDir(Context context) {
+        return new File(context.getFilesDir(), "onekey-bundle-trash");
+    }
+
+    public static BundleTrash getBundleTrash(Context context) {
+        BundleTrash trash = bundleTrash;
+        if (trash == null) {
+            synchronized (BundleUpdateModule.class) {
+                if (bundleTrash == null) {
+                    bundleTrash = new BundleTrash(getTrashDir(context));
+                }
+                trash = bundleTrash;
+            }
+        }
+        return trash;
+    }
+
+    /**
+     * Empties the trash as a cleanup job, then drops the store objects only trashed bundles
+     * linked to. Joins the sweep already queued or running.
+     */
+    public static void scheduleTrashSweep(Context context) {
+        getUpdateScheduler().submit(UpdateScheduler.JobType.CLEANUP, "sweepTrash", "trash", token -> {
+            if (getBundleTrash(context).sweep(token) > 0) {
+                getAssetStore(context).collectGarbage();
+            }
+        }, null);
+    }
+
+    /**
+     * Puts back a bundle that a crash left as {@code <dest>.old} halfway through being replaced,
+     * and trashes the other leftovers of that. Runs once per process, before the current bundle
+     * is first resolved and before any extraction can be queued.
+     */
+    static void recoverInterruptedReplace(Context context) {
+        if (!replaceRecovered.compareAndSet(false, true)) {
+            return;
+        }
+        List<File> leftovers = BundleExtractor.recoverInterruptedReplace(new File(getBundleDir(context)));
+        BundleTrash trash = getBundleTrash(context);
+        for (File leftover : leftovers) {
+            trash.moveToTrash(leftover);
         }
     }
 
+    /** Shared with AutoUpdateModule, so APK and bundle updates queue behind each other. */
+    public static UpdateScheduler getUpdateScheduler() {
+        UpdateScheduler scheduler = updateScheduler;
+        if (scheduler == null) {
+            synchronized (BundleUpdateModule.class) {
+                if (updateScheduler == null) {
+                    updateScheduler = new UpdateScheduler(UPDATE_DISK_PARALLELISM,
+                            (jobId, message) -> staticLog("UpdateScheduler", jobId + " " + message));
+                }
+                scheduler = updateScheduler;
+            }
+        }
+        return scheduler;
+    }
+
+    public static AssetStore getAssetStore(Context context) {
+        AssetStore store = assetStore;
+        if (store == null) {
+            synchronized (BundleUpdateModule.class) {
+                if (assetStore == null) {
+                    assetStore = new AssetStore(getAssetStoreDir(context));
+                }
+                store = assetStore;
+            }
+        }
+        return store;
+    }
+
+    public static String getBundleSignature(Context context, String bundleVersion) {
+        return getBundleStateStore(context).get().signatureOf(bundleVersion);
+    }
+
+    // Falls back to the built-in bundle, the fallback list is kept
     public static void clearUpdateBundleData(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String version = getCurrentBundleVersion(context);
-        if (version != null) {
-            prefs.edit().clear().apply();
+        try {
+            getBundleStateStore(context).update(state -> state.withCurrent(null, ""));
+        } catch (IOException e) {
+            staticLog(TAG, "clearUpdateBundleData: " + e.getMessage());
         }
+        VerifiedBundleCache.clear(context);
     }
 
     public static String getCurrentBundleDir(Context context, String currentBundleVersion) {
@@ -180,33 +361,24 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         return readFileContent(new File(metadataFilePath));
     }
 
-    public static Map<String, String> parseMetadataJson(String jsonContent) {
-        Map<String, String> metadata = new HashMap<>();
-        try {
-            JSONObject jsonObject = new JSONObject(jsonContent);
-            Iterator<String> keys = jsonObject.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                String value = jsonObject.getString(key);
-                metadata.put(key, value);
-            }
-        } catch (Exception e) {
-            staticLog(TAG, "Error parsing JSON: " + e.getMessage());
-        }
-        return metadata;
-    }
-
-    public static boolean validateMetadataFileSha256(Context context, String currentBundleVersion, String signature) throws IOException {
-        String metadataFilePath = getMetadataFilePath(context, currentBundleVersion);
+    /**
+     * The manifest index of an installed bundle once its metadata.json matches the hash in the
+     * signed payload, null when it does not.
+     */
+    public static ManifestIndex openManifestIndex(Context context, String bundleVersion, String signature) throws IOException {
+        String metadataFilePath = getMetadataFilePath(context, bundleVersion);
         if (metadataFilePath == null) {
             staticLog(TAG, "metadataFilePath is null");
-            return false;
+            return null;
         }
         String extractedSha256 = readMetadataFileSha256(context, signature);
         if (extractedSha256 == null || extractedSha256.isEmpty()) {
-            return false;
+            return null;
+        }
+        if (!extractedSha256.equals(calculateSHA256(metadataFilePath))) {
+            return null;
         }
-        return calculateSHA256(metadataFilePath).equals(extractedSha256);
+        return ManifestIndex.open(new File(metadataFilePath).getParentFile(), extractedSha256);
     }
 
     public static int compareVersion(String version1, String version2) {
@@ -273,23 +445,35 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
                 return null;
             }
             
+            recoverInterruptedReplace(context);
             String bundleDir = getCurrentBundleDir(context, currentBundleVersion);
             if (bundleDir == null || !new File(bundleDir).exists()) {
                 staticLog(TAG, "currentBundleDir does not exist");
                 return null;
             }
+            if (IntegrityJournal.isUntrusted(context, currentBundleVersion)) {
+                staticLog(TAG, "currentBundleVersion failed background verification: " + currentBundleVersion);
+                return null;
+            }
             String signature = null;
             if (currentBundleVersion != null) {
-                SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-                signature = prefs.getString(currentBundleVersion, "");
-                staticLog(TAG, "Retrieved signature for key: " + currentBundleVersion + ", signature: " + signature);
+                signature = getBundleSignature(context, currentBundleVersion);
+                String bundleVersion = currentBundleVersion;
+                String bundleSignature = signature;
+                NativeLogger.debug("BundleUpdate", TAG, () -> "Retrieved signature for key: " + bundleVersion + ", signature: " + bundleSignature);
             }
-            if (!validateMetadataFileSha256(context, currentBundleVersion, signature)) {
-                return null;
-            }
-            Map<String, String> metadata = parseMetadataJson(getMetadataFileContent(context, currentBundleVersion));
+            // Files unchanged since the last full verification, skip the PGP check and the re-hash
+            File metadataFile = new File(bundleDir, "metadata.json");
             String bundleName = "main.jsbundle.hbc";
             File mainJSBundleFile = new File(bundleDir, bundleName);
+            if (VerifiedBundleCache.isVerified(context, currentBundleVersion, signature, metadataFile, mainJSBundleFile)) {
+                staticLog(TAG, "verified state matches, skipping full verification");
+                return mainJSBundleFile.getAbsolutePath();
+            }
+            ManifestIndex index = openManifestIndex(context, currentBundleVersion, signature);
+            if (index == null) {
+                return null;
+            }
             String mainJSBundlePath = mainJSBundleFile.getAbsolutePath();
             staticLog(TAG, "mainJSBundlePath: " + mainJSBundlePath);
             if (!mainJSBundleFile.exists() || mainJSBundlePath == null || mainJSBundlePath.isEmpty()) {
@@ -297,15 +481,14 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
                 return null;
             }
 
-            String sha256 = metadata.get("main.jsbundle.hbc");
-            String calculatedSha256 = calculateSHA256(mainJSBundlePath);
-            staticLog(TAG, "calculatedSha256: " + calculatedSha256 + ", sha256: " + sha256);
-            if (calculatedSha256 == null || sha256 == null) {
-                return null;
-            }
-            if (!calculatedSha256.equals(sha256)) {
+            byte[] calculatedSha256 = FileHasher.digest(mainJSBundleFile);
+            if (!index.matches(bundleName, calculatedSha256)) {
+                staticLog(TAG, "calculatedSha256: " + StreamingDigest.toHex(calculatedSha256) + ", sha256: " + index.digestHex(bundleName));
                 return null;
             }
+            VerifiedBundleCache.markVerified(context, currentBundleVersion, signature,
+                    metadataFile, index.metadataSha256(),
+                    mainJSBundleFile, StreamingDigest.toHex(calculatedSha256));
             return mainJSBundlePath;
         } catch (IOException e) {
             staticLog(TAG, "Error getting package info: " + e.getMessage());
@@ -315,30 +498,56 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     public static String calculateSHA256(String filePath) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(filePath))) {
-                byte[] buffer = new byte[8192];
-                int count;
-                while ((count = bis.read(buffer)) > 0) {
-                    digest.update(buffer, 0, count);
-                }
-            }
-            return bytesToHex(digest.digest());
+            return FileHasher.sha256(new File(filePath));
         } catch (Exception e) {
             staticLog(TAG, "Error calculating SHA256: " + e.getMessage());
             return null;
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
+    // Full integrity check of an installed bundle, returns null when it is intact or why it is not.
+    // A returned reason means the bundle content itself is wrong: a file that does not match its
+    // hash, a file the metadata does not list, or metadata.json not matching the signature. Errors
+    // that say nothing about the content, such as a failed read or a signature check that threw,
+    // are thrown as IOException so the caller can retry later instead of distrusting the bundle.
+    // Setting cancelled stops the check, which then returns a failure that must not be recorded.
+    public static String verifyInstalledBundle(Context context, String bundleVersion, String signature, boolean background,
+                                               AtomicBoolean cancelled) throws IOException {
+        File dir = new File(getBundleDir(context), bundleVersion);
+        File metadataFile = new File(dir, "metadata.json");
+        if (!metadataFile.isFile()) {
+            return "metadata.json not found";
+        }
+        if (signature == null || signature.isEmpty()) {
+            return "No signature recorded for the bundle";
+        }
+        String content;
+        try {
+            content = Verification.extractedTextContentFromVerifyAscFile(context, signature);
+        } catch (Exception e) {
+            throw new IOException("Failed to check the bundle signature: " + e.getMessage(), e);
+        }
+        if (content == null || content.isEmpty()) {
+            return "The bundle signature does not verify";
+        }
+        String expectedSha256 = ManifestJson.readString(content, "sha256");
+        if (expectedSha256 == null) {
+            return "No sha256 in the signed payload";
         }
-        return result.toString();
+        String actualSha256 = FileHasher.sha256(metadataFile);
+        if (!expectedSha256.equals(actualSha256)) {
+            return "SHA256 mismatch for metadata.json. Expected: " + expectedSha256 + ", Actual: " + actualSha256;
+        }
+        ManifestIndex index = ManifestIndex.open(dir, expectedSha256);
+        ParallelVerifier verifier = new ParallelVerifier(index, dir.getAbsolutePath() + "/", cancelled);
+        String failure = background ? verifier.verifyInBackground(dir) : verifier.verify(dir);
+        if (failure != null && verifier.failedToRead()) {
+            throw new IOException(failure);
+        }
+        return failure;
     }
 
-    public static boolean validateAllFilesInDir(Context context, String dirPath, Map<String, String> metadata, String appVersion, String bundleVersion) {
+    public static boolean validateAllFilesInDir(Context context, String dirPath, ManifestIndex index, String appVersion, String bundleVersion) {
         File dir = new File(dirPath);
         if (!dir.exists() || !dir.isDirectory()) {
             return false;
@@ -348,24 +557,27 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         String folderName = appVersion + "-" + bundleVersion;
         String jsBundleDir = new File(parentBundleDir, folderName).getAbsolutePath() + "/";
 
-        return validateFilesRecursive(dir, metadata, jsBundleDir);
+        String failure = new ParallelVerifier(index, jsBundleDir).verify(dir);
+        if (failure != null) {
+            staticLog(TAG, failure);
+            return false;
+        }
+        return true;
     }
 
     public static String readMetadataFileSha256(Context context, String signature) {
         String ascFileContentString = signature;
         String extractedSha256 = "";
-        String cacheFilePath = context.getCacheDir().getAbsolutePath() + "/bundle-gpg-verification-temp";
-        File cacheFile = new File(cacheFilePath);
-        if (cacheFile.exists()) {
-            cacheFile.delete();
-        }
         try {
-            String content = Verification.extractedTextContentFromVerifyAscFile(ascFileContentString, cacheFilePath);
+            String content = Verification.extractedTextContentFromVerifyAscFile(context, ascFileContentString);
             if (content == null || content.isEmpty()) {
                 return null;
             }
-            JSONObject jsonObject = new JSONObject(content);
-            extractedSha256 = jsonObject.getString("sha256");
+            extractedSha256 = ManifestJson.readString(content, "sha256");
+            if (extractedSha256 == null) {
+                staticLog("readMetadataFileSha256", "No sha256 in the signed payload");
+                return "";
+            }
             staticLog("extractedSha256", extractedSha256);
         } catch (Exception e) {
             staticLog("readMetadataFileSha256", "Error extracting SHA256: " + e.getMessage());
@@ -373,106 +585,15 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         return extractedSha256;
     }
 
-    private static boolean validateFilesRecursive(File dir, Map<String, String> metadata, String jsBundleDir) {
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return true;
-        }
-
-        for (File file : files) {
-            if (file.isDirectory()) {
-                if (!validateFilesRecursive(file, metadata, jsBundleDir)) {
-                    return false;
-                }
-            } else {
-                // Skip metadata.json and .DS_Store
-                if (file.getName().contains("metadata.json") || file.getName().contains(".DS_Store")) {
-                    continue;
-                }
-
-                String relativePath = file.getAbsolutePath().replace(jsBundleDir, "");
-                staticLog(TAG, "relativePath: " + relativePath);
-
-                String expectedSHA256 = metadata.get(relativePath);
-                if (expectedSHA256 == null) {
-                    staticLog(TAG, "File " + relativePath + " not found in metadata");
-                    return false;
-                }
-
-                String actualSHA256 = calculateSHA256(file.getAbsolutePath());
-                if (actualSHA256 == null) {
-                    staticLog(TAG, "Failed to calculate SHA256 for file " + relativePath);
-                    return false;
-                }
-
-                if (!expectedSHA256.equals(actualSHA256)) {
-                    staticLog(TAG, "SHA256 mismatch for file " + relativePath + ". Expected: " + expectedSHA256 + ", Actual: " + actualSHA256);
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-    public static File getFallbackUpdateBundleDataFile(ReactContext context) {
-        String bundleDir = getBundleDir(context);
-        String fallbackUpdateBundleDataPath = bundleDir + "/fallbackUpdateBundleData.json";
-        File fallbackUpdateBundleDataFile = new File(fallbackUpdateBundleDataPath);
-        if (!fallbackUpdateBundleDataFile.exists()) {
-            try {
-                fallbackUpdateBundleDataFile.createNewFile();
-            } catch (IOException e) {
-                staticLog(TAG, "getFallbackUpdateBundleDataFile:" + e.getMessage());
-            }
-        }
-        return fallbackUpdateBundleDataFile;
-    }
-
-    public static void writeFileContent(File file, String content) throws IOException {
-        if (!file.exists()) {
-            file.createNewFile();
-        }
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(content.getBytes());
-        }
-    }
-
-    public static void writeFallbackUpdateBundleDataFile(List<Map<String, String>> fallbackUpdateBundleData, ReactContext context) {
-        File fallbackUpdateBundleDataFile = getFallbackUpdateBundleDataFile(context);
-        String fallbackUpdateBundleDataString = new JSONArray(fallbackUpdateBundleData).toString();
-        try {
-            writeFileContent(fallbackUpdateBundleDataFile, fallbackUpdateBundleDataString);
-        } catch (IOException e) {
-            staticLog(TAG, "writeFallbackUpdateBundleDataFile:" + e.getMessage());
-        }
-    }
-
-    public static List<Map<String, String>> readFallbackUpdateBundleDataFile(ReactContext context) {
-        File fallbackUpdateBundleDataFile = getFallbackUpdateBundleDataFile(context);
-        String fallbackUpdateBundleDataString = null;
-        try {
-            fallbackUpdateBundleDataString = readFileContent(fallbackUpdateBundleDataFile);
-        } catch (IOException e) {
-            staticLog(TAG, "readFallbackUpdateBundleDataFile:" + e.getMessage());
-        }
-        if (fallbackUpdateBundleDataString == null || fallbackUpdateBundleDataString.isEmpty()) {
-            return new ArrayList<>();
-        }
+    /** Fallback bundles, oldest first, as {@code appVersion}, {@code bundleVersion}, {@code signature} maps. */
+    public static List<Map<String, String>> readFallbackUpdateBundleData(Context context) {
         List<Map<String, String>> fallbackUpdateBundleData = new ArrayList<>();
-        try {
-            JSONArray jsonArray = new JSONArray(fallbackUpdateBundleDataString);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject jsonObject = jsonArray.getJSONObject(i);
-                Map<String, String> map = new HashMap<>();
-                Iterator<String> keys = jsonObject.keys();
-                while (keys.hasNext()) {
-                    String key = keys.next();
-                    map.put(key, jsonObject.getString(key));
-                }
-                fallbackUpdateBundleData.add(map);
-            }
-        } catch (JSONException e) {
-            staticLog(TAG, "readFallbackUpdateBundleDataFile:" + e.getMessage());
+        for (BundleStateStore.Fallback fallback : getBundleStateStore(context).get().fallbacks) {
+            Map<String, String> bundleData = new HashMap<>();
+            bundleData.put("appVersion", fallback.appVersion);
+            bundleData.put("bundleVersion", fallback.bundleVersion);
+            bundleData.put("signature", fallback.signature);
+            fallbackUpdateBundleData.add(bundleData);
         }
         return fallbackUpdateBundleData;
     }
@@ -489,17 +610,15 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
     }
 
     public static String getNativeVersion(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(NATIVE_VERSION_PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getString("nativeVersion", "");
-    }
-
-    public static void setNativeVersion(Context context, String nativeVersion) {
-        SharedPreferences prefs = context.getSharedPreferences(NATIVE_VERSION_PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().putString("nativeVersion", nativeVersion).apply();
+        return getBundleStateStore(context).get().nativeVersion;
     }
 
     private boolean verifyBundleSHA256(String bundlePath, String sha256) {
-        String calculatedSHA256 = calculateSHA256(bundlePath);
+        // Verify-only fast path: reuse the digest computed during download if the zip is unchanged
+        String calculatedSHA256 = DigestRecord.readIfFresh(new File(bundlePath));
+        if (calculatedSHA256 == null) {
+            calculatedSHA256 = calculateSHA256(bundlePath);
+        }
         if (calculatedSHA256 == null || sha256 == null) {
             return false;
         }
@@ -510,15 +629,18 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
     }
 
     private void clearDownloadTask() {
-        isDownloading = false;
-        if (currentDownloadCall != null) {
-            currentDownloadCall.cancel();
-            currentDownloadCall = null;
+        UpdateScheduler.Job job = currentDownloadJob;
+        if (job != null) {
+            job.cancel();
+            currentDownloadJob = null;
         }
     }
 
     public long getFileSize(final ReadableMap map) {
-        String key = "fileSize";
+        return getFileSize(map, "fileSize");
+    }
+
+    public long getFileSize(final ReadableMap map, String key) {
         try {
             if (map.hasKey(key)) {
                 ReadableType type = map.getType(key);
@@ -572,6 +694,10 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void verifyBundleASC(ReadableMap params, Promise promise) {
+        runOnUpdateScheduler(UpdateScheduler.JobType.UNZIP, "verifyBundleASC", promise, () -> verifyBundleASCImpl(params, promise));
+    }
+
+    private void verifyBundleASCImpl(ReadableMap params, Promise promise) {
         String filePath = params.getString("downloadedFile");
         String sha256 = params.getString("sha256");
         String appVersion = params.getString("latestVersion");
@@ -583,35 +709,43 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
             return;
         }
 
+        String folderName = appVersion + "-" + bundleVersion;
+        String destination = new File(getBundleDir(reactContext), folderName).getAbsolutePath();
+        if (isVerifiedPatchedBundle(destination, sha256) || reverifyExtractedBundle(filePath, destination, signature)) {
+            log("verifyBundleASC", "Bundle rebuilt from a verified delta: " + destination);
+            IntegrityJournal.record(reactContext, folderName, IntegrityJournal.RESULT_OK, "installed");
+            promise.resolve(null);
+            return;
+        }
+
         if (!verifyBundleSHA256(filePath, sha256)) {
             promise.reject("INVALID_PARAMS", "Bundle signature verification failed");
             return;
         }
 
-        String folderName = appVersion + "-" + bundleVersion;
-        String destination = new File(getBundleDir(reactContext), folderName).getAbsolutePath();
-
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                unzipFile(filePath, destination);
-            } else {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
                 promise.reject("INVALID_PARAMS", "android version not supported, minimum version is 8.0");
                 return;
             }
 
-            String metadataJsonPath = new File(destination, "metadata.json").getAbsolutePath();
-            File metadataFile = new File(metadataJsonPath);
-            if (!metadataFile.exists()) {
-                promise.reject("INVALID_PARAMS", "Failed to read metadata.json");
-                return;
-            }
-
-            String currentBundleVersion = appVersion + "-" + bundleVersion;
-            if (!validateMetadataFileSha256(reactContext, currentBundleVersion, signature)) {
+            // The signed payload carries the metadata.json hash, which every other file is checked against while extracting
+            String metadataSha256 = readMetadataFileSha256(reactContext, signature);
+            if (metadataSha256 == null || metadataSha256.isEmpty()) {
                 promise.reject("INVALID_PARAMS", "Bundle signature verification failed");
                 return;
             }
+
+            verifiedExtractions.remove(destination);
+            patchedBundles.remove(destination);
+            BundleExtractor.Result extracted = new BundleExtractor(new File(filePath), new File(destination), metadataSha256).extract();
+            verifiedExtractions.put(destination, extracted);
+            getAssetStore(reactContext).intern(new File(destination), extracted.metadata);
+            IntegrityJournal.record(reactContext, folderName, IntegrityJournal.RESULT_OK, "installed");
             promise.resolve(null);
+        } catch (BundleExtractor.VerificationException e) {
+            log("verifyBundleASC", "Verification failed: " + e.getMessage());
+            promise.reject("INVALID_PARAMS", "Bundle signature verification failed");
         } catch (Exception e) {
             log("verifyBundle", "Error: " + e.getMessage());
             promise.reject("INVALID_PARAMS", "Error processing bundle: " + e.getMessage());
@@ -620,22 +754,41 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void verifyBundle(ReadableMap params, Promise promise) {
+        runOnUpdateScheduler(UpdateScheduler.JobType.VERIFY, "verifyBundle", promise, () -> verifyBundleImpl(params, promise));
+    }
+
+    private void verifyBundleImpl(ReadableMap params, Promise promise) {
         String filePath = params.getString("downloadedFile");
         String sha256 = params.getString("sha256");
         String appVersion = params.getString("latestVersion");
         String bundleVersion = getBundleVersion(params);
+        String signature = params.getString("signature");
 
         if (filePath == null || sha256 == null) {
             promise.reject("INVALID_PARAMS", "filePath and sha256 are required");
             return;
         }
 
+        String folderName = appVersion + "-" + bundleVersion;
+        String destination = new File(getBundleDir(reactContext), folderName).getAbsolutePath();
+        if (isVerifiedPatchedBundle(destination, sha256) || reverifyExtractedBundle(filePath, destination, signature)) {
+            log("verifyBundle", "Bundle rebuilt from a verified delta: " + destination);
+            promise.resolve(null);
+            return;
+        }
+
         if (!verifyBundleSHA256(filePath, sha256)) {
             promise.reject("INVALID_PARAMS", "Bundle signature verification failed");
             return;
         }
-        String folderName = appVersion + "-" + bundleVersion;
-        String destination = new File(getBundleDir(reactContext), folderName).getAbsolutePath();
+
+        // verifyBundleASC already hashed every file while extracting it
+        BundleExtractor.Result extracted = verifiedExtractions.get(destination);
+        if (extracted != null && extracted.matchesOnDisk(new File(destination))) {
+            log("verifyBundle", "Files verified during extraction: " + destination);
+            promise.resolve(null);
+            return;
+        }
         try {
             String metadataJsonPath = new File(destination, "metadata.json").getAbsolutePath();
             File metadataFile = new File(metadataJsonPath);
@@ -644,11 +797,10 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            // Read and parse metadata.json
-            String metadataContent = readFileContent(metadataFile);
-            Map<String, String> metadata = parseMetadataJson(metadataContent);
+            // Index of metadata.json as it is on disk, written during extraction or rebuilt here
+            ManifestIndex index = ManifestIndex.open(new File(destination), calculateSHA256(metadataJsonPath));
 
-            if (!validateAllFilesInDir(reactContext, destination, metadata, appVersion, String.valueOf(bundleVersion))) {
+            if (!validateAllFilesInDir(reactContext, destination, index, appVersion, String.valueOf(bundleVersion))) {
                 promise.reject("INVALID_PARAMS", "Bundle signature verification failed");
                 return;
             }
@@ -661,12 +813,13 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void downloadBundle(ReadableMap params, Promise promise) {
-        if (isDownloading) {
+        UpdateScheduler.Job runningJob = currentDownloadJob;
+        if (runningJob != null && !runningJob.isFinished()) {
+            log("downloadBundle", "already running: " + runningJob.id);
             promise.resolve(null);
             return;
         }
 
-        isDownloading = true;
         String appVersion = params.getString("latestVersion");
         String bundleVersion = getBundleVersion(params);
         String downloadUrl = params.getString("downloadUrl");
@@ -675,7 +828,6 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         String sha256 = params.getString("sha256");
 
         if (downloadUrl == null || sha256 == null || appVersion == null || bundleVersion == null) {
-            isDownloading = false;
             promise.reject("INVALID_PARAMS", "downloadUrl, fileSize, sha256, appVersion and bundleVersion are required");
             return;
         }
@@ -698,82 +850,271 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
                 // Simulate delay like iOS
                 new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
                     promise.resolve(result);
-                    clearDownloadTask();
                     sendEvent("update/complete", null);
                 }, 5000);
                 return;
             } else {
                 downloadedFile.delete();
+                DigestRecord.delete(downloadedFile);
             }
         }
 
-        // Start download
-        Request request = new Request.Builder().url(downloadUrl).build();
-        currentDownloadCall = httpClient.newCall(request);
-        
+        // A delta against the active bundle is tried first when the server offers one, then a
+        // file-level sync against it, and the full zip last
+        String signature = params.hasKey("signature") ? params.getString("signature") : null;
+        boolean hasSignature = signature != null && !signature.isEmpty();
+        String patchUrl = params.hasKey("patchUrl") ? params.getString("patchUrl") : null;
+        String patchSha256 = params.hasKey("patchSha256") ? params.getString("patchSha256") : null;
+        long patchFileSize = getFileSize(params, "patchFileSize");
+        File patchBaseDir = getPatchBaseDir(params, appVersion);
+        boolean usePatch = hasSignature && patchBaseDir != null && patchUrl != null && patchSha256 != null;
+        String filesUrl = params.hasKey("filesUrl") ? params.getString("filesUrl") : null;
+        boolean useSync = hasSignature && filesUrl != null && !filesUrl.isEmpty();
+
+        String folderName = appVersion + "-" + bundleVersion;
         sendEvent("update/start", null);
-        currentDownloadCall.enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                clearDownloadTask();
+        currentDownloadJob = getUpdateScheduler().submit(UpdateScheduler.JobType.DOWNLOAD, "downloadBundle", "bundle:" + folderName, token -> {
+            if (usePatch) {
+                try {
+                    applyDeltaUpdate(token, patchUrl, patchSha256, patchFileSize, patchBaseDir, folderName, signature, sha256);
+                    sendEvent("update/complete", null);
+                    log("downloadBundle", "Delta update completed");
+                    return;
+                } catch (Exception e) {
+                    log("downloadBundle", "Delta update failed: " + e.getMessage());
+                }
+            }
+            if (useSync && !token.isCancelled()) {
+                try {
+                    syncChangedFiles(token, filesUrl, folderName, signature, sha256);
+                    sendEvent("update/complete", null);
+                    log("downloadBundle", "File sync completed");
+                    return;
+                } catch (Exception e) {
+                    log("downloadBundle", "File sync failed: " + e.getMessage());
+                }
+            }
+            if (token.isCancelled()) {
                 WritableMap errorParams = Arguments.createMap();
-                errorParams.putString("error", e.getMessage());
+                errorParams.putString("error", "Canceled");
                 sendEvent("update/error", errorParams);
-                promise.reject("DOWNLOAD_ERROR", e.getMessage());
+                return;
             }
 
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    clearDownloadTask();
-                    WritableMap errorParams = Arguments.createMap();
-                    errorParams.putString("error", String.valueOf(response.code()));
-                    sendEvent("update/error", errorParams);
-                    promise.reject("DOWNLOAD_ERROR", "HTTP " + response.code());
-                    return;
-                }
+            // Start (or resume) download into <fileName>.part, promoted only after verification
+            SegmentedDownload download = new SegmentedDownload(UpdateHttpClient.segmented(), downloadUrl, downloadedFile);
+            download.setSizeHint(fileSize);
+            token.onCancel(download::cancel);
+            ProgressReporter progress = newDownloadProgress(fileSize);
+            try {
+                download.run(progress);
+            } catch (IOException e) {
+                log("downloadBundle", "Download interrupted: " + e.getMessage());
+                WritableMap errorParams = Arguments.createMap();
+                errorParams.putString("error", e instanceof ResumableDownload.HttpStatusException
+                        ? String.valueOf(((ResumableDownload.HttpStatusException) e).code)
+                        : e.getMessage());
+                sendEvent("update/error", errorParams);
+                return;
+            }
 
-                try (InputStream inputStream = response.body().byteStream();
-                     FileOutputStream outputStream = new FileOutputStream(filePath)) {
-                    
-                    byte[] buffer = new byte[8192];
-                    long totalBytesRead = 0;
-                    long contentLength = fileSize > 0 ? fileSize : response.body().contentLength();
-                    
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                        totalBytesRead += bytesRead;
-                        
-                        if (contentLength > 0) {
-                            double progress = (double) totalBytesRead / (double) contentLength;
-                            WritableMap progressParams = Arguments.createMap();
-                            progressParams.putDouble("progress", progress * 100);
-                            sendEvent("update/downloading", progressParams);
-                        }
-                    }
-                }
+            // Hashed while downloading, no second pass over the zip
+            String downloadedSha256 = download.getSha256();
+            boolean isValid = downloadedSha256 != null && downloadedSha256.equals(sha256);
+            log("downloadBundle", "Calculated: " + downloadedSha256 + ", Expected: " + sha256 + ", Valid: " + isValid);
+            if (!isValid) {
+                download.discard();
+                WritableMap errorParams = Arguments.createMap();
+                errorParams.putString("error", "Bundle signature verification failed");
+                sendEvent("update/error", errorParams);
+                return;
+            }
 
-                if (!verifyBundleSHA256(filePath, sha256)) {
-                    clearDownloadTask();
-                    new File(filePath).delete();
-                    WritableMap errorParams = Arguments.createMap();
-                    errorParams.putString("error", "Bundle signature verification failed");
-                    sendEvent("update/error", errorParams);
-                    promise.reject("VERIFICATION_ERROR", "Bundle signature verification failed");
-                    return;
-                }
+            if (!download.promote()) {
+                WritableMap errorParams = Arguments.createMap();
+                errorParams.putString("error", "Failed to move downloaded bundle into place");
+                sendEvent("update/error", errorParams);
+                return;
+            }
+            DigestRecord.write(downloadedFile, downloadedSha256);
 
-                sendEvent("update/complete", null);
-                log("downloadBundle", "Download completed");
-                clearDownloadTask();
+            progress.flush();
+            sendEvent("update/complete", null);
+            log("downloadBundle", "Download completed");
+        }, null);
+        promise.resolve(result);
+    }
+
+    // Each job resolves its own promise, the listener only covers what the job did not expect.
+    static void runOnUpdateScheduler(UpdateScheduler.JobType type, String name, Promise promise, Runnable task) {
+        getUpdateScheduler().submit(type, name, null, token -> task.run(), (job, error) -> {
+            if (error != null) {
+                promise.reject("UPDATE_JOB_ERROR", error.getMessage(), error);
             }
         });
-        promise.resolve(result);
+    }
+
+    // Coalesced update/downloading events, delivered off the download thread
+    private ProgressReporter newDownloadProgress(long fileSize) {
+        return new ProgressReporter(fileSize, progress -> {
+            if (progress.totalBytes <= 0) {
+                return;
+            }
+            WritableMap progressParams = Arguments.createMap();
+            progressParams.putDouble("progress", progress.percent);
+            progressParams.putDouble("bytesWritten", progress.bytesWritten);
+            progressParams.putDouble("totalBytes", progress.totalBytes);
+            progressParams.putDouble("bytesPerSecond", progress.bytesPerSecond);
+            progressParams.putDouble("etaSeconds", progress.etaSeconds);
+            sendEvent("update/downloading", progressParams);
+        });
+    }
+
+    // File sync reports files rather than bytes, so only the percentage is meaningful
+    private ProgressReporter newSyncProgress() {
+        return new ProgressReporter(0, progress -> {
+            if (progress.totalBytes <= 0) {
+                return;
+            }
+            WritableMap progressParams = Arguments.createMap();
+            progressParams.putDouble("progress", progress.percent);
+            sendEvent("update/downloading", progressParams);
+        });
+    }
+
+    // The active bundle directory when the offered patch was built against it, null otherwise.
+    private File getPatchBaseDir(ReadableMap params, String appVersion) {
+        String patchBaseVersion = params.hasKey("patchBaseVersion") ? params.getString("patchBaseVersion") : null;
+        if (patchBaseVersion == null || patchBaseVersion.isEmpty()) {
+            return null;
+        }
+        String baseFolderName = appVersion + "-" + patchBaseVersion;
+        if (!baseFolderName.equals(getCurrentBundleVersion(reactContext))) {
+            log("downloadBundle", "patch base " + baseFolderName + " is not the active bundle");
+            return null;
+        }
+        String baseDir = getCurrentBundleDir(reactContext, baseFolderName);
+        return baseDir != null && new File(baseDir).exists() ? new File(baseDir) : null;
+    }
+
+    /**
+     * Downloads a delta zip and rebuilds the new bundle directory from it and the active bundle.
+     * Every rebuilt file is checked against the new metadata.json, whose hash comes from the
+     * signature, so the result is as trustworthy as an extracted full zip.
+     */
+    private void applyDeltaUpdate(UpdateScheduler.CancellationToken token, String patchUrl, String patchSha256, long patchFileSize, File baseDir,
+                                  String folderName, String signature, String bundleSha256) throws IOException {
+        File patchFile = new File(getDownloadBundleDir(reactContext), folderName + ".patch.zip");
+        SegmentedDownload patchDownload = new SegmentedDownload(UpdateHttpClient.segmented(), patchUrl, patchFile);
+        patchDownload.setSizeHint(patchFileSize);
+        token.onCancel(patchDownload::cancel);
+        ProgressReporter progress = newDownloadProgress(patchFileSize);
+        patchDownload.run(progress);
+        progress.flush();
+
+        String downloadedSha256 = patchDownload.getSha256();
+        if (downloadedSha256 == null || !downloadedSha256.equals(patchSha256)) {
+            patchDownload.discard();
+            throw new IOException("Patch SHA256 mismatch. Expected: " + patchSha256 + ", Actual: " + downloadedSha256);
+        }
+        String metadataSha256 = readMetadataFileSha256(reactContext, signature);
+        if (metadataSha256 == null || metadataSha256.isEmpty()) {
+            patchDownload.discard();
+            throw new IOException("Bundle signature verification failed");
+        }
+
+        String destination = new File(getBundleDir(reactContext), folderName).getAbsolutePath();
+        verifiedExtractions.remove(destination);
+        patchedBundles.remove(destination);
+        try {
+            BundleExtractor extractor = new BundleExtractor(patchDownload.getPartFile(), new File(destination), metadataSha256);
+            extractor.setBaseDir(baseDir);
+            BundleExtractor.Result extracted = extractor.extract();
+            verifiedExtractions.put(destination, extracted);
+            patchedBundles.put(destination, bundleSha256);
+            getAssetStore(reactContext).intern(new File(destination), extracted.metadata);
+        } finally {
+            patchDownload.discard();
+        }
+    }
+
+    /**
+     * Fetches only the files whose hash differs from the active bundle, see {@link BundleSync}.
+     * Every file ends up checked against the new signed metadata.json, the unchanged ones through
+     * the active bundle's own signed metadata.json.
+     */
+    private void syncChangedFiles(UpdateScheduler.CancellationToken token, String filesUrl, String folderName, String signature, String bundleSha256) throws IOException {
+        String metadataSha256 = readMetadataFileSha256(reactContext, signature);
+        if (metadataSha256 == null || metadataSha256.isEmpty()) {
+            throw new IOException("Bundle signature verification failed");
+        }
+        File baseDir = null;
+        String baseMetadataSha256 = null;
+        String currentBundleVersion = getCurrentBundleVersion(reactContext);
+        String currentBundleDir = currentBundleVersion != null ? getCurrentBundleDir(reactContext, currentBundleVersion) : null;
+        if (currentBundleDir != null && new File(currentBundleDir).exists()
+                && !IntegrityJournal.isUntrusted(reactContext, currentBundleVersion)) {
+            baseDir = new File(currentBundleDir);
+            baseMetadataSha256 = readMetadataFileSha256(reactContext, getBundleSignature(reactContext, currentBundleVersion));
+        }
+
+        String destination = new File(getBundleDir(reactContext), folderName).getAbsolutePath();
+        verifiedExtractions.remove(destination);
+        patchedBundles.remove(destination);
+        BundleSync sync = new BundleSync(httpClient, filesUrl, baseDir, baseMetadataSha256, new File(destination), metadataSha256);
+        sync.setAssetStore(getAssetStore(reactContext));
+        token.onCancel(sync::cancel);
+        ProgressReporter progress = newSyncProgress();
+        BundleExtractor.Result extracted = sync.sync(progress);
+        progress.flush();
+        verifiedExtractions.put(destination, extracted);
+        patchedBundles.put(destination, bundleSha256);
+        getAssetStore(reactContext).intern(new File(destination), extracted.metadata);
+    }
+
+    // Built by applyDeltaUpdate or syncChangedFiles and verified already, there is no full zip to check.
+    private boolean isVerifiedPatchedBundle(String destination, String sha256) {
+        BundleExtractor.Result extracted = verifiedExtractions.get(destination);
+        return sha256 != null && sha256.equals(patchedBundles.get(destination))
+                && extracted != null && extracted.matchesOnDisk(new File(destination));
+    }
+
+    /**
+     * A bundle built from a delta or a file sync has no full zip, and the record of its
+     * verification is gone once the process died before verifyBundleASC. Checks every file of the
+     * directory against the metadata.json hash from the signature instead, so the update does not
+     * fail. Only used when there is no zip to verify.
+     */
+    private boolean reverifyExtractedBundle(String zipPath, String destination, String signature) {
+        File dir = new File(destination);
+        if (new File(zipPath).exists() || signature == null || !new File(dir, BundleExtractor.METADATA_FILE_NAME).isFile()) {
+            return false;
+        }
+        try {
+            String metadataSha256 = readMetadataFileSha256(reactContext, signature);
+            if (metadataSha256 == null || metadataSha256.isEmpty()) {
+                return false;
+            }
+            ManifestIndex index = ManifestIndex.open(dir, metadataSha256);
+            String failure = new ParallelVerifier(index, dir.getAbsolutePath() + "/").verify(dir);
+            if (failure != null) {
+                log("reverifyExtractedBundle", failure);
+                return false;
+            }
+            log("reverifyExtractedBundle", "Verified " + destination + " against the signed metadata.json");
+            return true;
+        } catch (IOException e) {
+            log("reverifyExtractedBundle", "Error: " + e.getMessage());
+            return false;
+        }
     }
 
     @ReactMethod
     public void installBundle(ReadableMap params, Promise promise) {
+        runOnUpdateScheduler(UpdateScheduler.JobType.INSTALL, "installBundle", promise, () -> installBundleImpl(params, promise));
+    }
+
+    private void installBundleImpl(ReadableMap params, Promise promise) {
         String appVersion = params.getString("latestVersion");
         String bundleVersion = getBundleVersion(params);
         String filePath = params.getString("downloadedFile");
@@ -784,58 +1125,98 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
             return;
         }
         String folderName = appVersion + "-" + bundleVersion;
-        String currentFolderName = getCurrentBundleVersion(reactContext);
-        SharedPreferences readPrefs = reactContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        log("installBundle", "currentFolderName: " + currentFolderName);
-        String currentSignature = currentFolderName != null 
-            ? readPrefs.getString(currentFolderName, "") 
-            : "";
-        setCurrentBundleVersionAndSignature(reactContext, folderName, signature);
         String nativeVersion = getAppVersion(reactContext);
         log("installBundle", "nativeVersion: " + nativeVersion);
-        setNativeVersion(reactContext, nativeVersion);
+        if (!isBundleReady(reactContext, folderName)) {
+            promise.reject("INSTALL_ERROR", "Bundle is not extracted: " + folderName);
+            return;
+        }
         try {
-            List<Map<String, String>> fallbackUpdateBundleData = readFallbackUpdateBundleDataFile(reactContext);
-            log("installBundle", "fallbackUpdateBundleData: " + fallbackUpdateBundleData);
-            if (currentFolderName != null && !currentFolderName.isEmpty()) {
-                String[] parts = currentFolderName.split("-");
-                if (parts.length >= 2) {
-                    String currentAppVersion = parts[0];
-                    String currentBundleVersion = parts[1];
-                    log("installBundle", "fallbackUpdateBundleData signature: " + currentSignature);
-                    Map<String, String> bundleData = new HashMap<>();
-                    bundleData.put("appVersion", currentAppVersion);
-                    bundleData.put("bundleVersion", currentBundleVersion);
-                    bundleData.put("signature", currentSignature);
-                    fallbackUpdateBundleData.add(bundleData);
-                }
+            BundleStateStore.State installed = activateBundle(reactContext, folderName, signature, nativeVersion);
+            log("installBundle", "fallbackUpdateBundleData size: " + installed.fallbacks.size());
+        } catch (IOException e) {
+            staticLog(TAG, "installBundle state error:" + e.getMessage());
+            promise.reject("INSTALL_ERROR", e.getMessage());
+            return;
+        }
+        promise.resolve(null);
+    }
+
+    // A bundle directory that was extracted completely, the extractor only renames it into place once it is
+    private static boolean isBundleReady(Context context, String folderName) {
+        File dir = new File(getBundleDir(context), folderName);
+        return new File(dir, BundleExtractor.METADATA_FILE_NAME).isFile() && new File(dir, "main.jsbundle.hbc").isFile();
+    }
+
+    /**
+     * Installs an extracted bundle with a single state write, nothing is extracted or hashed
+     * again. The bundle that was active becomes a fallback, or swaps places with
+     * {@code folderName} when that was one. Fallbacks beyond {@link #MAX_FALLBACK_BUNDLES} are
+     * trashed once the new state is on disk. {@code nativeVersion} is only updated when not null.
+     */
+    private static BundleStateStore.State activateBundle(Context context, String folderName, String signature, String nativeVersion) throws IOException {
+        List<BundleStateStore.Fallback> removed = new ArrayList<>();
+        BundleStateStore.State activated = getBundleStateStore(context).update(state -> {
+            removed.clear();
+            BundleStateStore.State next = state.withActivated(folderName, signature);
+            if (nativeVersion != null) {
+                next = next.withNativeVersion(nativeVersion);
+            }
+            List<BundleStateStore.Fallback> fallbacks = new ArrayList<>(next.fallbacks);
+            while (fallbacks.size() > MAX_FALLBACK_BUNDLES) {
+                removed.add(fallbacks.remove(0));
             }
+            return next.withFallbacks(fallbacks);
+        });
 
-            log("installBundle", "fallbackUpdateBundleData size: " + fallbackUpdateBundleData.size());
-            if (fallbackUpdateBundleData.size() > 3) {
-                Map<String, String> shiftUpdateBundleData = fallbackUpdateBundleData.remove(0);
-                String shiftAppVersion = shiftUpdateBundleData.get("appVersion");
-                String shiftBundleVersion = shiftUpdateBundleData.get("bundleVersion");
-                if (shiftAppVersion != null && shiftBundleVersion != null) {
-                    String shiftFolderName = shiftAppVersion + "-" + shiftBundleVersion;
-                    String bundleDir = getBundleDir(reactContext);
-                    String bundleDirPath = new File(bundleDir, shiftFolderName).getAbsolutePath();
-                    if (new File(bundleDirPath).exists()) {
-                        deleteDirectory(new File(bundleDirPath));
-                    }
-                }
+        // Only after the new state is on disk, a crash before this leaves at most an orphan directory
+        boolean trashedAny = false;
+        for (BundleStateStore.Fallback fallback : removed) {
+            String shiftFolderName = fallback.folderName();
+            if (!activated.signatureOf(shiftFolderName).isEmpty()) {
+                // Still the active bundle or listed again further down
+                continue;
+            }
+            if (getBundleTrash(context).moveToTrash(new File(getBundleDir(context), shiftFolderName))) {
+                trashedAny = true;
             }
-            log("installBundle", "fallbackUpdateBundleData: " + fallbackUpdateBundleData);
-            writeFallbackUpdateBundleDataFile(fallbackUpdateBundleData, reactContext);
-        } catch (Exception e) {
-            staticLog(TAG, "installBundle fallbackUpdateBundleData error:" + e.getMessage());
         }
-        promise.resolve(null);
+        if (trashedAny) {
+            // Also drops the assets only the removed bundle referenced
+            scheduleTrashSweep(context);
+        }
+        return activated;
+    }
+
+    /** Queued and running APK and bundle update jobs, oldest first. */
+    @ReactMethod
+    public void getUpdateJobs(Promise promise) {
+        long now = SystemClock.elapsedRealtime();
+        WritableArray jobs = Arguments.createArray();
+        for (UpdateScheduler.Job job : getUpdateScheduler().snapshot()) {
+            WritableMap item = Arguments.createMap();
+            item.putString("id", job.id);
+            item.putString("type", job.type.name().toLowerCase());
+            item.putString("key", job.key);
+            item.putString("state", job.getState().name().toLowerCase());
+            item.putDouble("queuedMs", now - job.getQueuedAt());
+            item.putDouble("runningMs", job.getStartedAt() > 0 ? now - job.getStartedAt() : 0);
+            jobs.pushMap(item);
+        }
+        promise.resolve(jobs);
     }
 
     @ReactMethod
     public void getFallbackUpdateBundleData(Promise promise) {
-        List<Map<String, String>> fallbackUpdateBundleData = readFallbackUpdateBundleDataFile(reactContext);
+        List<Map<String, String>> fallbackUpdateBundleData = readFallbackUpdateBundleData(reactContext);
+        // Hide bundles that failed background re-verification
+        Iterator<Map<String, String>> iterator = fallbackUpdateBundleData.iterator();
+        while (iterator.hasNext()) {
+            Map<String, String> bundleData = iterator.next();
+            if (IntegrityJournal.isUntrusted(reactContext, bundleData.get("appVersion") + "-" + bundleData.get("bundleVersion"))) {
+                iterator.remove();
+            }
+        }
         promise.resolve(fallbackUpdateBundleData);
     }
 
@@ -845,66 +1226,44 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         String bundleVersion = getBundleVersion(params);
         String signature = params.getString("signature");
         String folderName = appVersion + "-" + bundleVersion;
-        setCurrentBundleVersionAndSignature(reactContext, folderName, signature);
+        if (!isBundleReady(reactContext, folderName)) {
+            promise.reject("INVALID_PARAMS", "Bundle is not installed: " + folderName);
+            return;
+        }
+        if (IntegrityJournal.isUntrusted(reactContext, folderName)) {
+            promise.reject("INVALID_PARAMS", "Bundle failed verification: " + folderName);
+            return;
+        }
+        try {
+            // Only the active pointer moves: the fallback list is left as it is and nothing is
+            // trashed, a rollback must not cost the bundle that is rolled back from
+            getBundleStateStore(reactContext).update(state -> state.withCurrent(folderName,
+                    signature != null && !signature.isEmpty() ? signature : state.signatureOf(folderName)));
+        } catch (IOException e) {
+            staticLog(TAG, "setCurrentUpdateBundleData: " + e.getMessage());
+            promise.reject("INSTALL_ERROR", e.getMessage());
+            return;
+        }
         promise.resolve(null);
     }
        
     @ReactMethod
     public void clearBundle(Promise promise) {
-        try {
-            File downloadBundleDir = new File(getDownloadBundleDir(reactContext));
-            if (downloadBundleDir.exists()) {
-                deleteDirectory(downloadBundleDir);
-            }
-            
-            if (currentDownloadCall != null) {
-                currentDownloadCall.cancel();
-                currentDownloadCall = null;
-            }
-            clearDownloadTask();
-            promise.resolve(null);
-        } catch (Exception e) {
-            staticLog(TAG, "clearBundle:" + e.getMessage());
-            promise.reject("CLEAR_ERROR", e.getMessage());
-        }
-    }
-
-    // Helper methods
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    private void unzipFile(String zipFilePath, String destDirectory) throws IOException {
-        File destDir = new File(destDirectory);
-        if (!destDir.exists()) {
-            destDir.mkdirs();
-        }
-
-        // Normalize destination directory path for security checks
-        Path destDirPath = Paths.get(destDir.getCanonicalPath());
-
-        try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(zipFilePath))) {
-            ZipEntry entry = zipIn.getNextEntry();
-            while (entry != null) {
-                String entryName = entry.getName();
-                // Construct normalized output path
-                File outFile = new File(destDir, entryName);
-                Path outPath = Paths.get(outFile.getCanonicalPath());
-
-                // Ensure that the output file is within the destination directory
-                if (!outPath.startsWith(destDirPath)) {
-                    throw new IOException("Entry is outside of the target dir: " + entryName);
-                }
-
-                if (!entry.isDirectory()) {
-                    extractFile(zipIn, outPath.toString());
-                } else {
-                    File dir = outPath.toFile();
-                    dir.mkdirs();
+        clearDownloadTask();
+        runOnUpdateScheduler(UpdateScheduler.JobType.CLEANUP, "clearBundle", promise, () -> {
+            try {
+                if (getBundleTrash(reactContext).moveToTrash(new File(getDownloadBundleDir(reactContext)))) {
+                    scheduleTrashSweep(reactContext);
                 }
-                zipIn.closeEntry();
-                entry = zipIn.getNextEntry();
+                promise.resolve(null);
+            } catch (Exception e) {
+                staticLog(TAG, "clearBundle:" + e.getMessage());
+                promise.reject("CLEAR_ERROR", e.getMessage());
             }
-        }
+        });
     }
 
+    // Helper methods
     public static String getWebEmbedPath(Context context) {
         String currentBundleDir = getCurrentBundleDir(context, getCurrentBundleVersion(context));
         if (currentBundleDir == null) {
@@ -929,15 +1288,24 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void clearAllJSBundleData(Promise promise) {
-        File downloadBundleDir = new File(getDownloadBundleDir(reactContext));
-        if (downloadBundleDir.exists()) {
-            deleteDirectory(downloadBundleDir);
-        }
-        File bundleDir = new File(getBundleDir(reactContext));
-        if (bundleDir.exists()) {
-            deleteDirectory(bundleDir);
-        }
+        runOnUpdateScheduler(UpdateScheduler.JobType.CLEANUP, "clearAllJSBundleData", promise, () -> clearAllJSBundleDataImpl(promise));
+    }
+
+    private void clearAllJSBundleDataImpl(Promise promise) {
+        BundleTrash trash = getBundleTrash(reactContext);
+        trash.moveToTrash(new File(getDownloadBundleDir(reactContext)));
+        trash.moveToTrash(new File(getBundleDir(reactContext)));
+        trash.moveToTrash(getAssetStoreDir(reactContext));
+        scheduleTrashSweep(reactContext);
+        verifiedExtractions.clear();
+        patchedBundles.clear();
         BundleUpdateModule.clearUpdateBundleData(reactContext);
+        // The fallback bundles went with the bundle directory
+        try {
+            getBundleStateStore(reactContext).update(state -> state.withFallbacks(new ArrayList<>()));
+        } catch (IOException e) {
+            staticLog(TAG, "clearAllJSBundleData: " + e.getMessage());
+        }
         WritableMap result = Arguments.createMap();
         result.putBoolean("success", true);
         result.putString("message", "Successfully cleared all JS bundle data");
@@ -946,10 +1314,9 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void testVerification(Promise promise) {
-        String cacheFilePath = reactContext.getCacheDir().getAbsolutePath() + "/bundle-gpg-test-verification-temp";
         boolean result = false;
         try {
-            result = Verification.testExtractedSha256FromVerifyAscFile(cacheFilePath);
+            result = Verification.testExtractedSha256FromVerifyAscFile();
         } catch (Exception e) {
             staticLog(TAG, "testVerification:" + e.getMessage());
             throw new RuntimeException(e);
@@ -993,7 +1360,8 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         
         File jsRuntimeDirFile = new File(jsRuntimeDir);
         if (jsRuntimeDirFile.exists()) {
-            deleteDirectory(jsRuntimeDirFile);
+            getBundleTrash(reactContext).moveToTrash(jsRuntimeDirFile);
+            scheduleTrashSweep(reactContext);
             boolean success = !jsRuntimeDirFile.exists();
             if (success) {
                 log("testDeleteJsRuntimeDir", "Deleted js runtime directory: " + jsRuntimeDir);
@@ -1104,6 +1472,10 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void getSha256FromFilePath(String filePath, Promise promise) {
+        runOnUpdateScheduler(UpdateScheduler.JobType.VERIFY, "getSha256FromFilePath", promise, () -> getSha256FromFilePathImpl(filePath, promise));
+    }
+
+    private void getSha256FromFilePathImpl(String filePath, Promise promise) {
         staticLog(TAG, "getSha256FromFilePath: " + filePath);
         if (filePath == null) {
             promise.resolve("");
@@ -1127,44 +1499,16 @@ public class BundleUpdateModule extends ReactContextBaseJavaModule {
         return jsBundlePath;
     }
 
-    private void extractFile(ZipInputStream zipIn, String filePath) throws IOException {
-        File file = new File(filePath);
-        file.getParentFile().mkdirs();
-        
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = zipIn.read(buffer)) > 0) {
-                fos.write(buffer, 0, length);
-            }
-        }
-    }
-
+    // Decoded once after reading all bytes, so multi-byte UTF-8 characters are never split
     private static String readFileContent(File file) throws IOException {
-        StringBuilder content = new StringBuilder();
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
-            byte[] buffer = new byte[1024];
+        byte[] content = new byte[(int) file.length()];
+        int length = 0;
+        try (FileInputStream fis = new FileInputStream(file)) {
             int bytesRead;
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                content.append(new String(buffer, 0, bytesRead));
-            }
-        }
-        return content.toString();
-    }
-
-    private void deleteDirectory(File directory) {
-        if (directory.exists()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        deleteDirectory(file);
-                    } else {
-                        file.delete();
-                    }
-                }
+            while (length < content.length && (bytesRead = fis.read(content, length, content.length - length)) != -1) {
+                length += bytesRead;
             }
-            directory.delete();
         }
+        return new String(content, 0, length, StandardCharsets.UTF_8);
     }
 }
@@ -20,16 +20,21 @@ public abstract class CustomReactNativeHost extends DefaultReactNativeHost {
 
     @Override
     public String getJSBundleFile() {
-        // Check for updated bundle first
-        String bundlePath = BundleUpdateModule.getCurrentBundleMainJSBundle(context);
-        if (bundlePath != null) {
-            File bundleFile = new File(bundlePath);
-            if (bundleFile.exists()) {
-                return bundlePath;
+        int span = StartupTrace.begin("getJSBundleFile");
+        try {
+            // Check for updated bundle first
+            String bundlePath = BundleUpdateModule.getCurrentBundleMainJSBundle(context);
+            if (bundlePath != null) {
+                File bundleFile = new File(bundlePath);
+                if (bundleFile.exists()) {
+                    return bundlePath;
+                }
             }
+
+            // Fallback to default bundle
+            return super.getJSBundleFile();
+        } finally {
+            StartupTrace.end(span);
         }
-        
-        // Fallback to default bundle
-        return super.getJSBundleFile();
     }
 }
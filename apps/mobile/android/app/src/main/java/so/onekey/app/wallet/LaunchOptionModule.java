@@ -2,12 +2,10 @@ package so.onekey.app.wallet;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.betomorrow.rnfilelogger.FileLoggerModule;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -15,12 +13,9 @@ import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.WritableMap;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 public class LaunchOptionModule extends ReactContextBaseJavaModule {
     private static final String TAG = "LaunchOptionModule";
-    private FileLoggerModule fileLogger;
     
     private static Long staticStartupTime;
     
@@ -28,7 +23,7 @@ public class LaunchOptionModule extends ReactContextBaseJavaModule {
 
     public LaunchOptionModule(ReactApplicationContext context) {
         super(context);
-        fileLogger = new FileLoggerModule(getReactApplicationContext());
+        NativeLogger.init(getReactApplicationContext());
     }
 
     @NonNull
@@ -38,10 +33,7 @@ public class LaunchOptionModule extends ReactContextBaseJavaModule {
     }
 
     public void log(String name, String msg) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-        String currentTime = sdf.format(new Date());
-        fileLogger.write(1, currentTime + " | INFO : app => native => LaunchOptionModule:" + name + ": " + msg);
-        Log.d(TAG, name + ": " + msg);
+        NativeLogger.info("LaunchOptionModule", name, msg);
     }
 
     public static void saveStartupTimeStatic(Long startupTime) {
@@ -135,6 +127,27 @@ public class LaunchOptionModule extends ReactContextBaseJavaModule {
         promise.resolve(startupTime != null ? startupTime.doubleValue() : 0.0);
     }
 
+    @ReactMethod
+    public void getStartupTrace(Promise promise) {
+        promise.resolve(StartupTrace.toArray());
+    }
+
+    @ReactMethod
+    public void getStartupTraceJson(Promise promise) {
+        try {
+            promise.resolve(StartupTrace.toChromeTraceJson());
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    // Lets JS add its own milestones, e.g. when the first screen rendered
+    @ReactMethod
+    public void markStartupTrace(String name, Promise promise) {
+        StartupTrace.mark(name);
+        promise.resolve(true);
+    }
+
     @ReactMethod
     public void clearLaunchOptions(Promise promise) {
         synchronized (this) {
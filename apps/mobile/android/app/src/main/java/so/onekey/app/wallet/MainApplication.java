@@ -96,6 +96,7 @@ public class MainApplication extends Application implements ReactApplication {
 
   @Override
   public void onCreate() {
+    int onCreateSpan = StartupTrace.begin("Application.onCreate");
     super.onCreate();
     
     long startupTime = System.currentTimeMillis();
@@ -113,20 +114,30 @@ public class MainApplication extends Application implements ReactApplication {
     // if (!BuildConfig.REACT_NATIVE_UNSTABLE_USE_RUNTIME_SCHEDULER_ALWAYS) {
     //   ReactFeatureFlags.unstable_useRuntimeSchedulerAlways = false;
     // }
+      int soLoaderSpan = StartupTrace.begin("SoLoader.init");
       try {
           SoLoader.init(this, OpenSourceMergedSoMapping.INSTANCE);
       } catch (IOException e) {
           throw new RuntimeException(e);
+      } finally {
+          StartupTrace.end(soLoaderSpan);
       }
       if (BuildConfig.IS_NEW_ARCHITECTURE_ENABLED) {
       // If you opted-in for the New Architecture, we load the native entry point for this app.
+      int entryPointSpan = StartupTrace.begin("DefaultNewArchitectureEntryPoint.load");
       DefaultNewArchitectureEntryPoint.load();
+      StartupTrace.end(entryPointSpan);
     }
     // if (!BuildConfig.NO_FLIPPER) {
     //   ReactNativeFlipper.initializeFlipper(this, getReactNativeHost().getReactInstanceManager());
     // }
+    int lifecycleSpan = StartupTrace.begin("ApplicationLifecycleDispatcher.onApplicationCreate");
     ApplicationLifecycleDispatcher.onApplicationCreate(this);
+    StartupTrace.end(lifecycleSpan);
+    int jPushSpan = StartupTrace.begin("JPushModule.registerActivityLifecycle");
     JPushModule.registerActivityLifecycle(this);
+    StartupTrace.end(jPushSpan);
+    StartupTrace.end(onCreateSpan);
   }
 
   @Override
@@ -0,0 +1,210 @@
+package so.onekey.app.wallet;
+
+import android.util.Log;
+
+import com.betomorrow.rnfilelogger.FileLoggerModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * File logger shared by the native modules, kept off the threads that log.
+ * <p>
+ * Callers only put an entry into a bounded ring buffer with a CAS, no lock and no I/O. A single
+ * background thread formats the entries, with one cached clock formatter, and hands them to
+ * {@link FileLoggerModule} in batches, one write per run of same-level lines, every
+ * {@link #FLUSH_INTERVAL_MS} or once {@link #BATCH_SIZE} entries are waiting. Entries below
+ * {@link #setMinLevel(int)} are dropped before they are queued, and {@link #debug} takes a
+ * {@link Supplier} so the message of a filtered entry is never even built. When the buffer is
+ * full, new entries are counted and dropped rather than blocking the caller.
+ * <p>
+ * Entries logged before a module called {@link #init} stay buffered until it does.
+ */
+public final class NativeLogger {
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+
+    private static final int CAPACITY = 1024;
+    private static final int BATCH_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MS = 250;
+
+    private static final class Entry {
+        final long time;
+        final int level;
+        final String component;
+        final String method;
+        final Object message;
+
+        Entry(int level, String component, String method, Object message) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.component = component;
+            this.method = method;
+            this.message = message;
+        }
+    }
+
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    // Next slot to claim, claimed by producers with a CAS
+    private static final AtomicLong tail = new AtomicLong();
+    // Next slot to drain, only advanced by the writer thread
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile int minLevel = BuildConfig.DEBUG ? DEBUG : INFO;
+    private static volatile FileLoggerModule sink;
+    private static volatile Thread writer;
+    // Writer thread only
+    private static final SimpleDateFormat clockFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private static final StringBuilder batch = new StringBuilder();
+    private static long clockSecond = -1;
+    private static String clockText = "";
+
+    private NativeLogger() {
+    }
+
+    /** Sets the file logger to write to and starts the writer thread, later calls are no-ops. */
+    public static synchronized void init(ReactApplicationContext context) {
+        if (sink != null) {
+            return;
+        }
+        sink = new FileLoggerModule(context);
+        Thread thread = new Thread(NativeLogger::drainLoop, "native-logger");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        writer = thread;
+        thread.start();
+    }
+
+    public static void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    public static void debug(String component, String method, Supplier<String> message) {
+        if (isLoggable(DEBUG)) {
+            enqueue(new Entry(DEBUG, component, method, message));
+        }
+    }
+
+    public static void info(String component, String method, String message) {
+        if (isLoggable(INFO)) {
+            enqueue(new Entry(INFO, component, method, message));
+        }
+    }
+
+    public static void warn(String component, String method, String message) {
+        if (isLoggable(WARN)) {
+            enqueue(new Entry(WARN, component, method, message));
+        }
+    }
+
+    public static void error(String component, String method, String message) {
+        if (isLoggable(ERROR)) {
+            enqueue(new Entry(ERROR, component, method, message));
+        }
+    }
+
+    private static void enqueue(Entry entry) {
+        long slot;
+        while (true) {
+            slot = tail.get();
+            if (slot - head.get() >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (tail.compareAndSet(slot, slot + 1)) {
+                break;
+            }
+        }
+        // The slot is free: head has moved past its previous occupant
+        ring.set((int) (slot % CAPACITY), entry);
+        // Wake the writer early once a batch is waiting, at most once per batch of entries
+        if (slot % BATCH_SIZE == 0 && slot - head.get() >= BATCH_SIZE) {
+            Thread thread = writer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            LockSupport.parkNanos(FLUSH_INTERVAL_MS * 1_000_000L);
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                Log.e("NativeLogger", "drain failed", e);
+            }
+        }
+    }
+
+    private static void drain() {
+        FileLoggerModule fileLogger = sink;
+        int batchLevel = -1;
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            batchLevel = WARN;
+            batch.append(clock(System.currentTimeMillis()))
+                    .append(" | WARN : app => native => NativeLogger: dropped ").append(lost).append(" entries");
+        }
+        while (true) {
+            long index = head.get();
+            if (index == tail.get()) {
+                break;
+            }
+            int slot = (int) (index % CAPACITY);
+            Entry entry = ring.get(slot);
+            if (entry == null) {
+                // Claimed but not written yet, picked up on the next round
+                break;
+            }
+            ring.set(slot, null);
+            head.set(index + 1);
+
+            String message = entry.message instanceof Supplier
+                    ? String.valueOf(((Supplier<?>) entry.message).get())
+                    : String.valueOf(entry.message);
+            // Release builds keep logs in the file only, logcat is readable by anyone with adb
+            if (BuildConfig.DEBUG) {
+                Log.d(entry.component, entry.method + ": " + message);
+            }
+            if (batchLevel != entry.level && batch.length() > 0) {
+                fileLogger.write(batchLevel, batch.toString());
+                batch.setLength(0);
+            }
+            batchLevel = entry.level;
+            if (batch.length() > 0) {
+                batch.append('\n');
+            }
+            batch.append(clock(entry.time))
+                    .append(" | ").append(LEVEL_NAMES[entry.level])
+                    .append(" : app => native => ").append(entry.component).append(':')
+                    .append(entry.method).append(": ").append(message);
+        }
+        if (batch.length() > 0) {
+            fileLogger.write(batchLevel, batch.toString());
+            batch.setLength(0);
+        }
+    }
+
+    private static String clock(long time) {
+        long second = time / 1000;
+        if (second != clockSecond) {
+            clockSecond = second;
+            clockText = clockFormat.format(new Date(time));
+        }
+        return clockText;
+    }
+}
@@ -0,0 +1,184 @@
+package so.onekey.app.wallet;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Named, nested phase timings of a cold start, from {@code MainApplication.onCreate} to the first
+ * bundle load and the splash screen going away.
+ * <p>
+ * Recording is meant to sit on the startup path: {@link #begin} claims a slot of preallocated
+ * arrays with one atomic increment and reads {@link System#nanoTime()}, {@link #end} writes one
+ * more timestamp. Spans nest per thread in the order they are begun and ended. Once the buffer is
+ * full further spans are ignored. A slot's name and end time are published through atomic
+ * arrays: a reader that sees the name also sees the start, thread and depth written before it.
+ * Until then the slot is skipped. The recorded spans are read by LaunchOptionsManager, either as
+ * a list or as Chrome trace JSON for chrome://tracing or Perfetto.
+ */
+public final class StartupTrace {
+    private static final int CAPACITY = 128;
+    private static final long UNFINISHED = -1;
+
+    private static final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(CAPACITY);
+    private static final long[] starts = new long[CAPACITY];
+    private static final AtomicLongArray ends = new AtomicLongArray(CAPACITY);
+    private static final long[] threadIds = new long[CAPACITY];
+    private static final int[] depths = new int[CAPACITY];
+    private static final AtomicInteger count = new AtomicInteger();
+    private static final ThreadLocal<int[]> threadDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    // All timestamps are relative to this, the first use of the class
+    private static final long originNanos = System.nanoTime();
+    private static final long originElapsedMillis = SystemClock.elapsedRealtime();
+
+    private StartupTrace() {
+    }
+
+    /** Starts a span and returns its handle for {@link #end}, -1 once the buffer is full. */
+    public static int begin(String name) {
+        int span = count.getAndIncrement();
+        if (span >= CAPACITY) {
+            return -1;
+        }
+        int[] depth = threadDepth.get();
+        threadIds[span] = Thread.currentThread().getId();
+        depths[span] = depth[0]++;
+        ends.set(span, UNFINISHED);
+        starts[span] = System.nanoTime() - originNanos;
+        // Volatile write last, it publishes the plain writes above to readers of the name
+        names.set(span, name);
+        return span;
+    }
+
+    public static void end(int span) {
+        if (span < 0 || span >= CAPACITY) {
+            return;
+        }
+        ends.set(span, System.nanoTime() - originNanos);
+        threadDepth.get()[0]--;
+    }
+
+    /** Records a point in time, a span of zero length. */
+    public static void mark(String name) {
+        int span = begin(name);
+        if (span >= 0) {
+            ends.set(span, starts[span]);
+            threadDepth.get()[0]--;
+        }
+    }
+
+    static int depth(int span) {
+        return depths[span];
+    }
+
+    // Tests start from an empty buffer, the origin stays where it was
+    static void reset() {
+        for (int i = 0; i < CAPACITY; i++) {
+            names.set(i, null);
+        }
+        count.set(0);
+        threadDepth.remove();
+    }
+
+    /** Milliseconds from process start, as reported by the system, to the origin of the trace. */
+    private static long processStartOffsetMillis() {
+        return Math.max(0, originElapsedMillis - Process.getStartElapsedRealtime());
+    }
+
+    private static int recorded() {
+        return Math.min(count.get(), CAPACITY);
+    }
+
+    /**
+     * Spans in the order they were begun, times in milliseconds since {@code MainApplication.onCreate}.
+     * The first entry is the time from process start to there, with a negative start.
+     */
+    public static WritableArray toArray() {
+        WritableArray spans = Arguments.createArray();
+        WritableMap processStart = Arguments.createMap();
+        processStart.putString("name", "Process.start");
+        processStart.putDouble("startMs", -processStartOffsetMillis());
+        processStart.putDouble("durationMs", processStartOffsetMillis());
+        processStart.putInt("depth", 0);
+        processStart.putDouble("threadId", 0);
+        spans.pushMap(processStart);
+        int total = recorded();
+        for (int i = 0; i < total; i++) {
+            String name = names.get(i);
+            if (name == null) {
+                // Claimed by a thread that has not filled it in yet
+                continue;
+            }
+            long end = ends.get(i);
+            WritableMap span = Arguments.createMap();
+            span.putString("name", name);
+            span.putDouble("startMs", starts[i] / 1e6);
+            span.putDouble("durationMs", end == UNFINISHED ? -1 : (end - starts[i]) / 1e6);
+            span.putInt("depth", depths[i]);
+            span.putDouble("threadId", threadIds[i]);
+            spans.pushMap(span);
+        }
+        return spans;
+    }
+
+    /**
+     * The spans as Chrome trace event JSON, timed from process start. Spans still open are
+     * exported up to now and flagged {@code unfinished}.
+     */
+    public static String toChromeTraceJson() throws JSONException {
+        long now = System.nanoTime() - originNanos;
+        int pid = Process.myPid();
+        JSONArray events = new JSONArray();
+        // Chrome traces start at 0, so the process start is the zero point here
+        long processStartMicros = processStartOffsetMillis() * 1000;
+        events.put(completeEvent("Process.start", 0, processStartMicros, pid, pid));
+        int total = recorded();
+        for (int i = 0; i < total; i++) {
+            String name = names.get(i);
+            if (name == null) {
+                continue;
+            }
+            long end = ends.get(i);
+            boolean unfinished = end == UNFINISHED;
+            if (unfinished) {
+                end = now;
+            }
+            JSONObject event = completeEvent(name, processStartMicros + starts[i] / 1000, (end - starts[i]) / 1000, pid, threadIds[i]);
+            if (unfinished) {
+                event.put("args", new JSONObject().put("unfinished", true));
+            }
+            events.put(event);
+        }
+        return new JSONObject()
+                .put("traceEvents", events)
+                .put("displayTimeUnit", "ms")
+                .toString();
+    }
+
+    private static JSONObject completeEvent(String name, long startMicros, long durationMicros, int pid, long tid) throws JSONException {
+        return new JSONObject()
+                .put("name", name)
+                .put("cat", "startup")
+                .put("ph", "X")
+                .put("ts", startMicros)
+                .put("dur", durationMicros)
+                .put("pid", pid)
+                .put("tid", tid);
+    }
+}
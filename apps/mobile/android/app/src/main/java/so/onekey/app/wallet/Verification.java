@@ -1,6 +1,9 @@
 package so.onekey.app.wallet;
 
+import android.content.Context;
+
 import org.bouncycastle.bcpg.ArmoredInputStream;
+import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
 import org.bouncycastle.openpgp.PGPSignature;
@@ -9,15 +12,10 @@ import org.bouncycastle.openpgp.PGPSignatureList;
 import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
 import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
-import org.bouncycastle.util.Strings;
 import org.bouncycastle.openpgp.PGPUtil;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -27,6 +25,8 @@ import java.security.SignatureException;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import so.onekey.app.wallet.update.SignatureCache;
+
 public class Verification {
     private static final void setupBouncyCastle() {
         final Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
@@ -46,6 +46,43 @@ public class Verification {
         Security.insertProviderAt(new BouncyCastleProvider(), 1);
     }
 
+    private static volatile PGPPublicKeyRingCollection publicKeyRings;
+    private static volatile JcaPGPContentVerifierBuilderProvider contentVerifierBuilderProvider;
+
+    // The key ring never changes, parse the armored key once and share it between verifications.
+    private static PGPPublicKeyRingCollection getPublicKeyRings() throws IOException, PGPException {
+        PGPPublicKeyRingCollection rings = publicKeyRings;
+        if (rings == null) {
+            synchronized (Verification.class) {
+                rings = publicKeyRings;
+                if (rings == null) {
+                    InputStream keyIn = PGPUtil.getDecoderStream(new ByteArrayInputStream(PUBLIC_KEY.getBytes()));
+                    rings = new PGPPublicKeyRingCollection(keyIn, new JcaKeyFingerprintCalculator());
+                    publicKeyRings = rings;
+                }
+            }
+        }
+        return rings;
+    }
+
+    // Swaps in the bundled BC provider only once; retried until our provider is the registered one.
+    private static JcaPGPContentVerifierBuilderProvider getContentVerifierBuilderProvider() {
+        JcaPGPContentVerifierBuilderProvider builderProvider = contentVerifierBuilderProvider;
+        if (builderProvider == null) {
+            synchronized (Verification.class) {
+                builderProvider = contentVerifierBuilderProvider;
+                if (builderProvider == null) {
+                    setupBouncyCastle();
+                    builderProvider = new JcaPGPContentVerifierBuilderProvider().setProvider("BC");
+                    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) instanceof BouncyCastleProvider) {
+                        contentVerifierBuilderProvider = builderProvider;
+                    }
+                }
+            }
+        }
+        return builderProvider;
+    }
+
     private static final String PUBLIC_KEY = "-----BEGIN PGP PUBLIC KEY BLOCK-----\n" +
             "\n" +
             "mQINBGJATGwBEADL1K7b8dzYYzlSsvAGiA8mz042pygB7AAh/uFUycpNQdSzuoDE\n" +
@@ -160,42 +197,29 @@ public class Verification {
     }
 
     /*
-     * verify a clear text signed file
+     * verify a clear text signed message in memory and return the signed text, or null when the
+     * signature does not match. The cleartext is read once: each line is kept as it appears in
+     * the message for the result and, without trailing white space and joined by CRLF
+     * (RFC 4880 Section 7.1), as the data the signature is checked against.
      */
-    private static boolean verifyFile(
-            InputStream        in,
-            InputStream        keyIn,
-            String             resultName
-    )
+    private static String verifyClearSignedMessage(byte[] message)
             throws Exception
     {
-        ArmoredInputStream    aIn = new ArmoredInputStream(in);
-        OutputStream          out = new BufferedOutputStream(new FileOutputStream(resultName));
-
-
+        ArmoredInputStream    aIn = new ArmoredInputStream(new ByteArrayInputStream(message));
+        ByteArrayOutputStream textOut = new ByteArrayOutputStream(message.length);
+        ByteArrayOutputStream signedOut = new ByteArrayOutputStream(message.length);
 
-        //
-        // write out signed section using the local line separator.
-        // note: trailing white space needs to be removed from the end of
-        // each line RFC 4880 Section 7.1
-        //
         ByteArrayOutputStream lineOut = new ByteArrayOutputStream();
         int                   lookAhead = readInputLine(lineOut, aIn);
-        byte[]                lineSep = getLineSeparator();
 
         if (lookAhead != -1 && aIn.isClearText())
         {
-            byte[] line = lineOut.toByteArray();
-            out.write(line, 0, getLengthWithoutSeparatorOrTrailingWhitespace(line));
-            out.write(lineSep);
+            appendLine(textOut, signedOut, lineOut.toByteArray());
 
             while (lookAhead != -1 && aIn.isClearText())
             {
                 lookAhead = readInputLine(lineOut, lookAhead, aIn);
-
-                line = lineOut.toByteArray();
-                out.write(line, 0, getLengthWithoutSeparatorOrTrailingWhitespace(line));
-                out.write(lineSep);
+                appendLine(textOut, signedOut, lineOut.toByteArray());
             }
         }
         else
@@ -203,74 +227,32 @@ public class Verification {
             // a single line file
             if (lookAhead != -1)
             {
-                byte[] line = lineOut.toByteArray();
-                out.write(line, 0, getLengthWithoutSeparatorOrTrailingWhitespace(line));
-                out.write(lineSep);
+                appendLine(textOut, signedOut, lineOut.toByteArray());
             }
         }
 
-        out.close();
-
-        PGPPublicKeyRingCollection pgpRings = new PGPPublicKeyRingCollection(keyIn, new JcaKeyFingerprintCalculator());
-
         JcaPGPObjectFactory           pgpFact = new JcaPGPObjectFactory(aIn);
         PGPSignatureList           p3 = (PGPSignatureList)pgpFact.nextObject();
         PGPSignature               sig = p3.get(0);
-        PGPPublicKey publicKey = pgpRings.getPublicKey(sig.getKeyID());
-        setupBouncyCastle();
-        sig.init(new JcaPGPContentVerifierBuilderProvider().setProvider("BC"), publicKey);
-
-        //
-        // read the input, making sure we ignore the last newline.
-        //
-
-        InputStream sigIn = new BufferedInputStream(new FileInputStream(resultName));
-
-        lookAhead = readInputLine(lineOut, sigIn);
-
-        processLine(sig, lineOut.toByteArray());
-
-        if (lookAhead != -1)
-        {
-            do
-            {
-                lookAhead = readInputLine(lineOut, lookAhead, sigIn);
-
-                sig.update((byte)'\r');
-                sig.update((byte)'\n');
-
-                processLine(sig, lineOut.toByteArray());
-            }
-            while (lookAhead != -1);
-        }
-
-        sigIn.close();
-
-        boolean isVerified = sig.verify();
-        return isVerified;
-    }
-
-    private static byte[] getLineSeparator()
-    {
-        String nl = Strings.lineSeparator();
-        byte[] nlBytes = new byte[nl.length()];
+        PGPPublicKey publicKey = getPublicKeyRings().getPublicKey(sig.getKeyID());
+        sig.init(getContentVerifierBuilderProvider(), publicKey);
+        sig.update(signedOut.toByteArray());
 
-        for (int i = 0; i != nlBytes.length; i++)
-        {
-            nlBytes[i] = (byte)nl.charAt(i);
+        if (!sig.verify()) {
+            return null;
         }
-
-        return nlBytes;
+        return textOut.toString();
     }
 
-    private static void processLine(PGPSignature sig, byte[] line)
-            throws SignatureException, IOException
+    private static void appendLine(ByteArrayOutputStream textOut, ByteArrayOutputStream signedOut, byte[] line)
     {
-        int length = getLengthWithoutWhiteSpace(line);
-        if (length > 0)
+        if (textOut.size() > 0)
         {
-            sig.update(line, 0, length);
+            signedOut.write('\r');
+            signedOut.write('\n');
         }
+        textOut.write(line, 0, line.length);
+        signedOut.write(line, 0, getLengthWithoutWhiteSpace(line));
     }
 
     private static void processLine(OutputStream aOut, PGPSignatureGenerator sGen, byte[] line)
@@ -287,18 +269,6 @@ public class Verification {
         aOut.write(line, 0, line.length);
     }
 
-    private static int getLengthWithoutSeparatorOrTrailingWhitespace(byte[] line)
-    {
-        int    end = line.length - 1;
-
-        while (end >= 0 && isWhiteSpace(line[end]))
-        {
-            end--;
-        }
-
-        return end + 1;
-    }
-
     private static boolean isLineEnding(byte b)
     {
         return b == '\r' || b == '\n';
@@ -321,33 +291,49 @@ public class Verification {
         return isLineEnding(b) || b == '\t' || b == ' ';
     }
 
-    public static String extractedTextContentFromVerifyAscFile(String ascFileContent, String cacheFilePath) throws Exception {
-        InputStream  keyIn = PGPUtil.getDecoderStream(new ByteArrayInputStream(PUBLIC_KEY.getBytes()));
-        InputStream in = new ByteArrayInputStream(ascFileContent.getBytes());
-        boolean isVerified = verifyFile(in, keyIn, cacheFilePath);
-        if (!isVerified) {
-            return "";
-        }
-        ArmoredInputStream ascFileContentIn = new ArmoredInputStream(new ByteArrayInputStream(ascFileContent.getBytes()));
-        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-        int ch;
-
-        while ((ch = ascFileContentIn.read()) >= 0 && ascFileContentIn.isClearText())
-        {
-            bOut.write((byte)ch);
-        }
-        ascFileContentIn.close();
-        // Filter out lines that start with "Hash:" (similar to desktop implementation)
-        return bOut.toString();
+    public static String extractedTextContentFromVerifyAscFile(String ascFileContent) throws Exception {
+        String content = verifyClearSignedMessage(ascFileContent.getBytes());
+        return content != null ? content : "";
     }
 
-    public static String extractedSha256FromVerifyAscFile(String ascFileContent, String cacheFilePath) throws Exception {
-        String extractedTextContent = extractedTextContentFromVerifyAscFile(ascFileContent, cacheFilePath);
+    public static String extractedSha256FromVerifyAscFile(String ascFileContent) throws Exception {
+        String extractedTextContent = extractedTextContentFromVerifyAscFile(ascFileContent);
         String extractedSha256 = extractedTextContent.split(" ")[0];
         return extractedSha256;
     }
 
-    public static boolean testExtractedSha256FromVerifyAscFile(String cacheFilePath) throws Exception {
+    /**
+     * Same as {@link #extractedTextContentFromVerifyAscFile(String)}, but a signature that already
+     * verified against this key ring is answered from {@link SignatureCache} without PGP.
+     */
+    public static String extractedTextContentFromVerifyAscFile(Context context, String ascFileContent) throws Exception {
+        String keyRingSha256 = getKeyRingSha256();
+        String cached = SignatureCache.readVerifiedText(context, ascFileContent, keyRingSha256);
+        if (cached != null) {
+            return cached;
+        }
+        String content = extractedTextContentFromVerifyAscFile(ascFileContent);
+        if (!content.isEmpty()) {
+            SignatureCache.storeVerifiedText(context, ascFileContent, keyRingSha256, content);
+        }
+        return content;
+    }
+
+    public static String extractedSha256FromVerifyAscFile(Context context, String ascFileContent) throws Exception {
+        String extractedTextContent = extractedTextContentFromVerifyAscFile(context, ascFileContent);
+        return extractedTextContent.split(" ")[0];
+    }
+
+    private static String keyRingSha256;
+
+    private static synchronized String getKeyRingSha256() {
+        if (keyRingSha256 == null) {
+            keyRingSha256 = SignatureCache.sha256(PUBLIC_KEY);
+        }
+        return keyRingSha256;
+    }
+
+    public static boolean testExtractedSha256FromVerifyAscFile() throws Exception {
         String ascFileContent = "-----BEGIN PGP SIGNED MESSAGE-----\n" +
                 "Hash: SHA256\n" +
                 "\n" +
@@ -374,7 +360,7 @@ public class Verification {
                 "91Js0rQ=\n" +
                 "=A/Ii\n" +
                 "-----END PGP SIGNATURE-----";
-        String content = extractedTextContentFromVerifyAscFile(ascFileContent, cacheFilePath);
+        String content = extractedTextContentFromVerifyAscFile(ascFileContent);
 
         String ascFileContent2 = "-----BEGIN PGP SIGNED MESSAGE-----\n" +
                 "Hash: SHA256\n" +
@@ -398,7 +384,7 @@ public class Verification {
                 "=tnDs\n" +
                 "-----END PGP SIGNATURE-----";
         
-        String extractedSha256 = extractedSha256FromVerifyAscFile(ascFileContent2, cacheFilePath);
+        String extractedSha256 = extractedSha256FromVerifyAscFile(ascFileContent2);
 
         if (content == null || content.isEmpty()) {
             return false;
@@ -7,6 +7,8 @@ import android.view.View;
 import android.view.ViewGroup;
 import java.lang.ref.WeakReference;
 
+import so.onekey.app.wallet.StartupTrace;
+
 public class SplashScreenViewController {
     private static final long SEARCH_FOR_ROOT_VIEW_INTERVAL = 20L;
 
@@ -83,6 +85,7 @@ public class SplashScreenViewController {
 
         new Handler(activity.getMainLooper()).post(() -> {
             contentView.removeView(splashScreenView);
+            StartupTrace.mark("SplashScreen.hide");
             autoHideEnabled = true;
             splashScreenShown = false;
             if (successCallback != null) {
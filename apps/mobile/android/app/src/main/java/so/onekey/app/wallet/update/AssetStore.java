@@ -0,0 +1,167 @@
+package so.onekey.app.wallet.update;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Content-addressed store shared by all installed bundles: {@code <dir>/<sha[0..2]>/<sha256>}.
+ * <p>
+ * Bundle directories keep their usual layout, but each verified file is a hard link to the
+ * object with its hash, so identical assets across the active and fallback bundles occupy disk
+ * once. The link count of an object is its reference count: every bundle file is one more link,
+ * and {@link #collectGarbage()} drops objects whose only remaining link is the store itself.
+ * Objects are only ever created from files that were just checked against a signed
+ * {@code metadata.json}. Still, an object is hashed again before it is linked into a bundle or
+ * replaces a bundle file: objects live in app storage for as long as any bundle uses them, and a
+ * corrupted or tampered one would otherwise spread into every bundle that shares its hash.
+ */
+public class AssetStore {
+    private static final int HASH_LENGTH = 64;
+
+    private final File dir;
+
+    public AssetStore(File dir) {
+        this.dir = dir;
+    }
+
+    private File objectFile(String sha256) {
+        return new File(new File(dir, sha256.substring(0, 2)), sha256);
+    }
+
+    private static boolean isHash(String sha256) {
+        if (sha256 == null || sha256.length() != HASH_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            char c = sha256.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The stored object with this hash, or null. */
+    public File find(String sha256) {
+        if (!isHash(sha256)) {
+            return null;
+        }
+        File object = objectFile(sha256);
+        return object.isFile() ? object : null;
+    }
+
+    /**
+     * Hard-links the object with this hash to {@code target}. Returns false when there is no such
+     * object, it cannot be linked, or its content no longer matches its hash, in which case it is
+     * deleted. Holds the store lock, so a concurrent {@link #collectGarbage()} cannot delete the
+     * object halfway.
+     */
+    public synchronized boolean linkTo(String sha256, File target) {
+        File object = find(sha256);
+        if (object == null || !isIntact(object, sha256)) {
+            return false;
+        }
+        try {
+            Os.link(object.getAbsolutePath(), target.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    // Deletes the object when it does not hash to its name
+    private static boolean isIntact(File object, String sha256) {
+        try {
+            if (sha256.equals(FileHasher.sha256(object))) {
+                return true;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        object.delete();
+        return false;
+    }
+
+    /**
+     * Turns every file of a verified bundle directory into a link to its object, adding objects
+     * that are not stored yet. A stored object that does not match its hash is replaced by the
+     * bundle's file. Failures leave the file as it is, the bundle stays usable and is merely not
+     * deduplicated. Returns the number of files that now share an existing object.
+     */
+    public synchronized int intern(File bundleDir, Map<String, String> metadata) {
+        int shared = 0;
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            String sha256 = entry.getValue();
+            if (!isHash(sha256)) {
+                continue;
+            }
+            File file = new File(bundleDir, entry.getKey());
+            if (!file.isFile()) {
+                continue;
+            }
+            File object = objectFile(sha256);
+            try {
+                if (object.isFile() && sameInode(file, object)) {
+                    continue;
+                }
+                if (object.isFile() && object.length() == file.length() && isIntact(object, sha256)) {
+                    // Link next to the file, then rename over it, the path never goes missing
+                    File tmp = new File(file.getAbsolutePath() + ".link");
+                    tmp.delete();
+                    Os.link(object.getAbsolutePath(), tmp.getAbsolutePath());
+                    Os.rename(tmp.getAbsolutePath(), file.getAbsolutePath());
+                    shared++;
+                } else {
+                    // Missing or bad object, the verified file becomes the object
+                    object.getParentFile().mkdirs();
+                    File tmp = new File(object.getAbsolutePath() + ".tmp");
+                    tmp.delete();
+                    Os.link(file.getAbsolutePath(), tmp.getAbsolutePath());
+                    Os.rename(tmp.getAbsolutePath(), object.getAbsolutePath());
+                }
+            } catch (ErrnoException e) {
+                // Leave this file on its own
+            }
+        }
+        return shared;
+    }
+
+    /** Deletes objects no bundle links to anymore, returns how many were removed. */
+    public synchronized int collectGarbage() {
+        int removed = 0;
+        File[] shards = dir.listFiles();
+        if (shards == null) {
+            return 0;
+        }
+        for (File shard : shards) {
+            File[] objects = shard.listFiles();
+            if (objects == null) {
+                continue;
+            }
+            for (File object : objects) {
+                try {
+                    if (!isHash(object.getName()) || Os.stat(object.getAbsolutePath()).st_nlink <= 1) {
+                        if (object.delete()) {
+                            removed++;
+                        }
+                    }
+                } catch (ErrnoException ignored) {
+                }
+            }
+            // Only succeeds once the shard is empty
+            shard.delete();
+        }
+        return removed;
+    }
+
+    private static boolean sameInode(File a, File b) throws ErrnoException {
+        StructStat statA = Os.stat(a.getAbsolutePath());
+        StructStat statB = Os.stat(b.getAbsolutePath());
+        return statA.st_dev == statB.st_dev && statA.st_ino == statB.st_ino;
+    }
+}
@@ -0,0 +1,147 @@
+package so.onekey.app.wallet.update;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Applies a bsdiff 4 style binary patch. The layout is the classic one, except that the three
+ * blocks are zlib (deflate) streams instead of bzip2, which the platform does not ship:
+ * <pre>
+ * 0   8  magic "BSDIFF4D"
+ * 8   8  length of the compressed control block
+ * 16  8  length of the compressed diff block
+ * 24  8  size of the new file
+ * 32  -  control block, then diff block, then extra block
+ * </pre>
+ * Numbers use bsdiff's sign-magnitude little-endian encoding. The control block is a list of
+ * (x, y, z) triples: add x diff bytes to the old file, copy y extra bytes, then seek the old
+ * file by z.
+ */
+public class BsPatch {
+    public static final String PATCH_SUFFIX = ".bsdiff";
+
+    private static final byte[] MAGIC = "BSDIFF4D".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void apply(File oldFile, File patchFile, OutputStream out) throws IOException {
+        long ctrlLength;
+        long diffLength;
+        long newSize;
+        try (DataInputStream header = new DataInputStream(new FileInputStream(patchFile))) {
+            byte[] bytes = new byte[HEADER_SIZE];
+            header.readFully(bytes);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (bytes[i] != MAGIC[i]) {
+                    throw new IOException("Not a BSDIFF4D patch");
+                }
+            }
+            ctrlLength = offtin(bytes, 8);
+            diffLength = offtin(bytes, 16);
+            newSize = offtin(bytes, 24);
+        }
+        if (ctrlLength < 0 || diffLength < 0 || newSize < 0
+                || HEADER_SIZE + ctrlLength + diffLength > patchFile.length()) {
+            throw new IOException("Corrupt patch header");
+        }
+
+        try (RandomAccessFile oldRaf = new RandomAccessFile(oldFile, "r");
+             FileChannel oldChannel = oldRaf.getChannel();
+             InputStream ctrl = blockStream(patchFile, HEADER_SIZE);
+             InputStream diff = blockStream(patchFile, HEADER_SIZE + ctrlLength);
+             InputStream extra = blockStream(patchFile, HEADER_SIZE + ctrlLength + diffLength)) {
+            long oldSize = oldChannel.size();
+            if (oldSize > Integer.MAX_VALUE) {
+                throw new IOException("Old file too large to patch");
+            }
+            MappedByteBuffer old = oldChannel.map(FileChannel.MapMode.READ_ONLY, 0, oldSize);
+            byte[] triple = new byte[24];
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long newPos = 0;
+            long oldPos = 0;
+            while (newPos < newSize) {
+                readFully(ctrl, triple, 24);
+                long x = offtin(triple, 0);
+                long y = offtin(triple, 8);
+                long z = offtin(triple, 16);
+                if (x < 0 || y < 0 || newPos + x + y > newSize) {
+                    throw new IOException("Corrupt patch control block");
+                }
+
+                long remaining = x;
+                while (remaining > 0) {
+                    int length = (int) Math.min(buffer.length, remaining);
+                    readFully(diff, buffer, length);
+                    for (int i = 0; i < length; i++) {
+                        long position = oldPos + i;
+                        if (position >= 0 && position < oldSize) {
+                            buffer[i] += old.get((int) position);
+                        }
+                    }
+                    out.write(buffer, 0, length);
+                    oldPos += length;
+                    remaining -= length;
+                }
+                newPos += x;
+
+                remaining = y;
+                while (remaining > 0) {
+                    int length = (int) Math.min(buffer.length, remaining);
+                    readFully(extra, buffer, length);
+                    out.write(buffer, 0, length);
+                    remaining -= length;
+                }
+                newPos += y;
+                oldPos += z;
+            }
+        }
+    }
+
+    private static InputStream blockStream(File patchFile, long offset) throws IOException {
+        FileInputStream fis = new FileInputStream(patchFile);
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = fis.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new EOFException("Patch truncated");
+                }
+                skipped += n;
+            }
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+        return new InflaterInputStream(new BufferedInputStream(fis, BUFFER_SIZE));
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(buffer, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Patch truncated");
+            }
+            offset += read;
+        }
+    }
+
+    private static long offtin(byte[] bytes, int offset) {
+        long value = bytes[offset + 7] & 0x7f;
+        for (int i = 6; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return (bytes[offset + 7] & 0x80) != 0 ? -value : value;
+    }
+}
@@ -0,0 +1,347 @@
+package so.onekey.app.wallet.update;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts a bundle zip in a single pass, hashing every entry while it is inflated and checking
+ * it against the {@code metadata.json} map, whose own hash comes from the signed .asc payload.
+ * <p>
+ * Entries are inflated into a {@code <dest>.staging} sibling directory which only replaces
+ * {@code dest} once every file has been verified, so a tampered or truncated bundle never
+ * reaches its final path. Entries that arrive before {@code metadata.json} are checked as soon
+ * as it has been read; the first mismatch aborts the extraction. The {@link ManifestIndex} of the
+ * metadata is written alongside it, so later checks of the installed bundle can skip the JSON.
+ */
+public class BundleExtractor {
+    public static final String METADATA_FILE_NAME = "metadata.json";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class VerificationException extends IOException {
+        public VerificationException(String message) {
+            super(message);
+        }
+    }
+
+    /** What was extracted, so later steps can confirm the directory is still intact cheaply. */
+    public static class Result {
+        public final Map<String, String> metadata;
+        public final Map<String, Long> fileSizes;
+
+        Result(Map<String, String> metadata, Map<String, Long> fileSizes) {
+            this.metadata = metadata;
+            this.fileSizes = fileSizes;
+        }
+
+        // Every extracted file is still present with the size it was verified at.
+        public boolean matchesOnDisk(File dir) {
+            for (Map.Entry<String, Long> entry : fileSizes.entrySet()) {
+                File file = new File(dir, entry.getKey());
+                if (!file.isFile() || file.length() != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final File zipFile;
+    private final File destDir;
+    private final String metadataSha256;
+    private File baseDir;
+
+    public BundleExtractor(File zipFile, File destDir, String metadataSha256) {
+        this.zipFile = zipFile;
+        this.destDir = destDir;
+        this.metadataSha256 = metadataSha256;
+    }
+
+    /**
+     * Treats the zip as a delta update against {@code baseDir}: {@code <path>.bsdiff} entries are
+     * {@link BsPatch} patches against the base file at {@code <path>}, and every file listed in
+     * the new metadata that the zip does not carry is linked or copied from the base bundle. All
+     * of them are hashed and checked like regular entries.
+     */
+    public void setBaseDir(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    public Result extract() throws IOException {
+        File stagingDir = new File(destDir.getParentFile(), destDir.getName() + ".staging");
+        File patchTmpFile = new File(destDir.getParentFile(), destDir.getName() + ".bsdiff.tmp");
+        deleteRecursively(stagingDir);
+        if (!stagingDir.mkdirs()) {
+            throw new IOException("Failed to create staging dir: " + stagingDir.getAbsolutePath());
+        }
+        String stagingRoot = stagingDir.getCanonicalPath() + File.separator;
+
+        Map<String, String> metadata = null;
+        // Hashes of files inflated before metadata.json was seen
+        Map<String, String> pending = new HashMap<>();
+        Map<String, Long> fileSizes = new HashMap<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        MessageDigest digest = newSha256();
+
+        try (ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile), BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                File outFile = new File(stagingDir, entryName);
+                String outPath = outFile.getCanonicalPath();
+                // Ensure that the output file is within the destination directory
+                if (!outPath.startsWith(stagingRoot)) {
+                    throw new IOException("Entry is outside of the target dir: " + entryName);
+                }
+                String relativePath = outPath.substring(stagingRoot.length()).replace(File.separatorChar, '/');
+
+                if (entry.isDirectory()) {
+                    outFile.mkdirs();
+                } else if (relativePath.equals(METADATA_FILE_NAME)) {
+                    byte[] content = readFully(zipIn, buffer);
+                    digest.reset();
+                    String actual = StreamingDigest.toHex(digest.digest(content));
+                    if (!actual.equals(metadataSha256)) {
+                        throw new VerificationException("SHA256 mismatch for " + METADATA_FILE_NAME + ". Expected: " + metadataSha256 + ", Actual: " + actual);
+                    }
+                    metadata = parseMetadata(content);
+                    for (Map.Entry<String, String> hashed : pending.entrySet()) {
+                        checkHash(metadata, hashed.getKey(), hashed.getValue());
+                    }
+                    pending.clear();
+                    writeFile(outFile, content);
+                    fileSizes.put(relativePath, (long) content.length);
+                } else if (outFile.getName().contains(METADATA_FILE_NAME) || outFile.getName().contains(".DS_Store")) {
+                    // Extracted as before, but not covered by the metadata so never hash-checked
+                    outFile.getParentFile().mkdirs();
+                    try (FileOutputStream fos = new FileOutputStream(outFile)) {
+                        copy(zipIn, fos, null, buffer);
+                    }
+                    fileSizes.put(relativePath, outFile.length());
+                } else {
+                    if (baseDir != null && relativePath.endsWith(BsPatch.PATCH_SUFFIX)) {
+                        relativePath = relativePath.substring(0, relativePath.length() - BsPatch.PATCH_SUFFIX.length());
+                        outFile = new File(stagingDir, relativePath);
+                        try (FileOutputStream fos = new FileOutputStream(patchTmpFile)) {
+                            copy(zipIn, fos, null, buffer);
+                        }
+                        outFile.getParentFile().mkdirs();
+                        digest.reset();
+                        try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(outFile), BUFFER_SIZE), digest)) {
+                            BsPatch.apply(baseFile(relativePath), patchTmpFile, out);
+                        }
+                        patchTmpFile.delete();
+                    } else {
+                        outFile.getParentFile().mkdirs();
+                        digest.reset();
+                        try (FileOutputStream fos = new FileOutputStream(outFile)) {
+                            copy(zipIn, fos, digest, buffer);
+                        }
+                    }
+                    String actual = StreamingDigest.toHex(digest.digest());
+                    if (metadata != null) {
+                        checkHash(metadata, relativePath, actual);
+                    } else {
+                        pending.put(relativePath, actual);
+                    }
+                    fileSizes.put(relativePath, outFile.length());
+                }
+                zipIn.closeEntry();
+            }
+
+            if (metadata == null) {
+                throw new VerificationException(METADATA_FILE_NAME + " not found in bundle");
+            }
+            if (baseDir != null) {
+                copyUnchangedFromBase(metadata, stagingDir, fileSizes, buffer);
+            }
+            ManifestIndex.write(stagingDir, metadata, metadataSha256);
+            replaceDestination(stagingDir, destDir);
+            return new Result(metadata, fileSizes);
+        } catch (IOException e) {
+            deleteRecursively(stagingDir);
+            throw e;
+        } finally {
+            patchTmpFile.delete();
+        }
+    }
+
+    private void copyUnchangedFromBase(Map<String, String> metadata, File stagingDir, Map<String, Long> fileSizes,
+                                       byte[] buffer) throws IOException {
+        for (String relativePath : metadata.keySet()) {
+            if (fileSizes.containsKey(relativePath)) {
+                continue;
+            }
+            File outFile = new File(stagingDir, relativePath);
+            outFile.getParentFile().mkdirs();
+            linkOrCopy(baseFile(relativePath), outFile, buffer);
+            checkHash(metadata, relativePath, FileHasher.sha256(outFile));
+            fileSizes.put(relativePath, outFile.length());
+        }
+    }
+
+    private File baseFile(String relativePath) throws IOException {
+        File file = new File(baseDir, relativePath);
+        if (!file.getCanonicalPath().startsWith(baseDir.getCanonicalPath() + File.separator)) {
+            throw new IOException("Path is outside of the base dir: " + relativePath);
+        }
+        if (!file.isFile()) {
+            throw new VerificationException("File " + relativePath + " not found in base bundle");
+        }
+        return file;
+    }
+
+    private static void copy(InputStream in, OutputStream out, MessageDigest digest, byte[] buffer) throws IOException {
+        int length;
+        while ((length = in.read(buffer)) > 0) {
+            if (digest != null) {
+                digest.update(buffer, 0, length);
+            }
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Hard-links {@code target} to {@code source}, bundle files are never written after they are
+     * in place so both directories can share the inode. Falls back to a copy where links are not
+     * supported.
+     */
+    static void linkOrCopy(File source, File target, byte[] buffer) throws IOException {
+        try {
+            Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+            return;
+        } catch (ErrnoException e) {
+            target.delete();
+        }
+        try (FileInputStream fis = new FileInputStream(source);
+             FileOutputStream fos = new FileOutputStream(target)) {
+            copy(fis, fos, null, buffer);
+        }
+    }
+
+    /**
+     * Moves {@code stagingDir} to {@code destDir}. An existing {@code destDir} is first renamed to
+     * {@code <destDir>.old}, so this is two renames rather than one: a crash between them leaves
+     * only {@code <destDir>.old}, which {@link #recoverInterruptedReplace} puts back at startup.
+     */
+    static void replaceDestination(File stagingDir, File destDir) throws IOException {
+        File oldDir = null;
+        if (destDir.exists()) {
+            oldDir = new File(destDir.getParentFile(), destDir.getName() + ".old");
+            deleteRecursively(oldDir);
+            if (!destDir.renameTo(oldDir)) {
+                deleteRecursively(destDir);
+                oldDir = null;
+            }
+        }
+        if (!stagingDir.renameTo(destDir)) {
+            // Put the previous copy back rather than leave nothing at the final path
+            if (oldDir != null) {
+                oldDir.renameTo(destDir);
+            }
+            throw new IOException("Failed to move extracted bundle into place: " + destDir.getAbsolutePath());
+        }
+        if (oldDir != null) {
+            deleteRecursively(oldDir);
+        }
+    }
+
+    /**
+     * Undoes what a crash in {@link #replaceDestination} left in {@code parentDir}: a
+     * {@code <name>.old} directory whose {@code <name>} is gone is renamed back, so the bundle
+     * that was live before the crash is live again. Returns the leftovers that are no longer
+     * needed, {@code .old} copies of a bundle that is in place and unfinished {@code .staging}
+     * directories, for the caller to delete. Must run before any extraction can start.
+     */
+    public static List<File> recoverInterruptedReplace(File parentDir) {
+        List<File> leftovers = new ArrayList<>();
+        File[] children = parentDir.listFiles();
+        if (children == null) {
+            return leftovers;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (!child.isDirectory()) {
+                continue;
+            }
+            if (name.endsWith(".old")) {
+                File destDir = new File(parentDir, name.substring(0, name.length() - ".old".length()));
+                if (destDir.exists() || !child.renameTo(destDir)) {
+                    leftovers.add(child);
+                }
+            } else if (name.endsWith(".staging")) {
+                leftovers.add(child);
+            }
+        }
+        return leftovers;
+    }
+
+    static void checkHash(Map<String, String> metadata, String relativePath, String actual) throws VerificationException {
+        String expected = metadata.get(relativePath);
+        if (expected == null) {
+            throw new VerificationException("File " + relativePath + " not found in metadata");
+        }
+        if (!expected.equals(actual)) {
+            throw new VerificationException("SHA256 mismatch for file " + relativePath + ". Expected: " + expected + ", Actual: " + actual);
+        }
+    }
+
+    static Map<String, String> parseMetadata(byte[] content) throws VerificationException {
+        return ManifestJson.read(content);
+    }
+
+    private static byte[] readFully(ZipInputStream zipIn, byte[] buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int length;
+        while ((length = zipIn.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(content);
+        }
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,412 @@
+package so.onekey.app.wallet.update;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Everything the bundle updater has to remember across launches in one file: the active bundle,
+ * its signature, the native version it was installed for and the fallback bundles.
+ * <p>
+ * The file is a journal of complete states. Every change appends one record
+ * {@code <length><crc32><json>} and syncs it, the newest record that is whole and passes its CRC
+ * is the state. A crash mid-write therefore leaves the previous state in place, and the active
+ * bundle and the fallback list can never disagree because they are written together. Once the
+ * journal holds {@link #COMPACT_THRESHOLD} records, or has a torn tail, it is rewritten to the
+ * newest state through a temporary file and a rename.
+ * <p>
+ * The file is read once, later reads are served from memory. Changes are compare-and-swap on the
+ * state's generation, so {@link #update} never loses a concurrent change.
+ */
+public class BundleStateStore {
+    private static final int MAGIC = 0x4f4b4253; // "OKBS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    private static final int COMPACT_THRESHOLD = 32;
+
+    public static class Fallback {
+        public final String appVersion;
+        public final String bundleVersion;
+        public final String signature;
+
+        public Fallback(String appVersion, String bundleVersion, String signature) {
+            this.appVersion = appVersion;
+            this.bundleVersion = bundleVersion;
+            this.signature = signature != null ? signature : "";
+        }
+
+        public String folderName() {
+            return appVersion + "-" + bundleVersion;
+        }
+
+        /** The fallback for a folder named {@code appVersion-bundleVersion}, null for any other name. */
+        public static Fallback of(String folderName, String signature) {
+            String[] parts = folderName != null ? folderName.split("-") : new String[0];
+            if (parts.length < 2) {
+                return null;
+            }
+            return new Fallback(parts[0], parts[1], signature);
+        }
+    }
+
+    /** Immutable snapshot, changed through the {@code with} methods. */
+    public static class State {
+        public static final State EMPTY = new State(0, null, "", "", Collections.emptyList());
+
+        public final long generation;
+        /** Folder name of the active bundle, {@code appVersion-bundleVersion}, null for the built-in one. */
+        public final String currentBundle;
+        public final String currentSignature;
+        public final String nativeVersion;
+        /** Oldest first. */
+        public final List<Fallback> fallbacks;
+
+        State(long generation, String currentBundle, String currentSignature, String nativeVersion, List<Fallback> fallbacks) {
+            this.generation = generation;
+            this.currentBundle = currentBundle;
+            this.currentSignature = currentSignature != null ? currentSignature : "";
+            this.nativeVersion = nativeVersion != null ? nativeVersion : "";
+            this.fallbacks = Collections.unmodifiableList(new ArrayList<>(fallbacks));
+        }
+
+        public State withCurrent(String bundle, String signature) {
+            return new State(generation, bundle, signature, nativeVersion, fallbacks);
+        }
+
+        /**
+         * Makes {@code bundle} the active bundle and the active one a fallback, as installing
+         * does. Installing a fallback again swaps the two, so the list keeps both. An empty
+         * {@code signature} keeps the one recorded for the fallback.
+         */
+        public State withActivated(String bundle, String signature) {
+            String activatedSignature = signature != null ? signature : "";
+            List<Fallback> list = new ArrayList<>(fallbacks.size() + 1);
+            for (Fallback fallback : fallbacks) {
+                if (fallback.folderName().equals(bundle)) {
+                    if (activatedSignature.isEmpty()) {
+                        activatedSignature = fallback.signature;
+                    }
+                    continue;
+                }
+                list.add(fallback);
+            }
+            if (currentBundle != null && !currentBundle.equals(bundle)) {
+                Fallback previous = Fallback.of(currentBundle, currentSignature);
+                if (previous != null) {
+                    list.add(previous);
+                }
+            }
+            return new State(generation, bundle, activatedSignature, nativeVersion, list);
+        }
+
+        public State withNativeVersion(String version) {
+            return new State(generation, currentBundle, currentSignature, version, fallbacks);
+        }
+
+        public State withFallbacks(List<Fallback> list) {
+            return new State(generation, currentBundle, currentSignature, nativeVersion, list);
+        }
+
+        /** Signature of the active or a fallback bundle, "" for any other. */
+        public String signatureOf(String bundle) {
+            if (bundle == null) {
+                return "";
+            }
+            if (bundle.equals(currentBundle)) {
+                return currentSignature;
+            }
+            for (Fallback fallback : fallbacks) {
+                if (bundle.equals(fallback.folderName())) {
+                    return fallback.signature;
+                }
+            }
+            return "";
+        }
+
+        State withGeneration(long value) {
+            return new State(value, currentBundle, currentSignature, nativeVersion, fallbacks);
+        }
+
+        byte[] encode() throws JSONException {
+            JSONArray fallbackArray = new JSONArray();
+            for (Fallback fallback : fallbacks) {
+                fallbackArray.put(new JSONObject()
+                        .put("appVersion", fallback.appVersion)
+                        .put("bundleVersion", fallback.bundleVersion)
+                        .put("signature", fallback.signature));
+            }
+            JSONObject json = new JSONObject()
+                    .put("generation", generation)
+                    .put("currentBundle", currentBundle != null ? currentBundle : JSONObject.NULL)
+                    .put("currentSignature", currentSignature)
+                    .put("nativeVersion", nativeVersion)
+                    .put("fallbacks", fallbackArray);
+            return json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        static State decode(byte[] payload) throws IOException {
+            long generation = -1;
+            String currentBundle = null;
+            String currentSignature = "";
+            String nativeVersion = "";
+            List<Fallback> fallbacks = new ArrayList<>();
+            try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if (name.equals("generation")) {
+                        generation = reader.nextLong();
+                    } else if (name.equals("currentBundle")) {
+                        currentBundle = reader.nextString();
+                    } else if (name.equals("currentSignature")) {
+                        currentSignature = reader.nextString();
+                    } else if (name.equals("nativeVersion")) {
+                        nativeVersion = reader.nextString();
+                    } else if (name.equals("fallbacks")) {
+                        readFallbacks(reader, fallbacks);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } catch (RuntimeException e) {
+                throw new IOException(e);
+            }
+            if (generation < 0) {
+                throw new IOException("Missing generation");
+            }
+            return new State(generation, currentBundle, currentSignature, nativeVersion, fallbacks);
+        }
+
+        private static void readFallbacks(JsonReader reader, List<Fallback> fallbacks) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String appVersion = null;
+                String bundleVersion = null;
+                String signature = "";
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if (name.equals("appVersion")) {
+                        appVersion = reader.nextString();
+                    } else if (name.equals("bundleVersion")) {
+                        bundleVersion = reader.nextString();
+                    } else if (name.equals("signature")) {
+                        signature = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (appVersion == null || bundleVersion == null) {
+                    throw new IOException("Incomplete fallback entry");
+                }
+                fallbacks.add(new Fallback(appVersion, bundleVersion, signature));
+            }
+            reader.endArray();
+        }
+    }
+
+    public interface Mutation {
+        State apply(State current);
+    }
+
+    private final File file;
+    private State state;
+    private int records;
+    // Bytes of the file that hold the header and whole records, anything after it is a torn tail
+    private long validLength;
+    private boolean loaded;
+
+    public BundleStateStore(File file) {
+        this.file = file;
+    }
+
+    /** Whether a state was ever written, false before the first change or migration. */
+    public synchronized boolean exists() {
+        load();
+        return records > 0;
+    }
+
+    public synchronized State get() {
+        load();
+        return state;
+    }
+
+    /**
+     * Replaces the state with {@code updated} if it is still {@code expected}, and only returns
+     * once the new state is on disk. Returns false, and changes nothing, when another change came
+     * first or the write failed.
+     */
+    public synchronized boolean compareAndSet(State expected, State updated) {
+        load();
+        if (state.generation != expected.generation) {
+            return false;
+        }
+        State next = updated.withGeneration(expected.generation + 1);
+        try {
+            if (records == 0 || records + 1 >= COMPACT_THRESHOLD || validLength != file.length()) {
+                rewrite(next);
+            } else {
+                append(next);
+            }
+        } catch (IOException | JSONException e) {
+            return false;
+        }
+        state = next;
+        return true;
+    }
+
+    /** Applies {@code mutation} atomically, retrying on concurrent changes. Returns the new state. */
+    public State update(Mutation mutation) throws IOException {
+        for (int attempt = 0; attempt < 8; attempt++) {
+            State current = get();
+            if (compareAndSet(current, mutation.apply(current))) {
+                return get();
+            }
+            if (get().generation == current.generation) {
+                // Nothing raced us, the write itself failed
+                break;
+            }
+        }
+        throw new IOException("Failed to write bundle state");
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        state = State.EMPTY;
+        records = 0;
+        validLength = 0;
+        if (!file.exists()) {
+            return;
+        }
+        byte[] content;
+        try {
+            content = readFile(file);
+        } catch (IOException e) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return;
+        }
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            long crc = buffer.getInt() & 0xffffffffL;
+            if (length < 0 || length > MAX_RECORD_SIZE || length > buffer.remaining()) {
+                // Torn tail from an interrupted append
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (crc32(payload) != crc) {
+                break;
+            }
+            try {
+                state = State.decode(payload);
+                records++;
+                validLength = buffer.position();
+            } catch (IOException e) {
+                break;
+            }
+        }
+    }
+
+    private void append(State next) throws IOException, JSONException {
+        byte[] record = frame(next.encode());
+        try (FileOutputStream fos = new FileOutputStream(file, true)) {
+            fos.write(record);
+            fos.getFD().sync();
+        }
+        records++;
+        validLength += record.length;
+    }
+
+    // Replaces the whole journal with one record, also drops a torn tail or a foreign file
+    private void rewrite(State next) throws IOException, JSONException {
+        byte[] header = header();
+        byte[] record = frame(next.encode());
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            fos.write(header);
+            fos.write(record);
+            fos.getFD().sync();
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Failed to replace " + file.getName());
+        }
+        records = 1;
+        validLength = header.length + record.length;
+    }
+
+    private static byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] frame(byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_HEADER_SIZE + payload.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc32(payload));
+        out.write(payload);
+        return bytes.toByteArray();
+    }
+
+    private static long crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < content.length) {
+                int read = fis.read(content, offset, content.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return offset == content.length ? content : Arrays.copyOf(content, offset);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package so.onekey.app.wallet.update;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Builds a new bundle directory from the unpacked bundle published at {@code <filesUrl>/<path>}
+ * and the installed base bundle, fetching only the files whose hash changed.
+ * <p>
+ * The new {@code metadata.json} is fetched first and checked against the hash from the signed
+ * .asc payload. Files whose hash also appears in the base bundle's {@code metadata.json} are
+ * hard-linked from there (the base manifest is only used when it matches the base bundle's own
+ * signature), as are files already held by the {@link AssetStore}. Linked files are hashed again
+ * and downloaded when they no longer match, every other file is downloaded and hashed while it
+ * is written. The result goes through the same staging directory and rename as
+ * {@link BundleExtractor}.
+ * <p>
+ * Changed files are fetched as asynchronous calls on the client's dispatcher, so how many run
+ * at once is bounded by the limits {@link UpdateHttpClient} sets for all update traffic.
+ */
+public class BundleSync {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final OkHttpClient client;
+    private final String filesUrl;
+    private final File baseDir;
+    private final File destDir;
+    private final String metadataSha256;
+    private final String baseMetadataSha256;
+    private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+    private AssetStore assetStore;
+    private volatile boolean cancelled = false;
+
+    public BundleSync(OkHttpClient client, String filesUrl, File baseDir, String baseMetadataSha256,
+                      File destDir, String metadataSha256) {
+        this.client = client;
+        this.filesUrl = filesUrl.endsWith("/") ? filesUrl.substring(0, filesUrl.length() - 1) : filesUrl;
+        this.baseDir = baseDir;
+        this.baseMetadataSha256 = baseMetadataSha256;
+        this.destDir = destDir;
+        this.metadataSha256 = metadataSha256;
+    }
+
+    /** Files already in the store are linked from there before the base bundle is consulted. */
+    public void setAssetStore(AssetStore assetStore) {
+        this.assetStore = assetStore;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Call call : calls) {
+            call.cancel();
+        }
+    }
+
+    /** Reports the number of files fetched so far out of those that had to be fetched. */
+    public BundleExtractor.Result sync(ResumableDownload.ProgressListener listener) throws IOException {
+        byte[] metadataContent = fetch(BundleExtractor.METADATA_FILE_NAME);
+        MessageDigest digest = BundleExtractor.newSha256();
+        String actual = StreamingDigest.toHex(digest.digest(metadataContent));
+        if (!actual.equals(metadataSha256)) {
+            throw new BundleExtractor.VerificationException("SHA256 mismatch for " + BundleExtractor.METADATA_FILE_NAME + ". Expected: " + metadataSha256 + ", Actual: " + actual);
+        }
+        Map<String, String> metadata = BundleExtractor.parseMetadata(metadataContent);
+        Map<String, String> basePathsByHash = readBasePathsByHash();
+
+        File stagingDir = new File(destDir.getParentFile(), destDir.getName() + ".staging");
+        BundleExtractor.deleteRecursively(stagingDir);
+        if (!stagingDir.mkdirs()) {
+            throw new IOException("Failed to create staging dir: " + stagingDir.getAbsolutePath());
+        }
+        String stagingRoot = stagingDir.getCanonicalPath() + File.separator;
+        Map<String, Long> fileSizes = new ConcurrentHashMap<>();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            List<String> changed = new ArrayList<>();
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                String relativePath = entry.getKey();
+                File outFile = new File(stagingDir, relativePath);
+                if (!outFile.getCanonicalPath().startsWith(stagingRoot)) {
+                    throw new IOException("Path is outside of the target dir: " + relativePath);
+                }
+                outFile.getParentFile().mkdirs();
+                if (assetStore != null && assetStore.linkTo(entry.getValue(), outFile)) {
+                    fileSizes.put(relativePath, outFile.length());
+                    continue;
+                }
+                String basePath = basePathsByHash.get(entry.getValue());
+                File baseFile = basePath != null ? new File(baseDir, basePath) : null;
+                if (baseFile == null || !baseFile.isFile()) {
+                    changed.add(relativePath);
+                    continue;
+                }
+                BundleExtractor.linkOrCopy(baseFile, outFile, buffer);
+                if (!isIntact(outFile, entry.getValue())) {
+                    changed.add(relativePath);
+                    continue;
+                }
+                fileSizes.put(relativePath, outFile.length());
+            }
+
+            if (!changed.isEmpty()) {
+                fetchAll(changed, metadata, stagingDir, fileSizes, listener);
+            }
+
+            try (FileOutputStream fos = new FileOutputStream(new File(stagingDir, BundleExtractor.METADATA_FILE_NAME))) {
+                fos.write(metadataContent);
+            }
+            fileSizes.put(BundleExtractor.METADATA_FILE_NAME, (long) metadataContent.length);
+            ManifestIndex.write(stagingDir, metadata, metadataSha256);
+            BundleExtractor.replaceDestination(stagingDir, destDir);
+            return new BundleExtractor.Result(metadata, new HashMap<>(fileSizes));
+        } catch (IOException e) {
+            BundleExtractor.deleteRecursively(stagingDir);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues every changed file and waits until all of them settled, so no callback still writes
+     * into the staging directory once this returns. The first failure cancels the rest.
+     */
+    private void fetchAll(List<String> changed, Map<String, String> metadata, File stagingDir, Map<String, Long> fileSizes,
+                          ResumableDownload.ProgressListener listener) throws IOException {
+        int total = changed.size();
+        CountDownLatch remaining = new CountDownLatch(total);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        AtomicInteger done = new AtomicInteger();
+        for (String relativePath : changed) {
+            File outFile = new File(stagingDir, relativePath);
+            enqueueFetch(relativePath, outFile, 0, (sha256, error) -> {
+                try {
+                    if (error != null) {
+                        throw error;
+                    }
+                    BundleExtractor.checkHash(metadata, relativePath, sha256);
+                    fileSizes.put(relativePath, outFile.length());
+                    if (listener != null) {
+                        listener.onProgress(done.incrementAndGet(), total);
+                    }
+                } catch (IOException e) {
+                    if (failure.compareAndSet(null, e)) {
+                        cancel();
+                    }
+                } finally {
+                    remaining.countDown();
+                }
+            });
+        }
+        try {
+            remaining.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        IOException error = failure.get();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Whether a file linked from the base bundle still hashes to what the new metadata.json
+     * lists; {@link AssetStore#linkTo} does the same check for store objects. The base manifest
+     * only says what the file held when it was installed, so a file changed on disk since is
+     * dropped here and downloaded instead.
+     */
+    private static boolean isIntact(File file, String sha256) throws IOException {
+        if (sha256.equals(FileHasher.sha256(file))) {
+            return true;
+        }
+        // Only the link goes, the file it pointed to is left alone
+        file.delete();
+        return false;
+    }
+
+    // Hash -> path in the base bundle, empty when the base manifest cannot be trusted.
+    private Map<String, String> readBasePathsByHash() {
+        Map<String, String> pathsByHash = new HashMap<>();
+        if (baseDir == null || baseMetadataSha256 == null || baseMetadataSha256.isEmpty()) {
+            return pathsByHash;
+        }
+        File baseMetadataFile = new File(baseDir, BundleExtractor.METADATA_FILE_NAME);
+        try {
+            byte[] content = readFile(baseMetadataFile);
+            String actual = StreamingDigest.toHex(BundleExtractor.newSha256().digest(content));
+            if (!actual.equals(baseMetadataSha256)) {
+                return pathsByHash;
+            }
+            ManifestJson.read(new ByteArrayInputStream(content), (path, sha256) -> pathsByHash.put(sha256, path));
+        } catch (IOException ignored) {
+            pathsByHash.clear();
+        }
+        return pathsByHash;
+    }
+
+    private byte[] fetch(String relativePath) throws IOException {
+        Call call = newCall(relativePath);
+        try (Response response = execute(call)) {
+            return response.body().bytes();
+        } finally {
+            calls.remove(call);
+        }
+    }
+
+    private interface FetchCallback {
+        /** {@code error} is null when the file was written, {@code sha256} is its digest then. */
+        void onFetched(String sha256, IOException error);
+    }
+
+    // Streams one file into place on a dispatcher thread and reports its SHA-256, retrying once on network errors.
+    private void enqueueFetch(String relativePath, File outFile, int attempt, FetchCallback callback) {
+        Call call;
+        try {
+            call = newCall(relativePath);
+        } catch (IOException e) {
+            callback.onFetched(null, e);
+            return;
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                calls.remove(call);
+                retryOrFail(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                String sha256;
+                try {
+                    sha256 = writeBody(checked(response), outFile);
+                } catch (ResumableDownload.HttpStatusException e) {
+                    calls.remove(call);
+                    callback.onFetched(null, e);
+                    return;
+                } catch (IOException e) {
+                    calls.remove(call);
+                    retryOrFail(e);
+                    return;
+                }
+                calls.remove(call);
+                callback.onFetched(sha256, null);
+            }
+
+            private void retryOrFail(IOException e) {
+                if (!cancelled && attempt + 1 < MAX_ATTEMPTS) {
+                    enqueueFetch(relativePath, outFile, attempt + 1, callback);
+                } else {
+                    callback.onFetched(null, e);
+                }
+            }
+        });
+    }
+
+    private static String writeBody(Response response, File outFile) throws IOException {
+        MessageDigest digest = BundleExtractor.newSha256();
+        try (Response closing = response;
+             InputStream in = closing.body().byteStream();
+             FileOutputStream fos = new FileOutputStream(outFile)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+                fos.write(buffer, 0, length);
+            }
+        }
+        return StreamingDigest.toHex(digest.digest());
+    }
+
+    // Tracked until the caller removes it, so cancel() also aborts a body that is being read.
+    private Call newCall(String relativePath) throws IOException {
+        if (cancelled) {
+            throw new IOException("Canceled");
+        }
+        Call call = client.newCall(new Request.Builder().url(fileUrl(relativePath)).build());
+        calls.add(call);
+        return call;
+    }
+
+    private static Response execute(Call call) throws IOException {
+        return checked(call.execute());
+    }
+
+    // Closes the response and throws unless it is a success with a body.
+    private static Response checked(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            int code = response.code();
+            response.close();
+            throw new ResumableDownload.HttpStatusException(code);
+        }
+        return response;
+    }
+
+    private String fileUrl(String relativePath) throws UnsupportedEncodingException {
+        StringBuilder url = new StringBuilder(filesUrl);
+        for (String segment : relativePath.split("/")) {
+            url.append('/').append(URLEncoder.encode(segment, "UTF-8").replace("+", "%20"));
+        }
+        return url.toString();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < content.length) {
+                int read = fis.read(content, offset, content.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += read;
+            }
+        }
+        return content;
+    }
+}
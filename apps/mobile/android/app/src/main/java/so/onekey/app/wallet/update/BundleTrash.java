@@ -0,0 +1,104 @@
+package so.onekey.app.wallet.update;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes bundle directories without making the caller wait for it.
+ * <p>
+ * {@link #moveToTrash} renames a directory into the trash directory, a single {@code rename(2)}
+ * on the same filesystem, so it is gone from its old path at once whatever its size.
+ * {@link #sweep} then deletes the trash contents, meant to run as a low-priority background job.
+ * Whatever a crash or a cancelled sweep leaves behind is still in the trash directory and is
+ * removed by the next sweep.
+ */
+public class BundleTrash {
+    private final File dir;
+    private final AtomicLong counter = new AtomicLong();
+
+    public BundleTrash(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Moves {@code target} into the trash, deleting it in place if it cannot be renamed. Returns
+     * false when {@code target} did not exist.
+     */
+    public boolean moveToTrash(File target) {
+        if (!target.exists()) {
+            return false;
+        }
+        dir.mkdirs();
+        // Unique even when the same folder name is trashed twice before a sweep
+        File trashed = new File(dir, System.currentTimeMillis() + "-" + counter.incrementAndGet() + "-" + target.getName());
+        if (!target.renameTo(trashed)) {
+            BundleExtractor.deleteRecursively(target);
+        }
+        return true;
+    }
+
+    /** Whether anything is waiting to be swept, e.g. left over from before a crash. */
+    public boolean hasContents() {
+        String[] names = dir.list();
+        return names != null && names.length > 0;
+    }
+
+    /**
+     * Deletes everything in the trash and returns how many entries went. Stops early, leaving the
+     * rest for the next sweep, once {@code token} is cancelled.
+     */
+    public int sweep(UpdateScheduler.CancellationToken token) {
+        int removed = 0;
+        // Entries trashed while sweeping are picked up by the next pass
+        while (token == null || !token.isCancelled()) {
+            File[] entries = dir.listFiles();
+            if (entries == null || entries.length == 0) {
+                break;
+            }
+            int pass = 0;
+            for (File entry : entries) {
+                pass += deleteTree(entry, token);
+            }
+            if (pass == 0) {
+                // Nothing could be deleted, retrying now would spin
+                break;
+            }
+            removed += pass;
+        }
+        return removed;
+    }
+
+    // Depth-first without recursion, files go first and directories once they are empty
+    private static int deleteTree(File root, UpdateScheduler.CancellationToken token) {
+        int removed = 0;
+        ArrayDeque<File> pending = new ArrayDeque<>();
+        List<File> dirs = new ArrayList<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            if (token != null && token.isCancelled()) {
+                return removed;
+            }
+            File file = pending.pop();
+            File[] children = file.listFiles();
+            if (children == null) {
+                if (file.delete()) {
+                    removed++;
+                }
+                continue;
+            }
+            dirs.add(file);
+            for (File child : children) {
+                pending.push(child);
+            }
+        }
+        for (int i = dirs.size() - 1; i >= 0; i--) {
+            if (dirs.get(i).delete()) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
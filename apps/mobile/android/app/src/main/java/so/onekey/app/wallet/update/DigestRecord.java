@@ -0,0 +1,93 @@
+package so.onekey.app.wallet.update;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Remembers the SHA-256 computed while a file was downloaded, next to the file as
+ * {@code <file>.sha256}. Later verification steps can compare against it instead of hashing
+ * the whole file again, as long as the size, modification time and inode still match.
+ * <p>
+ * The sidecar sits in a writable directory next to the download, so it carries an HMAC under the
+ * {@link VerifiedBundleCache} key over the path, digest and file state. A record that was edited
+ * or planted next to a swapped file fails the MAC and the caller hashes the file instead. Without
+ * a usable key nothing is recorded.
+ */
+public class DigestRecord {
+    private static File recordFile(File file) {
+        return new File(file.getAbsolutePath() + ".sha256");
+    }
+
+    public static void write(File file, String sha256) {
+        if (sha256 == null) {
+            return;
+        }
+        File record = recordFile(file);
+        File tmpFile = new File(record.getAbsolutePath() + ".tmp");
+        try {
+            byte[] mac = mac(file, sha256);
+            if (mac == null) {
+                record.delete();
+                return;
+            }
+            JSONObject json = new JSONObject();
+            json.put("sha256", sha256);
+            json.put("mac", StreamingDigest.toHex(mac));
+            try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+                fos.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tmpFile.renameTo(record)) {
+                tmpFile.delete();
+            }
+        } catch (Exception e) {
+            tmpFile.delete();
+        }
+    }
+
+    // Returns the recorded digest, or null when there is none, the file changed since or the MAC fails.
+    public static String readIfFresh(File file) {
+        File record = recordFile(file);
+        if (!record.exists() || !file.exists()) {
+            return null;
+        }
+        try (FileInputStream fis = new FileInputStream(record)) {
+            byte[] bytes = new byte[(int) record.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = fis.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            JSONObject json = new JSONObject(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+            String sha256 = json.optString("sha256", null);
+            if (sha256 == null || sha256.isEmpty()) {
+                return null;
+            }
+            byte[] expected = VerifiedBundleCache.hexToBytes(json.getString("mac"));
+            byte[] actual = mac(file, sha256);
+            return actual != null && MessageDigest.isEqual(expected, actual) ? sha256 : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Null when the file cannot be stat'ed or the key store is unavailable.
+    private static byte[] mac(File file, String sha256) {
+        String state = VerifiedBundleCache.fileState(file);
+        if (state == null) {
+            return null;
+        }
+        return VerifiedBundleCache.mac("digest-record\n" + file.getAbsolutePath() + "\n" + sha256 + "|" + state);
+    }
+
+    public static void delete(File file) {
+        recordFile(file).delete();
+    }
+}
@@ -0,0 +1,126 @@
+package so.onekey.app.wallet.update;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Small metadata file kept next to a {@code .part} download. It records the validators the
+ * server returned (ETag / Last-Modified) and how many bytes of the part file are known to be
+ * on disk, so an interrupted transfer can continue with a Range request.
+ * <p>
+ * Segmented downloads additionally record the chunk size and which chunks are complete;
+ * {@link #bytesWritten} then stays the length of the contiguous completed prefix so a
+ * single-stream resume of the same part file remains correct.
+ */
+public class DownloadSidecar {
+    public String url;
+    public String etag;
+    public String lastModified;
+    public long bytesWritten;
+    public long totalBytes;
+    public long chunkSize;
+    public BitSet completedChunks = new BitSet();
+
+    public DownloadSidecar(String url) {
+        this.url = url;
+    }
+
+    public boolean hasValidator() {
+        return (etag != null && !etag.isEmpty()) || (lastModified != null && !lastModified.isEmpty());
+    }
+
+    // If-Range only accepts strong validators, a weak ETag has to fall back to Last-Modified.
+    public String ifRangeValue() {
+        if (etag != null && !etag.isEmpty() && !etag.startsWith("W/")) {
+            return etag;
+        }
+        if (lastModified != null && !lastModified.isEmpty()) {
+            return lastModified;
+        }
+        return null;
+    }
+
+    public void reset() {
+        etag = null;
+        lastModified = null;
+        bytesWritten = 0;
+        totalBytes = 0;
+        chunkSize = 0;
+        completedChunks = new BitSet();
+    }
+
+    public static DownloadSidecar read(File file) {
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = fis.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            JSONObject json = new JSONObject(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+            DownloadSidecar sidecar = new DownloadSidecar(json.optString("url", null));
+            sidecar.etag = json.optString("etag", null);
+            sidecar.lastModified = json.optString("lastModified", null);
+            sidecar.bytesWritten = json.optLong("bytesWritten", 0);
+            sidecar.totalBytes = json.optLong("totalBytes", 0);
+            sidecar.chunkSize = json.optLong("chunkSize", 0);
+            JSONArray chunks = json.optJSONArray("completedChunks");
+            if (chunks != null) {
+                for (int i = 0; i < chunks.length(); i++) {
+                    sidecar.completedChunks.set((int) chunks.optLong(i));
+                }
+            }
+            return sidecar;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Written to a temp file and renamed so a crash never leaves a truncated sidecar behind.
+    public void write(File file) throws IOException {
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            if (etag != null) {
+                json.put("etag", etag);
+            }
+            if (lastModified != null) {
+                json.put("lastModified", lastModified);
+            }
+            json.put("bytesWritten", bytesWritten);
+            json.put("totalBytes", totalBytes);
+            if (chunkSize > 0) {
+                json.put("chunkSize", chunkSize);
+                JSONArray chunks = new JSONArray();
+                for (int i = completedChunks.nextSetBit(0); i >= 0; i = completedChunks.nextSetBit(i + 1)) {
+                    chunks.put(i);
+                }
+                json.put("completedChunks", chunks);
+            }
+            try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+                fos.write(json.toString().getBytes(StandardCharsets.UTF_8));
+                fos.getFD().sync();
+            }
+        } catch (org.json.JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Failed to write download sidecar: " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package so.onekey.app.wallet.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of a whole file, shared by bundle and APK verification.
+ * <p>
+ * Files below {@link #MAP_THRESHOLD} are read through a per-thread direct buffer in large
+ * reads, bigger ones are memory-mapped window by window so the digest reads straight from the
+ * page cache without copying into the Java heap. The {@code MessageDigest} and the buffer are
+ * reused per thread, which matters when thousands of small asset files are verified.
+ */
+public class FileHasher {
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    private static final long MAP_THRESHOLD = 16 * 1024 * 1024;
+    // Keeps the mapped address range bounded on 32-bit devices
+    private static final long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+    };
+
+    public static String sha256(File file) throws IOException {
+        return StreamingDigest.toHex(digest(file));
+    }
+
+    /** The raw 32-byte SHA-256, for comparing against a {@link ManifestIndex} without hex strings. */
+    public static byte[] digest(File file) throws IOException {
+        MessageDigest digest = DIGESTS.get();
+        digest.reset();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, size - position));
+                    digest.update(window);
+                }
+            } else {
+                ByteBuffer buffer = BUFFERS.get();
+                while (true) {
+                    buffer.clear();
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                    buffer.flip();
+                    digest.update(buffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            digest.reset();
+            throw e;
+        }
+        return digest.digest();
+    }
+}
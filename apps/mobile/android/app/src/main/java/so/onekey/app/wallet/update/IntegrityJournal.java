@@ -0,0 +1,139 @@
+package so.onekey.app.wallet.update;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only log of background integrity checks, one line per result:
+ * {@code <epochMillis>\t<bundleVersion>\t<ok|untrusted>\t<detail>}.
+ * Only the latest line per bundle matters, so the file is compacted down to that once it grows
+ * past a few dozen lines. A bundle whose latest line is {@code untrusted} is refused at launch
+ * until it is installed and verified again.
+ * <p>
+ * The file is parsed once per process. {@link #record} is the only writer and keeps the parsed
+ * copy up to date, so lookups are served from memory.
+ */
+public class IntegrityJournal {
+    public static final String RESULT_OK = "ok";
+    public static final String RESULT_UNTRUSTED = "untrusted";
+
+    private static final String FILE_NAME = "bundle-integrity.journal";
+    // Pseudo bundle version marking the end of a verification run
+    private static final String RUN_KEY = "-";
+    private static final int COMPACT_THRESHOLD = 64;
+    private static final int MAX_DETAIL_LENGTH = 200;
+
+    // Parsed journal, null until first read. Guarded by the class lock like the file itself.
+    private static Map<String, String[]> latest;
+    private static int lineCount;
+
+    private static File journalFile(Context context) {
+        return new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    public static synchronized void record(Context context, String bundleVersion, String result, String detail) {
+        String safeDetail = detail == null ? "" : detail.replace('\t', ' ').replace('\n', ' ');
+        if (safeDetail.length() > MAX_DETAIL_LENGTH) {
+            safeDetail = safeDetail.substring(0, MAX_DETAIL_LENGTH);
+        }
+        String line = System.currentTimeMillis() + "\t" + bundleVersion + "\t" + result + "\t" + safeDetail + "\n";
+        File file = journalFile(context);
+        Map<String, String[]> entries = load(file);
+        try (FileOutputStream fos = new FileOutputStream(file, true)) {
+            fos.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+            // Not on disk, so not in the cached copy either
+            return;
+        }
+        String[] fields = line.substring(0, line.length() - 1).split("\t", -1);
+        entries.remove(bundleVersion);
+        entries.put(bundleVersion, fields);
+        lineCount++;
+        compactIfNeeded(file);
+    }
+
+    public static void recordRun(Context context) {
+        record(context, RUN_KEY, RESULT_OK, null);
+    }
+
+    public static synchronized boolean isUntrusted(Context context, String bundleVersion) {
+        String[] fields = load(journalFile(context)).get(bundleVersion);
+        return fields != null && RESULT_UNTRUSTED.equals(fields[2]);
+    }
+
+    // Time of the last completed verification run, 0 if there was none.
+    public static synchronized long lastRunTime(Context context) {
+        String[] fields = load(journalFile(context)).get(RUN_KEY);
+        if (fields == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fields[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, String[]> load(File file) {
+        if (latest == null) {
+            int[] count = new int[1];
+            latest = readLatest(file, count);
+            lineCount = count[0];
+        }
+        return latest;
+    }
+
+    private static Map<String, String[]> readLatest(File file, int[] lineCount) {
+        Map<String, String[]> latest = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return latest;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length < 3) {
+                    continue;
+                }
+                lineCount[0]++;
+                // Re-insert so the map stays in order of the latest result
+                latest.remove(fields[1]);
+                latest.put(fields[1], fields);
+            }
+        } catch (IOException ignored) {
+        }
+        return latest;
+    }
+
+    private static void compactIfNeeded(File file) {
+        if (lineCount <= COMPACT_THRESHOLD) {
+            return;
+        }
+        StringBuilder content = new StringBuilder();
+        for (String[] fields : latest.values()) {
+            content.append(String.join("\t", fields)).append('\n');
+        }
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            fos.write(content.toString().getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        } catch (IOException e) {
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            return;
+        }
+        lineCount = latest.size();
+    }
+}
@@ -0,0 +1,351 @@
+package so.onekey.app.wallet.update;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of a bundle's {@code metadata.json}, written next to it when the bundle is
+ * installed, so verification looks digests up without parsing the JSON into a map of hex strings.
+ * <p>
+ * Layout, big-endian: a header {@code <magic><version><count><sha256 of metadata.json>}, then
+ * {@code count} entries {@code <path offset><path length><32-byte digest>} sorted by the UTF-8
+ * bytes of the path, then the path bytes, then an HMAC of everything before it. The file is
+ * memory-mapped and only read with absolute gets, so a lookup is a binary search over the mapped
+ * pages, digests are compared byte for byte and concurrent lookups need no lock.
+ * <p>
+ * The index is not signed like {@code metadata.json}, so it is only used when its HMAC, from the
+ * {@link VerifiedBundleCache} key, checks out and it was built from the metadata.json hash the
+ * caller verified. Otherwise it is rebuilt from metadata.json; without the key store the rebuilt
+ * index is kept on the heap instead of being trusted from disk.
+ */
+public class ManifestIndex {
+    public static final String FILE_NAME = "metadata.idx";
+
+    private static final int MAGIC = 0x4f4b4d49; // "OKMI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int DIGEST_SIZE = 32;
+    private static final int HEADER_SIZE = 12 + DIGEST_SIZE;
+    private static final int ENTRY_SIZE = 8 + DIGEST_SIZE;
+    private static final int MAC_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int pathsStart;
+    private final String metadataSha256;
+
+    private ManifestIndex(ByteBuffer buffer, String metadataSha256) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.pathsStart = HEADER_SIZE + count * ENTRY_SIZE;
+        this.metadataSha256 = metadataSha256;
+    }
+
+    /**
+     * The index of the bundle in {@code dir} whose metadata.json hashes to {@code metadataSha256},
+     * rebuilt from metadata.json when the stored one is missing, stale or cannot be trusted.
+     */
+    public static ManifestIndex open(File dir, String metadataSha256) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        byte[] expectedSource = parseDigest(metadataSha256);
+        if (expectedSource == null) {
+            throw new BundleExtractor.VerificationException("Invalid SHA256 for " + BundleExtractor.METADATA_FILE_NAME + ": " + metadataSha256);
+        }
+        if (file.isFile()) {
+            ByteBuffer mapped = map(file);
+            if (mapped != null && isTrusted(mapped, expectedSource, metadataSha256)) {
+                return new ManifestIndex(mapped, metadataSha256);
+            }
+        }
+        // Streamed straight into index entries, hashed on the way to check it is the verified one
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>();
+        MessageDigest digest = BundleExtractor.newSha256();
+        try (InputStream in = new DigestInputStream(new FileInputStream(new File(dir, BundleExtractor.METADATA_FILE_NAME)), digest)) {
+            ManifestJson.read(in, (path, sha256) -> addEntry(entries, path, sha256));
+            // Whatever follows the JSON object counts towards the hash as well
+            byte[] rest = new byte[8192];
+            while (in.read(rest) >= 0) {
+                continue;
+            }
+        }
+        String actual = StreamingDigest.toHex(digest.digest());
+        if (!actual.equals(metadataSha256)) {
+            throw new BundleExtractor.VerificationException("SHA256 mismatch for " + BundleExtractor.METADATA_FILE_NAME + ". Expected: " + metadataSha256 + ", Actual: " + actual);
+        }
+        byte[] index = encode(entries, metadataSha256);
+        if (hasMac(index)) {
+            try {
+                writeAtomically(file, index);
+            } catch (IOException ignored) {
+                // Still usable from memory, the next open rebuilds it again
+            }
+        }
+        return new ManifestIndex(ByteBuffer.wrap(index), metadataSha256);
+    }
+
+    /** Writes the index of {@code metadata} into {@code dir}, called on the staging dir of an install. */
+    public static void write(File dir, Map<String, String> metadata, String metadataSha256) throws IOException {
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            addEntry(entries, entry.getKey(), entry.getValue());
+        }
+        byte[] index = encode(entries, metadataSha256);
+        if (hasMac(index)) {
+            writeAtomically(new File(dir, FILE_NAME), index);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Hex SHA-256 of the metadata.json this index was built from. */
+    public String metadataSha256() {
+        return metadataSha256;
+    }
+
+    /** Position of {@code path} in the index, or -1. */
+    public int find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareToKey(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(String path) {
+        return find(path) >= 0;
+    }
+
+    /** Whether {@code path} is listed with exactly {@code digest}. */
+    public boolean matches(String path, byte[] digest) {
+        int entry = find(path);
+        return entry >= 0 && digestEquals(entry, digest);
+    }
+
+    public boolean digestEquals(int entry, byte[] digest) {
+        if (digest == null || digest.length != DIGEST_SIZE) {
+            return false;
+        }
+        int offset = HEADER_SIZE + entry * ENTRY_SIZE + 8;
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            if (buffer.get(offset + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Hex digest listed for {@code path}, or null. Meant for messages, lookups should use {@link #matches}. */
+    public String digestHex(String path) {
+        int entry = find(path);
+        if (entry < 0) {
+            return null;
+        }
+        byte[] digest = new byte[DIGEST_SIZE];
+        int offset = HEADER_SIZE + entry * ENTRY_SIZE + 8;
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            digest[i] = buffer.get(offset + i);
+        }
+        return StreamingDigest.toHex(digest);
+    }
+
+    // Unsigned byte order of the entry's path against the key, like the sort order on write
+    private int compareToKey(int entry, byte[] key) {
+        int entryOffset = HEADER_SIZE + entry * ENTRY_SIZE;
+        int pathOffset = pathsStart + buffer.getInt(entryOffset);
+        int pathLength = buffer.getInt(entryOffset + 4);
+        int length = Math.min(pathLength, key.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = (buffer.get(pathOffset + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return pathLength - key.length;
+    }
+
+    private static ByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + MAC_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isTrusted(ByteBuffer buffer, byte[] expectedSource, String metadataSha256) {
+        int size = buffer.capacity();
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            return false;
+        }
+        int count = buffer.getInt(8);
+        if (count < 0 || (long) HEADER_SIZE + (long) count * ENTRY_SIZE + MAC_SIZE > size) {
+            return false;
+        }
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            if (buffer.get(12 + i) != expectedSource[i]) {
+                return false;
+            }
+        }
+        int pathsStart = HEADER_SIZE + count * ENTRY_SIZE;
+        int pathsLength = size - MAC_SIZE - pathsStart;
+        for (int entry = 0; entry < count; entry++) {
+            int entryOffset = HEADER_SIZE + entry * ENTRY_SIZE;
+            long pathOffset = buffer.getInt(entryOffset);
+            long pathLength = buffer.getInt(entryOffset + 4);
+            if (pathOffset < 0 || pathLength < 0 || pathOffset + pathLength > pathsLength) {
+                return false;
+            }
+        }
+        MessageDigest digest = BundleExtractor.newSha256();
+        ByteBuffer body = buffer.duplicate();
+        body.position(0);
+        body.limit(size - MAC_SIZE);
+        digest.update(body);
+        byte[] expected = macOf(metadataSha256, digest.digest());
+        if (expected == null) {
+            return false;
+        }
+        byte[] actual = new byte[MAC_SIZE];
+        for (int i = 0; i < MAC_SIZE; i++) {
+            actual[i] = buffer.get(size - MAC_SIZE + i);
+        }
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] macOf(String metadataSha256, byte[] bodySha256) {
+        return VerifiedBundleCache.mac("manifest-index\n" + metadataSha256 + "\n" + StreamingDigest.toHex(bodySha256));
+    }
+
+    // The MAC trailer is left zeroed when the key store is unavailable
+    private static boolean hasMac(byte[] index) {
+        for (int i = index.length - MAC_SIZE; i < index.length; i++) {
+            if (index[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addEntry(List<Map.Entry<byte[], byte[]>> entries, String path, String sha256) throws BundleExtractor.VerificationException {
+        byte[] digest = parseDigest(sha256);
+        if (digest == null) {
+            throw new BundleExtractor.VerificationException("Invalid SHA256 for file " + path + " in metadata");
+        }
+        entries.add(new AbstractMap.SimpleImmutableEntry<>(path.getBytes(StandardCharsets.UTF_8), digest));
+    }
+
+    private static byte[] encode(List<Map.Entry<byte[], byte[]>> entries, String metadataSha256) throws IOException {
+        byte[] source = parseDigest(metadataSha256);
+        if (source == null) {
+            throw new BundleExtractor.VerificationException("Invalid SHA256 for " + BundleExtractor.METADATA_FILE_NAME + ": " + metadataSha256);
+        }
+        // Stable, so of repeated paths the last one read stays last, and wins like it does in a map
+        Collections.sort(entries, (a, b) -> compareUnsigned(a.getKey(), b.getKey()));
+        for (int i = entries.size() - 2; i >= 0; i--) {
+            if (compareUnsigned(entries.get(i).getKey(), entries.get(i + 1).getKey()) == 0) {
+                entries.remove(i);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + entries.size() * (ENTRY_SIZE + 48) + MAC_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        out.write(source);
+        int pathOffset = 0;
+        for (Map.Entry<byte[], byte[]> entry : entries) {
+            out.writeInt(pathOffset);
+            out.writeInt(entry.getKey().length);
+            out.write(entry.getValue());
+            pathOffset += entry.getKey().length;
+        }
+        for (Map.Entry<byte[], byte[]> entry : entries) {
+            out.write(entry.getKey());
+        }
+        out.flush();
+        byte[] body = bytes.toByteArray();
+        byte[] mac = macOf(metadataSha256, BundleExtractor.newSha256().digest(body));
+        byte[] index = Arrays.copyOf(body, body.length + MAC_SIZE);
+        if (mac != null) {
+            System.arraycopy(mac, 0, index, body.length, MAC_SIZE);
+        }
+        return index;
+    }
+
+    // 32 bytes from 64 hex digits, null for anything else
+    private static byte[] parseDigest(String hex) {
+        if (hex == null || hex.length() != DIGEST_SIZE * 2) {
+            return null;
+        }
+        byte[] digest = new byte[DIGEST_SIZE];
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            digest[i] = (byte) ((high << 4) | low);
+        }
+        return digest;
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static void writeAtomically(File file, byte[] content) throws IOException {
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            fos.write(content);
+            fos.getFD().sync();
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Failed to write " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package so.onekey.app.wallet.update;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming reads of the update JSON: {@code metadata.json} manifests and the signed .asc payload.
+ * <p>
+ * Manifests of web-embed bundles list tens of thousands of files. Going through
+ * {@code org.json} means holding the whole file as a String, then a {@code JSONObject} tree of it,
+ * then the map built from that tree. Here a {@link JsonReader} decodes the bytes as UTF-8 through
+ * a buffered reader and hands each entry to a {@link Visitor} as it is read, so the caller fills
+ * its own lookup structure and nothing else stays on the heap.
+ */
+public final class ManifestJson {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    public interface Visitor {
+        void entry(String path, String sha256) throws IOException;
+    }
+
+    private ManifestJson() {
+    }
+
+    /** Reads every {@code path: sha256} pair of a manifest. Does not close {@code in}. */
+    public static void read(InputStream in, Visitor visitor) throws BundleExtractor.VerificationException {
+        try {
+            JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_SIZE));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String path = reader.nextName();
+                if (reader.peek() != JsonToken.STRING && reader.peek() != JsonToken.NUMBER) {
+                    throw new IOException("Expected a SHA256 string for " + path);
+                }
+                visitor.entry(path, reader.nextString());
+            }
+            reader.endObject();
+        } catch (BundleExtractor.VerificationException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            throw new BundleExtractor.VerificationException("Invalid " + BundleExtractor.METADATA_FILE_NAME + ": " + e.getMessage());
+        }
+    }
+
+    /** The manifest as a path to hex SHA-256 map, for the install steps that need one. */
+    public static Map<String, String> read(byte[] content) throws BundleExtractor.VerificationException {
+        Map<String, String> metadata = new HashMap<>();
+        read(new ByteArrayInputStream(content), metadata::put);
+        return metadata;
+    }
+
+    /** The string member {@code name} of a JSON object, null when it is missing or not a string. */
+    public static String readString(String json, String name) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (name.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                    return reader.nextString();
+                }
+                reader.skipValue();
+            }
+            reader.endObject();
+            return null;
+        } catch (RuntimeException e) {
+            throw new IOException(e);
+        }
+    }
+}
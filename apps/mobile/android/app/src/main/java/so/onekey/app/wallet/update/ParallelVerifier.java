@@ -0,0 +1,190 @@
+package so.onekey.app.wallet.update;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks every file of an extracted bundle directory against its {@link ManifestIndex} on a
+ * work-stealing pool sized to the available cores. Directories and runs of files are split into
+ * tasks so large flat folders (web-embed assets) spread across all workers, and the first
+ * mismatch stops the remaining tasks from hashing anything else. Setting the cancellation flag
+ * stops them the same way.
+ */
+public class ParallelVerifier {
+    private static final int FILES_PER_TASK = 8;
+    private static final int BACKGROUND_PARALLELISM = 2;
+
+    private static ForkJoinPool pool;
+    private static ForkJoinPool backgroundPool;
+
+    private final ManifestIndex index;
+    private final String rootPrefix;
+    private final AtomicBoolean cancelled;
+    private final AtomicReference<String> failure = new AtomicReference<>();
+    private volatile boolean failedToRead;
+
+    public ParallelVerifier(ManifestIndex index, String rootPrefix) {
+        this(index, rootPrefix, new AtomicBoolean());
+    }
+
+    /**
+     * @param rootPrefix absolute path of the bundle directory ending with a separator, stripped
+     *                   from each file path to get its metadata key
+     * @param cancelled  checked between files, once set no further file is hashed
+     */
+    public ParallelVerifier(ManifestIndex index, String rootPrefix, AtomicBoolean cancelled) {
+        this.index = index;
+        this.rootPrefix = rootPrefix;
+        this.cancelled = cancelled;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return pool;
+    }
+
+    // Two low-priority workers for periodic re-verification, so it never competes with the UI.
+    private static synchronized ForkJoinPool backgroundPool() {
+        if (backgroundPool == null) {
+            backgroundPool = new ForkJoinPool(BACKGROUND_PARALLELISM, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }, null, false);
+        }
+        return backgroundPool;
+    }
+
+    /**
+     * Returns null when every file matches its metadata entry, otherwise why the first one did
+     * not, or that the run was cancelled.
+     */
+    public String verify(File dir) {
+        pool().invoke(new DirectoryTask(dir));
+        return result();
+    }
+
+    public String verifyInBackground(File dir) {
+        backgroundPool().invoke(new DirectoryTask(dir));
+        return result();
+    }
+
+    private String result() {
+        String reason = failure.get();
+        if (reason == null && cancelled.get()) {
+            return "Verification cancelled";
+        }
+        return reason;
+    }
+
+    /**
+     * Whether the run stopped because a file could not be read, rather than because of what a
+     * file contains. Such a failure says nothing about whether the bundle was tampered with.
+     */
+    public boolean failedToRead() {
+        return failedToRead;
+    }
+
+    private boolean isStopped() {
+        return failure.get() != null || cancelled.get();
+    }
+
+    private void fail(String reason) {
+        fail(reason, false);
+    }
+
+    // Only the first failure counts, the flag describes that one
+    private void fail(String reason, boolean readError) {
+        if (failure.compareAndSet(null, reason)) {
+            failedToRead = readError;
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private final File dir;
+
+        DirectoryTask(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            if (isStopped()) {
+                return;
+            }
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    tasks.add(new DirectoryTask(child));
+                } else if (!child.getName().contains("metadata.json") && !child.getName().contains(".DS_Store")
+                        && !child.getName().startsWith(ManifestIndex.FILE_NAME)) {
+                    // Skip metadata.json, its index and .DS_Store
+                    files.add(child);
+                }
+            }
+            if (!files.isEmpty()) {
+                tasks.add(new FilesTask(files.toArray(new File[0]), 0, files.size()));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class FilesTask extends RecursiveAction {
+        private final File[] files;
+        private final int from;
+        private final int to;
+
+        FilesTask(File[] files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FILES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FilesTask(files, from, mid), new FilesTask(files, mid, to));
+                return;
+            }
+            for (int i = from; i < to && !isStopped(); i++) {
+                verifyFile(files[i]);
+            }
+        }
+    }
+
+    private void verifyFile(File file) {
+        String relativePath = file.getAbsolutePath().replace(rootPrefix, "");
+        int entry = index.find(relativePath);
+        if (entry < 0) {
+            fail("File " + relativePath + " not found in metadata");
+            return;
+        }
+        byte[] actualSHA256;
+        try {
+            actualSHA256 = FileHasher.digest(file);
+        } catch (Exception e) {
+            actualSHA256 = null;
+        }
+        if (actualSHA256 == null) {
+            fail("Failed to calculate SHA256 for file " + relativePath, true);
+            return;
+        }
+        if (!index.digestEquals(entry, actualSHA256)) {
+            fail("SHA256 mismatch for file " + relativePath + ". Expected: " + index.digestHex(relativePath) + ", Actual: " + StreamingDigest.toHex(actualSHA256));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package so.onekey.app.wallet.update;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns the per-chunk callbacks of a download into a few progress updates for the UI.
+ * <p>
+ * Downloads report every buffer they write, tens of thousands of times per package, from one or
+ * more network threads. This listener forwards at most one update per {@link #MIN_INTERVAL_MS},
+ * and only once progress moved by a whole percent or {@link #MAX_INTERVAL_MS} passed, so speed
+ * and ETA keep moving on a stalled link. The final update is always forwarded. Updates carry the
+ * smoothed transfer rate and the remaining time.
+ * <p>
+ * The {@link Sink} runs on a shared background thread, never on the download thread, so a slow
+ * bridge call or notification post does not hold up the transfer. When the sink falls behind,
+ * only the newest pending update is delivered.
+ */
+public class ProgressReporter implements ResumableDownload.ProgressListener {
+    static final long MIN_INTERVAL_MS = 100;
+    static final long MAX_INTERVAL_MS = 1000;
+    // Weight of the newest sample in the transfer rate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private static final ExecutorService DELIVERY = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "update-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static class Progress {
+        public final long bytesWritten;
+        public final long totalBytes;
+        /** 0 to 100, 0 while the total is unknown. */
+        public final double percent;
+        public final long bytesPerSecond;
+        /** Remaining seconds, -1 while unknown. */
+        public final long etaSeconds;
+
+        Progress(long bytesWritten, long totalBytes, long bytesPerSecond) {
+            this.bytesWritten = bytesWritten;
+            this.totalBytes = totalBytes;
+            this.percent = totalBytes > 0 ? Math.min(100.0, bytesWritten * 100.0 / totalBytes) : 0;
+            this.bytesPerSecond = bytesPerSecond;
+            this.etaSeconds = totalBytes > 0 && bytesPerSecond > 0
+                    ? (Math.max(0, totalBytes - bytesWritten) + bytesPerSecond - 1) / bytesPerSecond
+                    : -1;
+        }
+    }
+
+    public interface Sink {
+        void onProgress(Progress progress);
+    }
+
+    private final long sizeHint;
+    private final Sink sink;
+    private final AtomicReference<Progress> pending = new AtomicReference<>();
+    private boolean emitted;
+    private long lastEmitAt;
+    private long lastEmitBytes;
+    private int lastEmitPercent = -1;
+    private double rate;
+
+    /** {@code sizeHint} overrides the total reported by the download when it is positive. */
+    public ProgressReporter(long sizeHint, Sink sink) {
+        this.sizeHint = sizeHint;
+        this.sink = sink;
+    }
+
+    @Override
+    public void onProgress(long bytesWritten, long totalBytes) {
+        long total = sizeHint > 0 ? sizeHint : totalBytes;
+        Progress progress;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            boolean finished = total > 0 && bytesWritten >= total;
+            long elapsed = now - lastEmitAt;
+            if (!finished && emitted) {
+                if (elapsed < MIN_INTERVAL_MS) {
+                    return;
+                }
+                int percent = total > 0 ? (int) (bytesWritten * 100 / total) : -1;
+                if (percent == lastEmitPercent && elapsed < MAX_INTERVAL_MS) {
+                    return;
+                }
+            }
+            if (emitted && elapsed > 0) {
+                double sample = Math.max(0, bytesWritten - lastEmitBytes) * 1000.0 / elapsed;
+                rate = rate > 0 ? rate + RATE_SMOOTHING * (sample - rate) : sample;
+            }
+            emitted = true;
+            lastEmitAt = now;
+            lastEmitBytes = bytesWritten;
+            lastEmitPercent = total > 0 ? (int) (bytesWritten * 100 / total) : -1;
+            progress = new Progress(bytesWritten, total, (long) rate);
+        }
+        // Only schedule a delivery when none is waiting, the waiting one picks up this update
+        if (pending.getAndSet(progress) == null) {
+            DELIVERY.execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        Progress progress = pending.getAndSet(null);
+        if (progress != null) {
+            sink.onProgress(progress);
+        }
+    }
+
+    /**
+     * Waits until updates reported so far have reached the sink, so a following completion event
+     * cannot overtake the last progress update.
+     */
+    public void flush() {
+        try {
+            DELIVERY.submit(() -> { }).get(MAX_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package so.onekey.app.wallet.update;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Downloads a file into {@code <target>.part} and keeps a {@link DownloadSidecar} next to it.
+ * Failed transfers are retried with {@code Range}/{@code If-Range}, so only the missing tail is
+ * fetched again, and the part file survives process death until {@link #promote()} or
+ * {@link #discard()} is called by the owner once the content has been verified.
+ * <p>
+ * The body is hashed while it is written, {@link #getSha256()} is valid once {@link #run}
+ * returned.
+ */
+public class ResumableDownload {
+    public interface ProgressListener {
+        void onProgress(long bytesWritten, long totalBytes);
+    }
+
+    public static class HttpStatusException extends IOException {
+        public final int code;
+
+        public HttpStatusException(int code) {
+            super("HTTP " + code);
+            this.code = code;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CHECKPOINT_INTERVAL = 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    private final OkHttpClient client;
+    private final String url;
+    private final File targetFile;
+    private final File partFile;
+    private final File sidecarFile;
+    private final StreamingDigest digest = new StreamingDigest();
+    private volatile Call currentCall;
+    private volatile boolean cancelled = false;
+
+    public ResumableDownload(OkHttpClient client, String url, File targetFile) {
+        this.client = client;
+        this.url = url;
+        this.targetFile = targetFile;
+        this.partFile = new File(targetFile.getAbsolutePath() + ".part");
+        this.sidecarFile = new File(targetFile.getAbsolutePath() + ".part.json");
+    }
+
+    public File getPartFile() {
+        return partFile;
+    }
+
+    public String getSha256() {
+        return digest.hex();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Call call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Blocks until the part file holds the complete response body. Throws the last error once
+     * every attempt failed; the part file is kept so a later call can still resume it.
+     */
+    public void run(ProgressListener listener) throws IOException {
+        DownloadSidecar sidecar = loadSidecar();
+        IOException lastError = null;
+        boolean restarted = false;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (cancelled) {
+                throw new IOException("Canceled");
+            }
+            try {
+                if (transfer(sidecar, listener)) {
+                    return;
+                }
+                // The server rejected our range, start again from zero right away (once).
+                if (!restarted) {
+                    restarted = true;
+                    attempt--;
+                }
+                continue;
+            } catch (HttpStatusException e) {
+                lastError = e;
+                if (e.code != 408 && e.code != 429 && e.code < 500) {
+                    throw e;
+                }
+            } catch (IOException e) {
+                lastError = e;
+                if (cancelled) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(RETRY_BACKOFF_MS << attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+        }
+        throw lastError != null ? lastError : new IOException("Download failed");
+    }
+
+    // Moves the verified part file into place and drops the sidecar.
+    public boolean promote() {
+        if (targetFile.exists()) {
+            targetFile.delete();
+        }
+        boolean renamed = partFile.renameTo(targetFile);
+        if (renamed) {
+            sidecarFile.delete();
+        }
+        return renamed;
+    }
+
+    public void discard() {
+        partFile.delete();
+        sidecarFile.delete();
+    }
+
+    private DownloadSidecar loadSidecar() throws IOException {
+        DownloadSidecar sidecar = DownloadSidecar.read(sidecarFile);
+        long partLength = partFile.exists() ? partFile.length() : 0;
+        if (sidecar == null || !url.equals(sidecar.url) || !sidecar.hasValidator() || partLength < sidecar.bytesWritten) {
+            sidecar = new DownloadSidecar(url);
+            truncatePart(0);
+        } else if (partLength > sidecar.bytesWritten) {
+            // Bytes past the last checkpoint may not have reached the disk intact. For a part file
+            // left by a segmented download this also drops the chunks after the contiguous prefix.
+            truncatePart(sidecar.bytesWritten);
+        }
+        sidecar.chunkSize = 0;
+        sidecar.completedChunks.clear();
+        return sidecar;
+    }
+
+    private boolean transfer(DownloadSidecar sidecar, ProgressListener listener) throws IOException {
+        long offset = sidecar.bytesWritten;
+        // A failed attempt may have appended past the last checkpoint, drop that tail.
+        if (partFile.exists() && partFile.length() > offset) {
+            truncatePart(offset);
+        }
+        if (offset > 0 && sidecar.totalBytes > 0 && offset >= sidecar.totalBytes) {
+            digest.seek(partFile, offset);
+            return true;
+        }
+
+        Request.Builder builder = new Request.Builder().url(url);
+        String ifRange = sidecar.ifRangeValue();
+        boolean resuming = offset > 0 && ifRange != null;
+        if (resuming) {
+            builder.header("Range", "bytes=" + offset + "-");
+            builder.header("If-Range", ifRange);
+        }
+
+        Call call = client.newCall(builder.build());
+        currentCall = call;
+        try (Response response = call.execute()) {
+            int code = response.code();
+            if (resuming && code == 416) {
+                restart(sidecar);
+                return false;
+            }
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(code);
+            }
+
+            boolean append = false;
+            if (resuming && code == 206) {
+                String contentRange = response.header("Content-Range");
+                if (parseContentRangeStart(contentRange) != offset) {
+                    restart(sidecar);
+                    return false;
+                }
+                long total = parseContentRangeTotal(contentRange);
+                if (total > 0) {
+                    sidecar.totalBytes = total;
+                }
+                digest.seek(partFile, offset);
+                append = true;
+            } else {
+                // Either a fresh download, or the resource changed and If-Range sent the full body.
+                sidecar.reset();
+                sidecar.etag = response.header("ETag");
+                sidecar.lastModified = response.header("Last-Modified");
+                long contentLength = response.body().contentLength();
+                sidecar.totalBytes = contentLength > 0 ? contentLength : 0;
+                offset = 0;
+                truncatePart(0);
+                digest.seek(partFile, 0);
+                sidecar.write(sidecarFile);
+            }
+
+            try (InputStream inputStream = response.body().byteStream();
+                 FileOutputStream outputStream = new FileOutputStream(partFile, append)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long lastCheckpoint = offset;
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    if (cancelled) {
+                        throw new IOException("Canceled");
+                    }
+                    outputStream.write(buffer, 0, bytesRead);
+                    digest.update(buffer, 0, bytesRead);
+                    offset += bytesRead;
+                    if (offset - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                        checkpoint(outputStream, sidecar, offset);
+                        lastCheckpoint = offset;
+                    }
+                    if (listener != null) {
+                        listener.onProgress(offset, sidecar.totalBytes);
+                    }
+                }
+                checkpoint(outputStream, sidecar, offset);
+            }
+
+            if (sidecar.totalBytes > 0 && offset < sidecar.totalBytes) {
+                throw new IOException("Unexpected end of stream at " + offset + " of " + sidecar.totalBytes);
+            }
+            if (sidecar.totalBytes <= 0) {
+                sidecar.totalBytes = offset;
+                sidecar.write(sidecarFile);
+            }
+            return true;
+        } finally {
+            currentCall = null;
+        }
+    }
+
+    private void checkpoint(FileOutputStream outputStream, DownloadSidecar sidecar, long offset) throws IOException {
+        outputStream.flush();
+        outputStream.getFD().sync();
+        sidecar.bytesWritten = offset;
+        sidecar.write(sidecarFile);
+        digest.markCheckpoint();
+    }
+
+    private void restart(DownloadSidecar sidecar) throws IOException {
+        sidecar.reset();
+        truncatePart(0);
+        sidecar.write(sidecarFile);
+    }
+
+    private void truncatePart(long length) throws IOException {
+        if (!partFile.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    // "bytes 200-1000/67589" -> 200
+    static long parseContentRangeStart(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // "bytes 200-1000/67589" -> 67589, "bytes 200-1000/*" -> -1
+    static long parseContentRangeTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
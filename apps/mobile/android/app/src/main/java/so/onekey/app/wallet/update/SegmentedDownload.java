@@ -0,0 +1,402 @@
+package so.onekey.app.wallet.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Downloads a file over several parallel range requests. The part file is preallocated and
+ * every chunk is written at its own offset through a positional {@link FileChannel} write.
+ * The number of connections starts low and grows while each extra connection still raises the
+ * measured throughput, which helps on CDNs that throttle per connection. That needs a client
+ * that does not multiplex, such as {@link UpdateHttpClient#segmented()}.
+ * <p>
+ * Servers that do not answer a range probe with 206, and small files, go through
+ * {@link ResumableDownload} instead. Both share the same part file and sidecar, so either mode
+ * can pick up what the other left behind.
+ * <p>
+ * The SHA-256 follows the contiguous completed prefix while the download is still running, so
+ * the finished file is not read again for verification.
+ */
+public class SegmentedDownload {
+    private static final long MIN_SEGMENTED_SIZE = 8L * 1024 * 1024;
+    private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int INITIAL_CONNECTIONS = 2;
+    private static final int MAX_CONNECTIONS = 6;
+    private static final long SAMPLE_INTERVAL_MS = 1500;
+    private static final double SCALE_UP_GAIN = 1.15;
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static class RangeProbe {
+        long totalBytes;
+        String etag;
+        String lastModified;
+    }
+
+    private static class ResourceChangedException extends IOException {
+        ResourceChangedException() {
+            super("Resource changed during segmented download");
+        }
+    }
+
+    private final OkHttpClient client;
+    private final String url;
+    private final File partFile;
+    private final File sidecarFile;
+    private final ResumableDownload singleStream;
+    private final Set<Call> activeCalls = ConcurrentHashMap.newKeySet();
+    private final Object progressLock = new Object();
+    private final StreamingDigest digest = new StreamingDigest();
+    private volatile boolean singleStreamUsed = false;
+    private volatile boolean cancelled = false;
+    private long sizeHint = 0;
+
+    public SegmentedDownload(OkHttpClient client, String url, File targetFile) {
+        this.client = client;
+        this.url = url;
+        this.singleStream = new ResumableDownload(client, url, targetFile);
+        this.partFile = singleStream.getPartFile();
+        this.sidecarFile = new File(targetFile.getAbsolutePath() + ".part.json");
+    }
+
+    // Lets callers that already know the size skip the range probe for small files.
+    public void setSizeHint(long sizeHint) {
+        this.sizeHint = sizeHint;
+    }
+
+    public File getPartFile() {
+        return partFile;
+    }
+
+    public String getSha256() {
+        return singleStreamUsed ? singleStream.getSha256() : digest.hex();
+    }
+
+    public boolean promote() {
+        return singleStream.promote();
+    }
+
+    public void discard() {
+        singleStream.discard();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        singleStream.cancel();
+        for (Call call : activeCalls) {
+            call.cancel();
+        }
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    public void run(ResumableDownload.ProgressListener listener) throws IOException {
+        if (sizeHint > 0 && sizeHint < MIN_SEGMENTED_SIZE) {
+            runSingleStream(listener);
+            return;
+        }
+        RangeProbe probe = probe();
+        if (probe == null || probe.totalBytes < MIN_SEGMENTED_SIZE) {
+            runSingleStream(listener);
+            return;
+        }
+        try {
+            runSegmented(probe, listener);
+        } catch (ResourceChangedException e) {
+            // The file was replaced on the server mid-way, none of the chunks can be trusted.
+            discard();
+            runSingleStream(listener);
+        }
+    }
+
+    private void runSingleStream(ResumableDownload.ProgressListener listener) throws IOException {
+        singleStreamUsed = true;
+        singleStream.run(listener);
+    }
+
+    private RangeProbe probe() throws IOException {
+        Request request = new Request.Builder().url(url).header("Range", "bytes=0-0").build();
+        Call call = client.newCall(request);
+        activeCalls.add(call);
+        try (Response response = call.execute()) {
+            if (response.code() != 206) {
+                return null;
+            }
+            long total = ResumableDownload.parseContentRangeTotal(response.header("Content-Range"));
+            if (total <= 0) {
+                return null;
+            }
+            RangeProbe probe = new RangeProbe();
+            probe.totalBytes = total;
+            probe.etag = response.header("ETag");
+            probe.lastModified = response.header("Last-Modified");
+            return probe;
+        } catch (IOException e) {
+            if (cancelled) {
+                throw e;
+            }
+            // Let the single stream path do its own retries.
+            return null;
+        } finally {
+            activeCalls.remove(call);
+        }
+    }
+
+    private DownloadSidecar prepareSidecar(RangeProbe probe) {
+        DownloadSidecar sidecar = DownloadSidecar.read(sidecarFile);
+        boolean reusable = sidecar != null
+                && url.equals(sidecar.url)
+                && sidecar.totalBytes == probe.totalBytes
+                && equalsOrNull(sidecar.etag, probe.etag)
+                && equalsOrNull(sidecar.lastModified, probe.lastModified)
+                && partFile.exists();
+        if (!reusable) {
+            sidecar = new DownloadSidecar(url);
+        } else if (sidecar.chunkSize != CHUNK_SIZE) {
+            // Left behind by a single stream download: keep every chunk inside the written prefix.
+            long prefix = Math.min(sidecar.bytesWritten, partFile.length());
+            sidecar.completedChunks.clear();
+            for (int i = 0; (i + 1) * CHUNK_SIZE <= prefix; i++) {
+                sidecar.completedChunks.set(i);
+            }
+        }
+        sidecar.etag = probe.etag;
+        sidecar.lastModified = probe.lastModified;
+        sidecar.totalBytes = probe.totalBytes;
+        sidecar.chunkSize = CHUNK_SIZE;
+        return sidecar;
+    }
+
+    private void runSegmented(RangeProbe probe, ResumableDownload.ProgressListener listener) throws IOException {
+        DownloadSidecar sidecar = prepareSidecar(probe);
+        long total = probe.totalBytes;
+        int chunkCount = (int) ((total + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<>();
+        long alreadyDownloaded = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            if (sidecar.completedChunks.get(i)) {
+                alreadyDownloaded += chunkLength(i, total);
+            } else {
+                pending.add(i);
+            }
+        }
+        AtomicLong downloaded = new AtomicLong(alreadyDownloaded);
+        AtomicInteger activeWorkers = new AtomicInteger(0);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        int[] attempts = new int[chunkCount];
+
+        ExecutorService pool = Executors.newFixedThreadPool(MAX_CONNECTIONS, runnable -> {
+            Thread thread = new Thread(runnable, "segmented-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            raf.setLength(total);
+            FileChannel channel = raf.getChannel();
+            sidecar.bytesWritten = contiguousPrefix(sidecar, total);
+            sidecar.write(sidecarFile);
+
+            Runnable worker = () -> {
+                try {
+                    Integer chunk;
+                    while (!cancelled && failure.get() == null && (chunk = pending.poll()) != null) {
+                        long written = 0;
+                        try {
+                            written = fetchChunk(chunk, total, sidecar, channel, downloaded);
+                            markComplete(chunk, total, sidecar, channel);
+                        } catch (ResourceChangedException e) {
+                            failure.compareAndSet(null, e);
+                        } catch (IOException e) {
+                            downloaded.addAndGet(-written);
+                            boolean retry;
+                            synchronized (attempts) {
+                                retry = ++attempts[chunk] < MAX_CHUNK_ATTEMPTS;
+                            }
+                            if (retry && !cancelled) {
+                                pending.add(chunk);
+                            } else {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                        synchronized (progressLock) {
+                            progressLock.notifyAll();
+                        }
+                    }
+                } finally {
+                    activeWorkers.decrementAndGet();
+                    synchronized (progressLock) {
+                        progressLock.notifyAll();
+                    }
+                }
+            };
+
+            int started = Math.min(INITIAL_CONNECTIONS, pending.size());
+            for (int i = 0; i < started; i++) {
+                activeWorkers.incrementAndGet();
+                pool.execute(worker);
+            }
+
+            long sampleStartedAt = System.currentTimeMillis();
+            long sampleStartBytes = downloaded.get();
+            double lastThroughput = 0;
+            boolean growing = true;
+            while (true) {
+                synchronized (progressLock) {
+                    try {
+                        progressLock.wait(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancel();
+                    }
+                }
+                if (cancelled) {
+                    throw new IOException("Canceled");
+                }
+                IOException error = failure.get();
+                if (error != null) {
+                    throw error;
+                }
+                if (listener != null) {
+                    listener.onProgress(downloaded.get(), total);
+                }
+                long prefix;
+                boolean finished;
+                synchronized (sidecar) {
+                    prefix = sidecar.bytesWritten;
+                    finished = sidecar.completedChunks.cardinality() == chunkCount;
+                }
+                // Still in the page cache, and hashing here overlaps with the remaining chunks.
+                digest.updateFrom(channel, prefix);
+                if (finished) {
+                    break;
+                }
+                // A retried chunk can be queued after every worker already ran dry.
+                if (activeWorkers.get() == 0 && !pending.isEmpty()) {
+                    activeWorkers.incrementAndGet();
+                    pool.execute(worker);
+                    continue;
+                }
+
+                long now = System.currentTimeMillis();
+                if (growing && now - sampleStartedAt >= SAMPLE_INTERVAL_MS) {
+                    double throughput = (downloaded.get() - sampleStartBytes) * 1000.0 / (now - sampleStartedAt);
+                    if (activeWorkers.get() < MAX_CONNECTIONS && pending.size() > 0
+                            && (lastThroughput == 0 || throughput >= lastThroughput * SCALE_UP_GAIN)) {
+                        activeWorkers.incrementAndGet();
+                        pool.execute(worker);
+                    } else if (lastThroughput > 0) {
+                        // The last connection did not pay off, the link is saturated.
+                        growing = false;
+                    }
+                    lastThroughput = throughput;
+                    sampleStartedAt = now;
+                    sampleStartBytes = downloaded.get();
+                }
+            }
+            channel.force(false);
+        } finally {
+            pool.shutdownNow();
+            for (Call call : activeCalls) {
+                call.cancel();
+            }
+        }
+
+        // Hand over a plain completed part file, exactly like the single stream path does.
+        sidecar.bytesWritten = total;
+        sidecar.write(sidecarFile);
+    }
+
+    private long fetchChunk(int index, long total, DownloadSidecar sidecar, FileChannel channel, AtomicLong downloaded) throws IOException {
+        long start = index * CHUNK_SIZE;
+        long end = start + chunkLength(index, total) - 1;
+        Request.Builder builder = new Request.Builder().url(url).header("Range", "bytes=" + start + "-" + end);
+        String ifRange = sidecar.ifRangeValue();
+        if (ifRange != null) {
+            builder.header("If-Range", ifRange);
+        }
+        Call call = client.newCall(builder.build());
+        activeCalls.add(call);
+        long written = 0;
+        try (Response response = call.execute()) {
+            if (response.code() == 200) {
+                throw new ResourceChangedException();
+            }
+            if (response.code() != 206) {
+                throw new ResumableDownload.HttpStatusException(response.code());
+            }
+            if (ResumableDownload.parseContentRangeStart(response.header("Content-Range")) != start) {
+                throw new IOException("Unexpected Content-Range: " + response.header("Content-Range"));
+            }
+            long position = start;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream inputStream = response.body().byteStream()) {
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    if (cancelled) {
+                        throw new IOException("Canceled");
+                    }
+                    if (position + bytesRead > end + 1) {
+                        throw new IOException("Server sent more than the requested range");
+                    }
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, bytesRead);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    written += bytesRead;
+                    downloaded.addAndGet(bytesRead);
+                }
+            }
+            if (position != end + 1) {
+                throw new IOException("Unexpected end of chunk " + index + " at " + position);
+            }
+            return written;
+        } catch (IOException e) {
+            // Let the caller roll back the progress counted for this attempt.
+            downloaded.addAndGet(-written);
+            throw e;
+        } finally {
+            activeCalls.remove(call);
+        }
+    }
+
+    private void markComplete(int index, long total, DownloadSidecar sidecar, FileChannel channel) throws IOException {
+        channel.force(false);
+        synchronized (sidecar) {
+            sidecar.completedChunks.set(index);
+            sidecar.bytesWritten = contiguousPrefix(sidecar, total);
+            sidecar.write(sidecarFile);
+        }
+    }
+
+    private static long contiguousPrefix(DownloadSidecar sidecar, long total) {
+        int firstMissing = sidecar.completedChunks.nextClearBit(0);
+        return Math.min(total, firstMissing * CHUNK_SIZE);
+    }
+
+    private static long chunkLength(int index, long total) {
+        return Math.min(CHUNK_SIZE, total - index * CHUNK_SIZE);
+    }
+
+    private static boolean equalsOrNull(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
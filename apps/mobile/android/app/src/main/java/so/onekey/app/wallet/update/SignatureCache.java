@@ -0,0 +1,158 @@
+package so.onekey.app.wallet.update;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * On-disk cache for .asc signature files and for the result of verifying them.
+ * <p>
+ * {@link #fetch} keeps the last body and validators per URL and revalidates with
+ * {@code If-None-Match} / {@code If-Modified-Since}, so an unchanged signature costs a 304 and
+ * no body. {@link #readVerifiedText} / {@link #storeVerifiedText} remember the signed text of a
+ * signature that passed PGP verification, keyed by the SHA-256 of the signature and of the key
+ * ring it was checked against, so the same signature is not verified again. Those records are
+ * MAC'd with the {@link VerifiedBundleCache} key; without it nothing is remembered.
+ */
+public class SignatureCache {
+    private static final String DIR_NAME = "signature-cache";
+    private static final String VERIFIED_DIR_NAME = "verified";
+
+    private static File dir(Context context) {
+        return new File(context.getNoBackupFilesDir(), DIR_NAME);
+    }
+
+    /** The body at {@code url}, from the local copy when the server answers 304. */
+    public static String fetch(Context context, OkHttpClient client, String url) throws IOException {
+        String key = sha256(url);
+        File contentFile = new File(dir(context), key + ".asc");
+        File validatorsFile = new File(dir(context), key + ".json");
+        JSONObject validators = null;
+        if (contentFile.exists() && validatorsFile.exists()) {
+            try {
+                validators = new JSONObject(new String(readFile(validatorsFile), StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                validators = null;
+            }
+        }
+
+        Request.Builder request = new Request.Builder().url(url);
+        if (validators != null && url.equals(validators.optString("url"))) {
+            String etag = validators.optString("etag", "");
+            String lastModified = validators.optString("lastModified", "");
+            if (!etag.isEmpty()) {
+                request.header("If-None-Match", etag);
+            }
+            if (!lastModified.isEmpty()) {
+                request.header("If-Modified-Since", lastModified);
+            }
+        }
+        try (Response response = client.newCall(request.build()).execute()) {
+            if (response.code() == 304 && validators != null) {
+                return new String(readFile(contentFile), StandardCharsets.UTF_8);
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new ResumableDownload.HttpStatusException(response.code());
+            }
+            byte[] body = response.body().bytes();
+            JSONObject newValidators = new JSONObject();
+            newValidators.put("url", url);
+            newValidators.put("etag", response.header("ETag", ""));
+            newValidators.put("lastModified", response.header("Last-Modified", ""));
+            writeAtomically(contentFile, body);
+            writeAtomically(validatorsFile, newValidators.toString().getBytes(StandardCharsets.UTF_8));
+            return new String(body, StandardCharsets.UTF_8);
+        } catch (org.json.JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** The signed text of a signature verified before against the same key ring, or null. */
+    public static String readVerifiedText(Context context, String signature, String keyRingSha256) {
+        try {
+            String signatureSha256 = sha256(signature);
+            File recordFile = verifiedRecordFile(context, signatureSha256);
+            if (!recordFile.exists()) {
+                return null;
+            }
+            JSONObject record = new JSONObject(new String(readFile(recordFile), StandardCharsets.UTF_8));
+            String text = record.getString("text");
+            byte[] expected = VerifiedBundleCache.hexToBytes(record.getString("mac"));
+            byte[] actual = VerifiedBundleCache.mac(verifiedPayload(signatureSha256, keyRingSha256, text));
+            return actual != null && MessageDigest.isEqual(expected, actual) ? text : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static void storeVerifiedText(Context context, String signature, String keyRingSha256, String text) {
+        try {
+            String signatureSha256 = sha256(signature);
+            byte[] mac = VerifiedBundleCache.mac(verifiedPayload(signatureSha256, keyRingSha256, text));
+            if (mac == null) {
+                return;
+            }
+            JSONObject record = new JSONObject();
+            record.put("text", text);
+            record.put("mac", StreamingDigest.toHex(mac));
+            writeAtomically(verifiedRecordFile(context, signatureSha256), record.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static File verifiedRecordFile(Context context, String signatureSha256) {
+        return new File(new File(dir(context), VERIFIED_DIR_NAME), signatureSha256 + ".json");
+    }
+
+    private static String verifiedPayload(String signatureSha256, String keyRingSha256, String text) {
+        return "asc\n" + signatureSha256 + "\n" + keyRingSha256 + "\n" + text;
+    }
+
+    public static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return StreamingDigest.toHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < content.length) {
+                int read = fis.read(content, offset, content.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += read;
+            }
+        }
+        return content;
+    }
+
+    private static void writeAtomically(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            fos.write(content);
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Failed to write " + file.getName());
+        }
+    }
+}
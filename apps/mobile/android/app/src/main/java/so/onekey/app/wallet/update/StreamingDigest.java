@@ -0,0 +1,119 @@
+package so.onekey.app.wallet.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 that is fed with the bytes of a download while they are written, so the finished
+ * file does not have to be read again to verify it.
+ * <p>
+ * The platform digest state cannot be serialized, so the resume story is: a clone of the
+ * digest is kept at every download checkpoint and in-process retries roll back to it, while a
+ * download resumed by a new process re-hashes only the prefix that is already on disk.
+ */
+public class StreamingDigest {
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private MessageDigest digest;
+    private long position;
+    private MessageDigest checkpoint;
+    private long checkpointPosition = -1;
+
+    public StreamingDigest() {
+        digest = newSha256();
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        digest.update(buffer, offset, length);
+        position += length;
+    }
+
+    public void markCheckpoint() {
+        try {
+            checkpoint = (MessageDigest) digest.clone();
+            checkpointPosition = position;
+        } catch (CloneNotSupportedException e) {
+            checkpoint = null;
+            checkpointPosition = -1;
+        }
+    }
+
+    /**
+     * Makes the digest cover exactly the first {@code offset} bytes of {@code file}, rolling back
+     * to the last checkpoint when possible and re-hashing the on-disk prefix otherwise.
+     */
+    public void seek(File file, long offset) throws IOException {
+        if (position == offset) {
+            return;
+        }
+        if (checkpoint != null && checkpointPosition == offset) {
+            try {
+                digest = (MessageDigest) checkpoint.clone();
+                position = offset;
+                return;
+            } catch (CloneNotSupportedException ignored) {
+                // fall through to a re-hash
+            }
+        }
+        digest = newSha256();
+        position = 0;
+        if (offset > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                updateFrom(raf.getChannel(), offset);
+            }
+        }
+    }
+
+    // Hashes [position, end) from the channel, used to follow the completed prefix of a segmented download.
+    public void updateFrom(FileChannel channel, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    // Hex digest of the bytes seen so far; the running digest is left untouched.
+    public String hex() {
+        try {
+            return toHex(((MessageDigest) digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hexArray = "0123456789abcdef".toCharArray();
+        char[] hexChars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            hexChars[i * 2] = hexArray[v >>> 4];
+            hexChars[i * 2 + 1] = hexArray[v & 0x0f];
+        }
+        return new String(hexChars);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package so.onekey.app.wallet.update;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The HTTP clients used for all update traffic, APK and bundle alike. They share one connection
+ * pool and dispatcher, so TLS sessions and HTTP/2 connections to the update hosts are reused
+ * across checks and downloads instead of being set up again for every call.
+ * <p>
+ * The dispatcher is the one place that bounds concurrent update requests: asynchronous calls,
+ * such as the file fetches of {@link BundleSync}, run at most {@link #MAX_REQUESTS_PER_HOST} per
+ * host at once and queue behind each other otherwise.
+ * <p>
+ * {@link SegmentedDownload} gets its own view of the client, see {@link #segmented()}.
+ * <p>
+ * There is no HTTP cache: .asc signature files are revalidated through {@link SignatureCache},
+ * the large downloads are resumed through their own part files.
+ */
+public class UpdateHttpClient {
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+
+    private static volatile OkHttpClient client;
+    private static volatile OkHttpClient segmentedClient;
+
+    public static OkHttpClient get() {
+        OkHttpClient result = client;
+        if (result == null) {
+            synchronized (UpdateHttpClient.class) {
+                if (client == null) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequests(MAX_REQUESTS);
+                    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+                    client = new OkHttpClient.Builder()
+                            .dispatcher(dispatcher)
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                            // HTTP/2 where the server offers it through ALPN, signature and sync fetches share one connection
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .retryOnConnectionFailure(true)
+                            .build();
+                }
+                result = client;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The client for {@link SegmentedDownload}, limited to HTTP/1.1. Over HTTP/2 all byte ranges
+     * would be multiplexed on one connection, and the point of segmenting is to spread them over
+     * several connections on CDNs that throttle per connection. Pool and dispatcher are shared
+     * with {@link #get()}.
+     */
+    public static OkHttpClient segmented() {
+        OkHttpClient result = segmentedClient;
+        if (result == null) {
+            synchronized (UpdateHttpClient.class) {
+                if (segmentedClient == null) {
+                    segmentedClient = get().newBuilder()
+                            .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                            .build();
+                }
+                result = segmentedClient;
+            }
+        }
+        return result;
+    }
+}
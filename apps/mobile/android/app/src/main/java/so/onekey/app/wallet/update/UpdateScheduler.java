@@ -0,0 +1,283 @@
+package so.onekey.app.wallet.update;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the update work of both AutoUpdateModule (APK) and BundleUpdateModule (OTA) off the
+ * React Native native-modules thread, shared by the two so they never race each other for
+ * bandwidth or disk.
+ * <p>
+ * Downloads go through a single network worker, everything else through a small pool of disk
+ * workers. Metadata fetches (a signature file, a few KB) get a worker of their own, so they
+ * never wait behind a download that can take minutes. Within a lane, queued jobs run by {@link JobType} priority (install first, cleanup
+ * last) and in submission order within a priority. A job submitted with a dedup key while a job
+ * of the same type and key is queued or running is not queued again: the caller's listener is
+ * attached to the existing job instead. Every job gets an id like {@code verifyBundle#12}, which
+ * is logged when it is queued, started and finished together with its wait and run time.
+ */
+public class UpdateScheduler {
+    public enum JobType {
+        INSTALL(0),
+        UNZIP(1),
+        VERIFY(1),
+        DOWNLOAD(2),
+        METADATA(2),
+        CLEANUP(3);
+
+        final int priority;
+
+        JobType(int priority) {
+            this.priority = priority;
+        }
+    }
+
+    public enum JobState {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    public interface Task {
+        void run(CancellationToken token) throws Exception;
+    }
+
+    /** Called once per listener; {@code error} is null on success, a {@link CancellationException} when cancelled. */
+    public interface Listener {
+        void onFinished(Job job, Exception error);
+    }
+
+    public interface Logger {
+        void log(String jobId, String message);
+    }
+
+    /** Cancellation state of one job, running tasks poll it or register what to abort. */
+    public static class CancellationToken {
+        private final List<Runnable> callbacks = new ArrayList<>();
+        private volatile boolean cancelled = false;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void throwIfCancelled() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        /** Runs {@code callback} on cancellation, right away when already cancelled. */
+        public void onCancel(Runnable callback) {
+            synchronized (callbacks) {
+                if (!cancelled) {
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            callback.run();
+        }
+
+        void cancel() {
+            List<Runnable> toRun;
+            synchronized (callbacks) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                toRun = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+            for (Runnable callback : toRun) {
+                callback.run();
+            }
+        }
+    }
+
+    public class Job implements Runnable, Comparable<Job> {
+        public final String id;
+        public final JobType type;
+        public final String key;
+        private final long sequence;
+        private final Task task;
+        private final CancellationToken token = new CancellationToken();
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        private final long queuedAt = SystemClock.elapsedRealtime();
+        private volatile long startedAt;
+        private volatile JobState state = JobState.QUEUED;
+
+        Job(String name, JobType type, String key, Task task) {
+            this.sequence = sequenceCounter.incrementAndGet();
+            this.id = name + "#" + this.sequence;
+            this.type = type;
+            this.key = key;
+            this.task = task;
+        }
+
+        public JobState getState() {
+            return state;
+        }
+
+        public boolean isFinished() {
+            return state != JobState.QUEUED && state != JobState.RUNNING;
+        }
+
+        public long getQueuedAt() {
+            return queuedAt;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /** A queued job is dropped right away, a running one is asked to stop through its token. */
+        public void cancel() {
+            token.cancel();
+            if (lane(type).remove(this)) {
+                finish(JobState.CANCELLED, new CancellationException());
+            }
+        }
+
+        @Override
+        public void run() {
+            if (token.isCancelled()) {
+                finish(JobState.CANCELLED, new CancellationException());
+                return;
+            }
+            startedAt = SystemClock.elapsedRealtime();
+            state = JobState.RUNNING;
+            logger.log(id, "started, waited " + (startedAt - queuedAt) + "ms");
+            try {
+                task.run(token);
+                token.throwIfCancelled();
+                finish(JobState.SUCCEEDED, null);
+            } catch (Exception e) {
+                if (token.isCancelled()) {
+                    finish(JobState.CANCELLED, e instanceof CancellationException ? e : new CancellationException(e.getMessage()));
+                } else {
+                    finish(JobState.FAILED, e);
+                }
+            }
+        }
+
+        private void finish(JobState finalState, Exception error) {
+            synchronized (UpdateScheduler.this) {
+                if (isFinished()) {
+                    return;
+                }
+                state = finalState;
+                jobs.remove(this);
+            }
+            long runTime = startedAt > 0 ? SystemClock.elapsedRealtime() - startedAt : 0;
+            logger.log(id, finalState.name().toLowerCase() + " after " + runTime + "ms" + (error != null && finalState == JobState.FAILED ? ": " + error : ""));
+            for (Listener listener : listeners) {
+                try {
+                    listener.onFinished(this, error);
+                } catch (RuntimeException e) {
+                    logger.log(id, "listener failed: " + e);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (type.priority != other.type.priority) {
+                return Integer.compare(type.priority, other.type.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final ThreadPoolExecutor networkLane;
+    private final ThreadPoolExecutor metadataLane;
+    private final ThreadPoolExecutor diskLane;
+    private final Logger logger;
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    // Queued and running jobs in submission order
+    private final Set<Job> jobs = new LinkedHashSet<>();
+
+    public UpdateScheduler(int diskParallelism, Logger logger) {
+        this.logger = logger;
+        this.networkLane = newLane("update-network", 1);
+        this.metadataLane = newLane("update-metadata", 1);
+        this.diskLane = newLane("update-disk", diskParallelism);
+    }
+
+    private static ThreadPoolExecutor newLane(String name, int parallelism) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, name + "-" + threadCount.incrementAndGet());
+        int threads = Math.max(1, parallelism);
+        // Core size equals max size, the queue is unbounded so extra workers would never start
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private ThreadPoolExecutor lane(JobType type) {
+        switch (type) {
+            case DOWNLOAD:
+                return networkLane;
+            case METADATA:
+                return metadataLane;
+            default:
+                return diskLane;
+        }
+    }
+
+    /**
+     * Queues {@code task}, or joins the active job of the same type when {@code dedupKey} matches
+     * one. {@code listener} may be null. Returns the job that will run the work.
+     */
+    public Job submit(JobType type, String name, String dedupKey, Task task, Listener listener) {
+        Job job;
+        synchronized (this) {
+            Job existing = dedupKey != null ? findActive(type, dedupKey) : null;
+            if (existing != null) {
+                if (listener != null) {
+                    existing.listeners.add(listener);
+                }
+                logger.log(existing.id, "joined by another " + name + " request");
+                return existing;
+            }
+            job = new Job(name, type, dedupKey, task);
+            if (listener != null) {
+                job.listeners.add(listener);
+            }
+            jobs.add(job);
+        }
+        ThreadPoolExecutor lane = lane(type);
+        logger.log(job.id, "queued, " + type.name().toLowerCase() + ", " + lane.getQueue().size() + " waiting");
+        // execute(), not submit(): a FutureTask wrapper would not be Comparable
+        lane.execute(job);
+        return job;
+    }
+
+    public synchronized Job findActive(JobType type, String key) {
+        for (Job job : jobs) {
+            if (job.type == type && key.equals(job.key)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /** Queued and running jobs, oldest first. */
+    public synchronized List<Job> snapshot() {
+        return Collections.unmodifiableList(new ArrayList<>(jobs));
+    }
+}
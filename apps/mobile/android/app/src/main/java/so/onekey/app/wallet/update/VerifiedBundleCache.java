@@ -0,0 +1,188 @@
+package so.onekey.app.wallet.update;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.system.Os;
+import android.system.StructStat;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Remembers that a bundle passed full launch verification (signature, metadata.json and
+ * main.jsbundle.hbc hashes), together with the size, mtime and inode of the verified files.
+ * While those still match, later cold starts can skip the PGP check and the re-hash of the
+ * multi-MB JS bundle.
+ * <p>
+ * Records are HMAC-SHA256 protected with a non-exportable AndroidKeyStore key so a record cannot
+ * be forged or edited to cover a modified file. If the key store is unavailable the cache is
+ * simply disabled and every launch does the full verification.
+ */
+public class VerifiedBundleCache {
+    private static final String KEY_ALIAS = "onekey_bundle_verified_state";
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+    private static final String DIR_NAME = "verified-bundles";
+
+    private static SecretKey cachedKey;
+
+    public static boolean isVerified(Context context, String bundleVersion, String signature, File metadataFile, File mainBundleFile) {
+        File recordFile = recordFile(context, bundleVersion);
+        if (!recordFile.exists()) {
+            return false;
+        }
+        try {
+            JSONObject record = new JSONObject(readFile(recordFile));
+            JSONObject metadata = record.getJSONObject("metadata");
+            JSONObject mainBundle = record.getJSONObject("mainBundle");
+            String payload = payload(bundleVersion, sha256(signature),
+                    metadata.getString("sha256"), metadataFile,
+                    mainBundle.getString("sha256"), mainBundleFile);
+            if (payload == null) {
+                return false;
+            }
+            byte[] expected = hexToBytes(record.getString("mac"));
+            byte[] actual = mac(payload);
+            return actual != null && MessageDigest.isEqual(expected, actual);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public static void markVerified(Context context, String bundleVersion, String signature,
+                                    File metadataFile, String metadataSha256,
+                                    File mainBundleFile, String mainBundleSha256) {
+        File recordFile = recordFile(context, bundleVersion);
+        File tmpFile = new File(recordFile.getAbsolutePath() + ".tmp");
+        try {
+            String payload = payload(bundleVersion, sha256(signature), metadataSha256, metadataFile, mainBundleSha256, mainBundleFile);
+            byte[] mac = payload != null ? mac(payload) : null;
+            if (mac == null) {
+                recordFile.delete();
+                return;
+            }
+            JSONObject record = new JSONObject();
+            record.put("metadata", new JSONObject().put("sha256", metadataSha256));
+            record.put("mainBundle", new JSONObject().put("sha256", mainBundleSha256));
+            record.put("mac", StreamingDigest.toHex(mac));
+            recordFile.getParentFile().mkdirs();
+            try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+                fos.write(record.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tmpFile.renameTo(recordFile)) {
+                tmpFile.delete();
+            }
+        } catch (Exception e) {
+            tmpFile.delete();
+        }
+    }
+
+    public static void invalidate(Context context, String bundleVersion) {
+        recordFile(context, bundleVersion).delete();
+    }
+
+    public static void clear(Context context) {
+        File[] records = new File(context.getNoBackupFilesDir(), DIR_NAME).listFiles();
+        if (records != null) {
+            for (File record : records) {
+                record.delete();
+            }
+        }
+    }
+
+    private static File recordFile(Context context, String bundleVersion) {
+        return new File(new File(context.getNoBackupFilesDir(), DIR_NAME), bundleVersion + ".json");
+    }
+
+    // Everything the MAC covers; null when one of the files cannot be stat'ed.
+    private static String payload(String bundleVersion, String signatureSha256,
+                                  String metadataSha256, File metadataFile,
+                                  String mainBundleSha256, File mainBundleFile) {
+        String metadataState = fileState(metadataFile);
+        String mainBundleState = fileState(mainBundleFile);
+        if (metadataState == null || mainBundleState == null) {
+            return null;
+        }
+        return bundleVersion + "\n" + signatureSha256 + "\n"
+                + metadataSha256 + "|" + metadataState + "\n"
+                + mainBundleSha256 + "|" + mainBundleState;
+    }
+
+    static String fileState(File file) {
+        try {
+            StructStat stat = Os.stat(file.getAbsolutePath());
+            return stat.st_size + "|" + file.lastModified() + "|" + stat.st_ino;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static byte[] mac(String payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key());
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // The JVM has no AndroidKeyStore, tests hand in a key of their own
+    static synchronized void setKey(SecretKey key) {
+        cachedKey = key;
+    }
+
+    private static synchronized SecretKey key() throws Exception {
+        if (cachedKey != null) {
+            return cachedKey;
+        }
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        keyStore.load(null);
+        if (!keyStore.containsAlias(KEY_ALIAS)) {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_HMAC_SHA256, ANDROID_KEY_STORE);
+            keyGenerator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS, KeyProperties.PURPOSE_SIGN).build());
+            keyGenerator.generateKey();
+        }
+        cachedKey = (SecretKey) keyStore.getKey(KEY_ALIAS, null);
+        return cachedKey;
+    }
+
+    private static String sha256(String value) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return StreamingDigest.toHex(digest.digest((value != null ? value : "").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String readFile(File file) throws Exception {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = fis.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(Arrays.copyOf(bytes, offset), StandardCharsets.UTF_8);
+        }
+    }
+
+    static byte[] hexToBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
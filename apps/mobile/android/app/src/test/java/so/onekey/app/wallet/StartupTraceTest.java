@@ -0,0 +1,126 @@
+package so.onekey.app.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class StartupTraceTest {
+    private static final int CAPACITY = 128;
+
+    @Before
+    public void setUp() {
+        StartupTrace.reset();
+    }
+
+    @After
+    public void tearDown() {
+        StartupTrace.reset();
+    }
+
+    @Test
+    public void spansNestPerThread() throws Exception {
+        int outer = StartupTrace.begin("Application.onCreate");
+        int first = StartupTrace.begin("SoLoader.init");
+        int inner = StartupTrace.begin("SoLoader.loadLibrary");
+        StartupTrace.end(inner);
+        StartupTrace.end(first);
+        int second = StartupTrace.begin("DefaultNewArchitectureEntryPoint.load");
+        StartupTrace.end(second);
+        AtomicInteger otherThread = new AtomicInteger();
+        Thread thread = new Thread(() -> {
+            int span = StartupTrace.begin("JSBundleLoader");
+            otherThread.set(StartupTrace.depth(span));
+            StartupTrace.end(span);
+        });
+        thread.start();
+        thread.join();
+        StartupTrace.end(outer);
+
+        assertEquals(0, StartupTrace.depth(outer));
+        assertEquals(1, StartupTrace.depth(first));
+        assertEquals(2, StartupTrace.depth(inner));
+        // Back at the first level once SoLoader.init ended
+        assertEquals(1, StartupTrace.depth(second));
+        // Depth is per thread, open spans elsewhere do not count
+        assertEquals(0, otherThread.get());
+        assertEquals(0, StartupTrace.depth(StartupTrace.begin("after")));
+    }
+
+    @Test
+    public void markDoesNotChangeDepth() {
+        int outer = StartupTrace.begin("Application.onCreate");
+        StartupTrace.mark("SplashScreen.hide");
+        int next = StartupTrace.begin("next");
+
+        assertEquals(1, StartupTrace.depth(outer + 1));
+        assertEquals(1, StartupTrace.depth(next));
+    }
+
+    @Test
+    public void fullBufferIgnoresFurtherSpans() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            StartupTrace.end(StartupTrace.begin("span" + i));
+        }
+
+        int overflow = StartupTrace.begin("overflow");
+        assertEquals(-1, overflow);
+        // Neither may touch a slot or the thread's depth
+        StartupTrace.end(overflow);
+        StartupTrace.mark("overflow mark");
+
+        JSONArray events = traceEvents();
+        // The process start, then every span that fit
+        assertEquals(CAPACITY + 1, events.length());
+        assertEquals("span" + (CAPACITY - 1), events.getJSONObject(CAPACITY).getString("name"));
+        StartupTrace.reset();
+        assertEquals(0, StartupTrace.depth(StartupTrace.begin("after reset")));
+    }
+
+    @Test
+    public void chromeTraceFlagsUnfinishedSpans() throws Exception {
+        int open = StartupTrace.begin("Application.onCreate");
+        int done = StartupTrace.begin("SoLoader.init");
+        Thread.sleep(5);
+        StartupTrace.end(done);
+
+        JSONArray events = traceEvents();
+
+        assertEquals(3, events.length());
+        JSONObject processStart = events.getJSONObject(0);
+        assertEquals("Process.start", processStart.getString("name"));
+        assertEquals(0, processStart.getLong("ts"));
+        JSONObject openEvent = events.getJSONObject(1 + open);
+        assertEquals("Application.onCreate", openEvent.getString("name"));
+        assertTrue(openEvent.getJSONObject("args").getBoolean("unfinished"));
+        JSONObject doneEvent = events.getJSONObject(1 + done);
+        assertFalse(doneEvent.has("args"));
+        assertTrue(doneEvent.getLong("dur") >= 5000);
+        // Exported up to now, so the open span still covers the finished one inside it
+        assertTrue(openEvent.getLong("ts") <= doneEvent.getLong("ts"));
+        assertTrue(openEvent.getLong("ts") + openEvent.getLong("dur") >= doneEvent.getLong("ts") + doneEvent.getLong("dur"));
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = events.getJSONObject(i);
+            assertEquals("X", event.getString("ph"));
+            assertEquals("startup", event.getString("cat"));
+            assertEquals(processStart.getInt("pid"), event.getInt("pid"));
+        }
+        assertEquals(Thread.currentThread().getId(), openEvent.getLong("tid"));
+    }
+
+    private static JSONArray traceEvents() throws Exception {
+        JSONObject trace = new JSONObject(StartupTrace.toChromeTraceJson());
+        assertEquals("ms", trace.getString("displayTimeUnit"));
+        return trace.getJSONArray("traceEvents");
+    }
+}
@@ -0,0 +1,97 @@
+package so.onekey.app.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.security.Security;
+
+import so.onekey.app.wallet.update.Benchmark;
+
+@RunWith(RobolectricTestRunner.class)
+public class VerificationTest {
+    private static final String APK_SHA256 = "df3249b2ffb84bc66530c6f93c6fbe8ed2bcdbc0576ed1657800c4a697316267";
+    private static final String APK_ASC = "-----BEGIN PGP SIGNED MESSAGE-----\n" +
+            "Hash: SHA256\n" +
+            "\n" +
+            APK_SHA256 + "  OneKey-Wallet-5.10.0-android.apk\n" +
+            "-----BEGIN PGP SIGNATURE-----\n" +
+            "\n" +
+            "iQJCBAEBCAAsFiEE62iuVE8f3YzSZGJPs2mmepC/OHsFAmhmdH4OHGRldkBvbmVr\n" +
+            "ZXkuc28ACgkQs2mmepC/OHsTDA/+LoSfk0a3tMpJFunBltzWClLsyZIbkrDJwlT4\n" +
+            "gnGuHpOzm3q+GOmsq1T0R7dz91/K2pe5P5efE6cBT+YtlscHqVwRR3ziDO+O0Fyn\n" +
+            "pnkbfpYr2LeYKa89L5/U4cMKOcSi2HJ0dOTicrqRyJZFSLDHNwoteFCK3PN2NJGM\n" +
+            "okK9lVqE+6Ze1NqSDRfvJlyt0eFl+Gd6N2oOXoEh4nfqdl07BIcadAUrQ9ESzaXi\n" +
+            "sCt8TJKYRySqdc28U4YkchQjZAJj+pIYb1RUjli/Xgd6jLKHSAX0ZObxjQvpdIVn\n" +
+            "O/yCOBsDtZVAW6gVrToHM+z4xuE2Q/4PXyZOGtIKasldQtf5mFnB5JjxJtO5fcaq\n" +
+            "c1Cel/vYXGL1Ye2Cwg8HIBAQkiL3z2q7/w2xfNEhY/nSsOshuJ1Aa/1ZWH7AVn1w\n" +
+            "RRKzVS1Qka4cT01SNKmN/B6yVV/dCS8XbUTIRx+2en+JNwHcBFH3NzpNs96wd053\n" +
+            "xU1re9XrNe5wM9jPpP/Y6T9Z0apn3Ksf8HVMJdfdAIcTH7lwQlJGXjza87teqIaD\n" +
+            "mBzpzs7bkR8AvlhXMTyvDosE2nVD9e6nuZq74YCmqx+npelOqGxsA3j8doK5ARiA\n" +
+            "3GZte6Bg5yXBRxK1X8nwKSN5CZLlp5QWyY9NZXBAZKyV3u4MzWITHY4WqlF7eph9\n" +
+            "LgEB7DE=\n" +
+            "=tnDs\n" +
+            "-----END PGP SIGNATURE-----";
+
+    @BeforeClass
+    public static void registerProvider() {
+        // Android ships a "BC" provider, a desktop JVM does not
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    @Test
+    public void verifiesBundledSamples() throws Exception {
+        assertTrue(Verification.testExtractedSha256FromVerifyAscFile());
+    }
+
+    @Test
+    public void extractsSha256FromSignedMessage() throws Exception {
+        assertEquals(APK_SHA256, Verification.extractedSha256FromVerifyAscFile(APK_ASC));
+    }
+
+    @Test
+    public void rejectsEditedMessage() throws Exception {
+        String edited = APK_ASC.replace(APK_SHA256, "0" + APK_SHA256.substring(1));
+
+        assertEquals("", Verification.extractedTextContentFromVerifyAscFile(edited));
+    }
+
+    /**
+     * One .asc check with the key ring parsed once, against parsing the armored key on every
+     * call as Verification did before.
+     */
+    @Test
+    public void benchmarkKeyRingParsedOnce() throws Exception {
+        Benchmark.assumeEnabled();
+        byte[] publicKey = publicKey().getBytes();
+
+        Benchmark.measure("parse key ring", () -> parseKeyRing(publicKey));
+        Benchmark.measure("verify .asc, key ring parsed per call", () -> {
+            parseKeyRing(publicKey);
+            Verification.extractedTextContentFromVerifyAscFile(APK_ASC);
+        });
+        Benchmark.measure("verify .asc, cached key ring", () -> Verification.extractedTextContentFromVerifyAscFile(APK_ASC));
+    }
+
+    private static PGPPublicKeyRingCollection parseKeyRing(byte[] publicKey) throws Exception {
+        return new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(new ByteArrayInputStream(publicKey)), new JcaKeyFingerprintCalculator());
+    }
+
+    private static String publicKey() throws Exception {
+        Field field = Verification.class.getDeclaredField("PUBLIC_KEY");
+        field.setAccessible(true);
+        return (String) field.get(null);
+    }
+}
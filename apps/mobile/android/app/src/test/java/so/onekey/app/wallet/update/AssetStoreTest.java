@@ -0,0 +1,156 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = FileSystemOsShadow.class)
+public class AssetStoreTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+    private AssetStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        files.put("main.jsbundle.hbc", ResumableDownloadTest.content(20 * 1024, 1));
+        files.put("assets/logo.png", ResumableDownloadTest.content(3000, 2));
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            metadata.put(file.getKey(), ResumableDownloadTest.sha256(file.getValue()));
+        }
+        store = new AssetStore(new File(temp.getRoot(), "store"));
+    }
+
+    @Test
+    public void internSharesObjectsAcrossBundles() throws Exception {
+        File first = writeBundle("1.0.0-1");
+        File second = writeBundle("1.0.0-2");
+
+        // The first bundle's files become the objects, the second one's are linked to them
+        assertEquals(0, store.intern(first, metadata));
+        assertEquals(files.size(), store.intern(second, metadata));
+        // Already linked, nothing left to share
+        assertEquals(0, store.intern(second, metadata));
+
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            File object = store.find(entry.getValue());
+            assertNotNull(entry.getKey(), object);
+            assertEquals(inode(object), inode(new File(first, entry.getKey())));
+            assertEquals(inode(object), inode(new File(second, entry.getKey())));
+            assertEquals(3, linkCount(object));
+            assertArrayEquals(files.get(entry.getKey()), ResumableDownloadTest.readFile(new File(second, entry.getKey())));
+        }
+    }
+
+    @Test
+    public void internSkipsFilesItCannotStore() throws Exception {
+        File bundle = writeBundle("1.0.0-1");
+        Map<String, String> listed = new LinkedHashMap<>(metadata);
+        listed.put("missing.png", ResumableDownloadTest.sha256(new byte[]{1}));
+        listed.put("main.jsbundle.hbc", "not-a-hash");
+
+        store.intern(bundle, listed);
+
+        assertNull(store.find(metadata.get("main.jsbundle.hbc")));
+        assertNull(store.find(listed.get("missing.png")));
+        assertNotNull(store.find(metadata.get("assets/logo.png")));
+        assertNull(store.find("../../escape"));
+    }
+
+    @Test
+    public void linkToCreatesHardLink() throws Exception {
+        store.intern(writeBundle("1.0.0-1"), metadata);
+        File target = new File(temp.newFolder("1.0.0-2"), "logo.png");
+
+        assertTrue(store.linkTo(metadata.get("assets/logo.png"), target));
+
+        assertEquals(inode(store.find(metadata.get("assets/logo.png"))), inode(target));
+        assertFalse(store.linkTo(ResumableDownloadTest.sha256(new byte[]{1}), new File(target.getParentFile(), "other.png")));
+    }
+
+    @Test
+    public void linkToDeletesCorruptedObject() throws Exception {
+        store.intern(writeBundle("1.0.0-1"), metadata);
+        String sha256 = metadata.get("assets/logo.png");
+        File object = store.find(sha256);
+        // A new file at the object's path, the bundle's own link is left as it was
+        object.delete();
+        BundleExtractorTest.write(object, ResumableDownloadTest.content(3000, 9));
+        File target = new File(temp.newFolder("1.0.0-2"), "logo.png");
+
+        assertFalse(store.linkTo(sha256, target));
+
+        assertFalse(target.exists());
+        assertFalse(object.exists());
+        assertNull(store.find(sha256));
+    }
+
+    @Test
+    public void internReplacesCorruptedObject() throws Exception {
+        String sha256 = metadata.get("assets/logo.png");
+        File object = new File(new File(new File(temp.getRoot(), "store"), sha256.substring(0, 2)), sha256);
+        // Same size, other content
+        BundleExtractorTest.write(object, ResumableDownloadTest.content(3000, 9));
+        File bundle = writeBundle("1.0.0-1");
+
+        store.intern(bundle, metadata);
+
+        assertArrayEquals(files.get("assets/logo.png"), ResumableDownloadTest.readFile(store.find(sha256)));
+        assertEquals(inode(store.find(sha256)), inode(new File(bundle, "assets/logo.png")));
+    }
+
+    @Test
+    public void collectGarbageKeepsObjectsStillLinked() throws Exception {
+        File bundle = writeBundle("1.0.0-1");
+        store.intern(bundle, metadata);
+        File stray = new File(new File(new File(temp.getRoot(), "store"), "ab"), "partial.tmp");
+        BundleExtractorTest.write(stray, new byte[]{1});
+
+        // Every object is still linked from the bundle, only the stray file goes
+        assertEquals(1, store.collectGarbage());
+        assertFalse(stray.exists());
+        assertFalse(stray.getParentFile().exists());
+
+        assertTrue(new File(bundle, "assets/logo.png").delete());
+        assertEquals(1, store.collectGarbage());
+
+        assertNull(store.find(metadata.get("assets/logo.png")));
+        assertNotNull(store.find(metadata.get("main.jsbundle.hbc")));
+        assertArrayEquals(files.get("main.jsbundle.hbc"), ResumableDownloadTest.readFile(new File(bundle, "main.jsbundle.hbc")));
+    }
+
+    private File writeBundle(String name) throws Exception {
+        File dir = new File(temp.getRoot(), name);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            BundleExtractorTest.write(new File(dir, file.getKey()), file.getValue());
+        }
+        return dir;
+    }
+
+    private static Object inode(File file) throws Exception {
+        return Files.getAttribute(file.toPath(), "unix:ino");
+    }
+
+    private static int linkCount(File file) throws Exception {
+        return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+    }
+}
@@ -0,0 +1,48 @@
+package so.onekey.app.wallet.update;
+
+import org.junit.Assume;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing harness for the update code's hot paths, used by the {@code benchmark*} tests.
+ * <p>
+ * They only run with {@code ./gradlew :app:testProdDebugUnitTest -Ponekey.benchmark=true}: wall
+ * clock numbers from a shared CI machine mean nothing, the regular test run only checks that
+ * the fast path and its baseline agree. Each measurement does warm-up rounds first, so the JIT
+ * and the page cache are settled, then reports the median of the timed rounds.
+ */
+public final class Benchmark {
+    public static final int WARMUP_ROUNDS = 3;
+    public static final int TIMED_ROUNDS = 9;
+
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    private Benchmark() {
+    }
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks run with -Ponekey.benchmark=true", Boolean.getBoolean("onekey.benchmark"));
+    }
+
+    /** Median wall time of {@code body} in nanoseconds, printed as {@code benchmark <name>: <ms>}. */
+    public static long measure(String name, Body body) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            body.run();
+        }
+        long[] times = new long[TIMED_ROUNDS];
+        for (int i = 0; i < TIMED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        long median = times[TIMED_ROUNDS / 2];
+        System.out.println(String.format(Locale.US, "benchmark %s: %.2f ms (min %.2f, max %.2f)",
+                name, median / 1e6, times[0] / 1e6, times[TIMED_ROUNDS - 1] / 1e6));
+        return median;
+    }
+}
@@ -0,0 +1,175 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+@RunWith(RobolectricTestRunner.class)
+public class BsPatchTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private final byte[] old = ResumableDownloadTest.content(1000, 5);
+
+    @Test
+    public void appliesChangesInsertionAndSeek() throws Exception {
+        // new = old[0, 500) with a few bytes changed, 100 inserted bytes, old[600, 1000)
+        byte[] inserted = ResumableDownloadTest.content(100, 77);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] head = Arrays.copyOf(old, 500);
+        head[0] ^= 0x55;
+        head[250] = 0;
+        head[499]++;
+        expected.write(head);
+        expected.write(inserted);
+        expected.write(old, 600, 400);
+
+        Patch patch = new Patch()
+                .control(500, 100, 100)
+                .diff(head, 0, old, 0, 500)
+                .extra(inserted)
+                .control(400, 0, 0)
+                .diff(old, 600, old, 600, 400);
+
+        assertArrayEquals(expected.toByteArray(), apply(patch.write(expected.size())));
+    }
+
+    @Test
+    public void negativeSeekReadsOldBytesAgain() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(old, 0, 200);
+        expected.write(old, 0, 200);
+
+        Patch patch = new Patch()
+                .control(200, 0, -200)
+                .diff(old, 0, old, 0, 200)
+                .control(200, 0, 0)
+                .diff(old, 0, old, 0, 200);
+
+        assertArrayEquals(expected.toByteArray(), apply(patch.write(400)));
+    }
+
+    @Test
+    public void rejectsOtherMagic() throws Exception {
+        byte[] patch = new Patch().control(0, 10, 0).extra(new byte[10]).write(10);
+        patch[7] = 'X';
+
+        assertRejected(patch, "Not a BSDIFF4D patch");
+    }
+
+    @Test
+    public void rejectsBlocksPastEndOfFile() throws Exception {
+        byte[] patch = new Patch().control(0, 10, 0).extra(new byte[10]).write(10);
+
+        assertRejected(Arrays.copyOf(patch, 40), "Corrupt patch header");
+    }
+
+    @Test
+    public void rejectsControlPastNewSize() throws Exception {
+        byte[] patch = new Patch().control(0, 20, 0).extra(new byte[20]).write(10);
+
+        assertRejected(patch, "Corrupt patch control block");
+    }
+
+    @Test
+    public void rejectsBlocksShorterThanNewSize() throws Exception {
+        // The control block runs out before newSize is reached
+        assertRejected(new Patch().control(0, 10, 0).extra(new byte[10]).write(20), "Patch truncated");
+        // The extra block holds fewer bytes than the control block copies
+        assertRejected(new Patch().control(0, 20, 0).extra(new byte[10]).write(20), "Patch truncated");
+    }
+
+    private byte[] apply(byte[] patch) throws IOException {
+        File oldFile = new File(temp.getRoot(), "old.bin");
+        File patchFile = new File(temp.getRoot(), "patch.bsdiff");
+        BundleExtractorTest.write(oldFile, old);
+        BundleExtractorTest.write(patchFile, patch);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BsPatch.apply(oldFile, patchFile, out);
+        return out.toByteArray();
+    }
+
+    private void assertRejected(byte[] patch, String message) {
+        try {
+            apply(patch);
+            fail("Expected the patch to be rejected");
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    /** Writes BSDIFF4D patches: header, then the deflated control, diff and extra blocks. */
+    private static class Patch {
+        private final ByteArrayOutputStream ctrl = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream diff = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream extra = new ByteArrayOutputStream();
+
+        Patch control(long x, long y, long z) throws IOException {
+            ctrl.write(offtout(x));
+            ctrl.write(offtout(y));
+            ctrl.write(offtout(z));
+            return this;
+        }
+
+        // Bytes that turn old[oldOffset, +length) into target[targetOffset, +length)
+        Patch diff(byte[] target, int targetOffset, byte[] old, int oldOffset, int length) {
+            for (int i = 0; i < length; i++) {
+                diff.write(target[targetOffset + i] - old[oldOffset + i]);
+            }
+            return this;
+        }
+
+        Patch extra(byte[] bytes) throws IOException {
+            extra.write(bytes);
+            return this;
+        }
+
+        byte[] write(long newSize) throws IOException {
+            byte[] ctrlBlock = deflate(ctrl.toByteArray());
+            byte[] diffBlock = deflate(diff.toByteArray());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write("BSDIFF4D".getBytes(StandardCharsets.US_ASCII));
+            out.write(offtout(ctrlBlock.length));
+            out.write(offtout(diffBlock.length));
+            out.write(offtout(newSize));
+            out.write(ctrlBlock);
+            out.write(diffBlock);
+            out.write(deflate(extra.toByteArray()));
+            return out.toByteArray();
+        }
+
+        private static byte[] deflate(byte[] bytes) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+                deflater.write(bytes);
+            }
+            return out.toByteArray();
+        }
+
+        // bsdiff's sign-magnitude little-endian encoding
+        private static byte[] offtout(long value) {
+            byte[] bytes = new byte[8];
+            long magnitude = Math.abs(value);
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (magnitude >>> (8 * i));
+            }
+            if (value < 0) {
+                bytes[7] |= (byte) 0x80;
+            }
+            return bytes;
+        }
+    }
+}
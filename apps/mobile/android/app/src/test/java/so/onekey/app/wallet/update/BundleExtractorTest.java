@@ -0,0 +1,258 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@RunWith(RobolectricTestRunner.class)
+public class BundleExtractorTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private File zipFile;
+    private File destDir;
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() {
+        zipFile = new File(temp.getRoot(), "bundle.zip");
+        destDir = new File(temp.getRoot(), "1.0.0-1");
+        files.put("main.jsbundle.hbc", ResumableDownloadTest.content(200 * 1024, 1));
+        files.put("assets/logo.png", ResumableDownloadTest.content(3000, 2));
+        files.put("assets/nested/font.ttf", ResumableDownloadTest.content(10, 3));
+    }
+
+    @Test
+    public void extractsAndVerifiesEveryFile() throws Exception {
+        byte[] metadata = metadataJson(files);
+        writeZip(metadata, files, true);
+
+        BundleExtractor.Result result = new BundleExtractor(zipFile, destDir, ResumableDownloadTest.sha256(metadata)).extract();
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getValue(), ResumableDownloadTest.readFile(new File(destDir, file.getKey())));
+            assertEquals(ResumableDownloadTest.sha256(file.getValue()), result.metadata.get(file.getKey()));
+        }
+        assertArrayEquals(metadata, ResumableDownloadTest.readFile(new File(destDir, BundleExtractor.METADATA_FILE_NAME)));
+        assertTrue(result.matchesOnDisk(destDir));
+        assertFalse(stagingDir().exists());
+    }
+
+    @Test
+    public void checksEntriesThatComeBeforeMetadata() throws Exception {
+        byte[] metadata = metadataJson(files);
+        writeZip(metadata, files, false);
+
+        new BundleExtractor(zipFile, destDir, ResumableDownloadTest.sha256(metadata)).extract();
+
+        assertArrayEquals(files.get("main.jsbundle.hbc"), ResumableDownloadTest.readFile(new File(destDir, "main.jsbundle.hbc")));
+    }
+
+    @Test
+    public void hashMismatchKeepsPreviousBundle() throws Exception {
+        File previous = new File(destDir, "main.jsbundle.hbc");
+        destDir.mkdirs();
+        write(previous, "previous".getBytes(StandardCharsets.UTF_8));
+        byte[] metadata = metadataJson(files);
+        Map<String, byte[]> tampered = new LinkedHashMap<>(files);
+        tampered.put("assets/logo.png", ResumableDownloadTest.content(3000, 9));
+        writeZip(metadata, tampered, true);
+
+        assertVerificationFails(ResumableDownloadTest.sha256(metadata), "SHA256 mismatch for file assets/logo.png");
+
+        assertArrayEquals("previous".getBytes(StandardCharsets.UTF_8), ResumableDownloadTest.readFile(previous));
+        assertFalse(stagingDir().exists());
+    }
+
+    @Test
+    public void rejectsMetadataWithWrongHash() throws Exception {
+        byte[] metadata = metadataJson(files);
+        writeZip(metadata, files, true);
+
+        assertVerificationFails(ResumableDownloadTest.sha256("other".getBytes(StandardCharsets.UTF_8)), "SHA256 mismatch for metadata.json");
+
+        assertFalse(destDir.exists());
+        assertFalse(stagingDir().exists());
+    }
+
+    @Test
+    public void rejectsFileMissingFromMetadata() throws Exception {
+        byte[] metadata = metadataJson(files);
+        Map<String, byte[]> extra = new LinkedHashMap<>(files);
+        extra.put("assets/unlisted.js", "alert(1)".getBytes(StandardCharsets.UTF_8));
+        writeZip(metadata, extra, true);
+
+        assertVerificationFails(ResumableDownloadTest.sha256(metadata), "File assets/unlisted.js not found in metadata");
+        assertFalse(destDir.exists());
+    }
+
+    @Test
+    public void rejectsZipWithoutMetadata() throws Exception {
+        writeZip(null, files, true);
+
+        assertVerificationFails(ResumableDownloadTest.sha256(metadataJson(files)), "metadata.json not found in bundle");
+        assertFalse(destDir.exists());
+    }
+
+    @Test
+    public void rejectsPathTraversal() throws Exception {
+        byte[] metadata = metadataJson(files);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            putEntry(zip, BundleExtractor.METADATA_FILE_NAME, metadata);
+            putEntry(zip, "../escaped.js", "alert(1)".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            new BundleExtractor(zipFile, destDir, ResumableDownloadTest.sha256(metadata)).extract();
+            fail("Expected the traversing entry to be rejected");
+        } catch (IOException expected) {
+            // Rejected by the extractor, or by ZipInputStream itself on API 34+
+        }
+        assertFalse(new File(temp.getRoot(), "escaped.js").exists());
+        assertFalse(destDir.exists());
+        assertFalse(stagingDir().exists());
+    }
+
+    @Test
+    public void extractsNestedMetadataAndDsStoreWithoutChecking() throws Exception {
+        byte[] metadata = metadataJson(files);
+        Map<String, byte[]> withExtras = new LinkedHashMap<>(files);
+        withExtras.put("assets/plugin/metadata.json", "{\"not\": \"listed\"}".getBytes(StandardCharsets.UTF_8));
+        withExtras.put("assets/.DS_Store", new byte[]{0, 0, 0, 1});
+        writeZip(metadata, withExtras, true);
+
+        BundleExtractor.Result result = new BundleExtractor(zipFile, destDir, ResumableDownloadTest.sha256(metadata)).extract();
+
+        assertArrayEquals(withExtras.get("assets/plugin/metadata.json"), ResumableDownloadTest.readFile(new File(destDir, "assets/plugin/metadata.json")));
+        assertArrayEquals(withExtras.get("assets/.DS_Store"), ResumableDownloadTest.readFile(new File(destDir, "assets/.DS_Store")));
+        assertEquals(Long.valueOf(4), result.fileSizes.get("assets/.DS_Store"));
+    }
+
+    @Test
+    public void replacesPreviousExtraction() throws Exception {
+        destDir.mkdirs();
+        write(new File(destDir, "stale.js"), "stale".getBytes(StandardCharsets.UTF_8));
+        byte[] metadata = metadataJson(files);
+        writeZip(metadata, files, true);
+
+        new BundleExtractor(zipFile, destDir, ResumableDownloadTest.sha256(metadata)).extract();
+
+        assertFalse(new File(destDir, "stale.js").exists());
+        assertTrue(new File(destDir, "main.jsbundle.hbc").isFile());
+        assertFalse(new File(temp.getRoot(), destDir.getName() + ".old").exists());
+    }
+
+    @Test
+    public void restoresBundleLeftAsOldByInterruptedReplace() throws Exception {
+        // Killed after moving the live bundle aside and before the new one took its place
+        File oldDir = new File(temp.getRoot(), destDir.getName() + ".old");
+        write(new File(oldDir, "main.jsbundle.hbc"), "live".getBytes(StandardCharsets.UTF_8));
+        write(new File(stagingDir(), "main.jsbundle.hbc"), "half".getBytes(StandardCharsets.UTF_8));
+
+        List<File> leftovers = BundleExtractor.recoverInterruptedReplace(temp.getRoot());
+
+        assertArrayEquals("live".getBytes(StandardCharsets.UTF_8), ResumableDownloadTest.readFile(new File(destDir, "main.jsbundle.hbc")));
+        assertFalse(oldDir.exists());
+        assertEquals(Collections.singletonList(stagingDir()), leftovers);
+    }
+
+    @Test
+    public void keepsReplacedBundleAndReportsStaleOldCopy() throws Exception {
+        // Killed after the new bundle was in place but before the old copy was deleted
+        File oldDir = new File(temp.getRoot(), destDir.getName() + ".old");
+        write(new File(oldDir, "main.jsbundle.hbc"), "previous".getBytes(StandardCharsets.UTF_8));
+        write(new File(destDir, "main.jsbundle.hbc"), "current".getBytes(StandardCharsets.UTF_8));
+        write(new File(temp.getRoot(), "bundle.old"), new byte[]{1});
+
+        List<File> leftovers = BundleExtractor.recoverInterruptedReplace(temp.getRoot());
+
+        assertArrayEquals("current".getBytes(StandardCharsets.UTF_8), ResumableDownloadTest.readFile(new File(destDir, "main.jsbundle.hbc")));
+        // Plain files are not bundle directories and are left alone
+        assertEquals(Collections.singletonList(oldDir), leftovers);
+    }
+
+    @Test
+    public void matchesOnDiskNoticesChangedSize() throws Exception {
+        byte[] metadata = metadataJson(files);
+        writeZip(metadata, files, true);
+        BundleExtractor.Result result = new BundleExtractor(zipFile, destDir, ResumableDownloadTest.sha256(metadata)).extract();
+
+        write(new File(destDir, "assets/logo.png"), new byte[]{1});
+
+        assertFalse(result.matchesOnDisk(destDir));
+    }
+
+    private void assertVerificationFails(String metadataSha256, String messagePrefix) throws IOException {
+        try {
+            new BundleExtractor(zipFile, destDir, metadataSha256).extract();
+            fail("Expected verification to fail");
+        } catch (BundleExtractor.VerificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(messagePrefix));
+        }
+    }
+
+    private File stagingDir() {
+        return new File(temp.getRoot(), destDir.getName() + ".staging");
+    }
+
+    static byte[] metadataJson(Map<String, byte[]> files) throws Exception {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(file.getKey()).append("\":\"").append(ResumableDownloadTest.sha256(file.getValue())).append('"');
+        }
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // metadata == null leaves it out, metadataFirst == false puts it after the other files
+    private void writeZip(byte[] metadata, Map<String, byte[]> entries, boolean metadataFirst) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            if (metadata != null && metadataFirst) {
+                putEntry(zip, BundleExtractor.METADATA_FILE_NAME, metadata);
+            }
+            zip.putNextEntry(new ZipEntry("assets/"));
+            zip.closeEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                putEntry(zip, entry.getKey(), entry.getValue());
+            }
+            if (metadata != null && !metadataFirst) {
+                putEntry(zip, BundleExtractor.METADATA_FILE_NAME, metadata);
+            }
+        }
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    static void write(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(content);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BundleStateStoreTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temp.getRoot(), "state/bundle-state.bin");
+    }
+
+    @Test
+    public void startsEmpty() {
+        BundleStateStore store = new BundleStateStore(file);
+
+        assertFalse(store.exists());
+        assertSame(BundleStateStore.State.EMPTY, store.get());
+        assertNull(store.get().currentBundle);
+    }
+
+    @Test
+    public void reopenedStoreReadsNewestState() throws Exception {
+        BundleStateStore store = new BundleStateStore(file);
+        store.update(state -> state.withNativeVersion("5.10.0"));
+        store.update(state -> state.withActivated("5.10.0-1", "sig1"));
+        store.update(state -> state.withActivated("5.10.0-2", "sig2"));
+
+        BundleStateStore.State state = new BundleStateStore(file).get();
+
+        assertEquals(3, state.generation);
+        assertEquals("5.10.0", state.nativeVersion);
+        assertEquals("5.10.0-2", state.currentBundle);
+        assertEquals("sig2", state.currentSignature);
+        assertEquals(1, state.fallbacks.size());
+        assertEquals("5.10.0-1", state.fallbacks.get(0).folderName());
+        assertEquals("sig1", state.fallbacks.get(0).signature);
+    }
+
+    @Test
+    public void tornTailKeepsPreviousStateAndIsDropped() throws Exception {
+        BundleStateStore store = new BundleStateStore(file);
+        store.update(state -> state.withActivated("5.10.0-1", "sig1"));
+        store.update(state -> state.withActivated("5.10.0-2", "sig2"));
+        // An append that died after the record header and a few payload bytes
+        try (FileOutputStream fos = new FileOutputStream(file, true)) {
+            fos.write(new byte[]{0, 0, 0, 100, 1, 2, 3, 4, '{', '"'});
+        }
+
+        BundleStateStore reopened = new BundleStateStore(file);
+        assertEquals("5.10.0-2", reopened.get().currentBundle);
+        assertEquals(2, reopened.get().generation);
+        reopened.update(state -> state.withActivated("5.10.0-3", "sig3"));
+        reopened.update(state -> state.withNativeVersion("5.11.0"));
+
+        // Appending after the torn bytes would hide both records from the next launch
+        BundleStateStore.State state = new BundleStateStore(file).get();
+        assertEquals("5.10.0-3", state.currentBundle);
+        assertEquals("5.11.0", state.nativeVersion);
+        assertEquals(4, state.generation);
+    }
+
+    @Test
+    public void recordFailingCrcIsIgnored() throws Exception {
+        BundleStateStore store = new BundleStateStore(file);
+        store.update(state -> state.withActivated("5.10.0-1", "sig1"));
+        long firstLength = file.length();
+        store.update(state -> state.withActivated("5.10.0-2", "sig2"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long position = firstLength + 8 + 5;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x01);
+        }
+
+        BundleStateStore.State state = new BundleStateStore(file).get();
+
+        assertEquals("5.10.0-1", state.currentBundle);
+        assertEquals(1, state.generation);
+    }
+
+    @Test
+    public void foreignFileIsReplacedOnFirstWrite() throws Exception {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write("{\"currentBundle\":\"5.10.0-1\"}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        BundleStateStore store = new BundleStateStore(file);
+        assertFalse(store.exists());
+        store.update(state -> state.withActivated("5.10.0-2", "sig2"));
+
+        assertEquals("5.10.0-2", new BundleStateStore(file).get().currentBundle);
+    }
+
+    @Test
+    public void journalIsCompacted() throws Exception {
+        BundleStateStore store = new BundleStateStore(file);
+        List<Long> lengths = new ArrayList<>();
+        for (int i = 1; i <= 80; i++) {
+            String bundle = "5.10.0-" + i;
+            store.update(state -> state.withCurrent(bundle, "sig"));
+            lengths.add(file.length());
+        }
+
+        // Every record has about the same size, so the journal never holds many of them
+        long record = lengths.get(1) - lengths.get(0);
+        for (long length : lengths) {
+            assertTrue("journal of " + length + " bytes", length < 8 + 33 * (record + 8));
+        }
+        assertTrue(lengths.get(lengths.size() - 1) < lengths.get(30));
+        BundleStateStore.State state = new BundleStateStore(file).get();
+        assertEquals("5.10.0-80", state.currentBundle);
+        assertEquals(80, state.generation);
+    }
+
+    @Test
+    public void compareAndSetRejectsStaleState() throws Exception {
+        BundleStateStore store = new BundleStateStore(file);
+        BundleStateStore.State initial = store.get();
+
+        assertTrue(store.compareAndSet(initial, initial.withNativeVersion("5.10.0")));
+        assertFalse(store.compareAndSet(initial, initial.withNativeVersion("5.11.0")));
+
+        assertEquals("5.10.0", store.get().nativeVersion);
+        assertEquals(1, store.get().generation);
+        assertEquals("5.10.0", new BundleStateStore(file).get().nativeVersion);
+    }
+
+    @Test
+    public void updateRetriesOnConcurrentChange() throws Exception {
+        BundleStateStore store = new BundleStateStore(file);
+        int[] calls = {0};
+
+        BundleStateStore.State state = store.update(current -> {
+            if (calls[0]++ == 0) {
+                // Another thread commits between the read and the write of this update
+                assertTrue(store.compareAndSet(current, current.withNativeVersion("5.10.0")));
+            }
+            return current.withActivated("5.10.0-1", "sig1");
+        });
+
+        assertEquals(2, calls[0]);
+        assertEquals("5.10.0", state.nativeVersion);
+        assertEquals("5.10.0-1", state.currentBundle);
+        assertEquals(2, state.generation);
+    }
+
+    @Test
+    public void activatingFallbackSwapsItWithCurrent() {
+        BundleStateStore.State state = BundleStateStore.State.EMPTY
+                .withActivated("5.10.0-1", "sig1")
+                .withActivated("5.10.0-2", "sig2")
+                .withActivated("5.10.0-1", "");
+
+        assertEquals("5.10.0-1", state.currentBundle);
+        assertEquals("sig1", state.currentSignature);
+        assertEquals(1, state.fallbacks.size());
+        assertEquals("5.10.0-2", state.fallbacks.get(0).folderName());
+        assertEquals("sig2", state.signatureOf("5.10.0-2"));
+        assertEquals("", state.signatureOf("5.10.0-3"));
+    }
+
+    @Test
+    public void withCurrentLeavesFallbacksAlone() {
+        BundleStateStore.State state = BundleStateStore.State.EMPTY
+                .withActivated("5.10.0-1", "sig1")
+                .withActivated("5.10.0-2", "sig2")
+                .withCurrent("5.10.0-1", "sig1");
+
+        assertEquals("5.10.0-1", state.currentBundle);
+        assertEquals(1, state.fallbacks.size());
+        assertEquals("5.10.0-1", state.fallbacks.get(0).folderName());
+    }
+
+    @Test
+    public void unreadableFileStartsEmpty() throws IOException {
+        file.getParentFile().mkdirs();
+        assertTrue(file.createNewFile());
+
+        BundleStateStore store = new BundleStateStore(file);
+
+        assertFalse(store.exists());
+        assertEquals(0, store.get().generation);
+    }
+}
@@ -0,0 +1,204 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = FileSystemOsShadow.class)
+public class BundleSyncTest {
+    private static final String LOGO = "assets/logo.png";
+    private static final String MAIN = "main.jsbundle.hbc";
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final FileDispatcher dispatcher = new FileDispatcher();
+    private final Map<String, byte[]> baseFiles = new LinkedHashMap<>();
+    private final Map<String, byte[]> newFiles = new LinkedHashMap<>();
+    private File baseDir;
+    private File destDir;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(dispatcher);
+        baseFiles.put(MAIN, ResumableDownloadTest.content(50 * 1024, 1));
+        baseFiles.put(LOGO, ResumableDownloadTest.content(3000, 2));
+        newFiles.put(MAIN, ResumableDownloadTest.content(50 * 1024, 3));
+        newFiles.put(LOGO, baseFiles.get(LOGO));
+        baseDir = temp.newFolder("1.0.0-1");
+        for (Map.Entry<String, byte[]> file : baseFiles.entrySet()) {
+            BundleExtractorTest.write(new File(baseDir, file.getKey()), file.getValue());
+        }
+        BundleExtractorTest.write(new File(baseDir, BundleExtractor.METADATA_FILE_NAME), BundleExtractorTest.metadataJson(baseFiles));
+        destDir = new File(temp.getRoot(), "1.0.0-2");
+    }
+
+    @After
+    public void tearDown() {
+        UpdateHttpClient.get().connectionPool().evictAll();
+    }
+
+    @Test
+    public void linksUnchangedFilesInsteadOfDownloading() throws Exception {
+        publish(newFiles);
+
+        BundleExtractor.Result result = newSync(baseMetadataSha256()).sync(null);
+
+        assertBundle(newFiles);
+        assertEquals(0, dispatcher.requests(LOGO));
+        assertEquals(1, dispatcher.requests(MAIN));
+        // The same inode as the base bundle's copy, not a second one
+        assertEquals(inode(new File(baseDir, LOGO)), inode(new File(destDir, LOGO)));
+        assertEquals(Long.valueOf(newFiles.get(LOGO).length), result.fileSizes.get(LOGO));
+        assertFalse(new File(temp.getRoot(), destDir.getName() + ".staging").exists());
+    }
+
+    @Test
+    public void ignoresBaseManifestThatDoesNotMatchItsSignature() throws Exception {
+        publish(newFiles);
+        String otherSha256 = ResumableDownloadTest.sha256(new byte[]{42});
+
+        newSync(otherSha256).sync(null);
+
+        assertBundle(newFiles);
+        // Nothing from the base bundle is trusted, every file is downloaded
+        assertEquals(1, dispatcher.requests(LOGO));
+        assertEquals(1, dispatcher.requests(MAIN));
+        assertNotEquals(inode(new File(baseDir, LOGO)), inode(new File(destDir, LOGO)));
+    }
+
+    @Test
+    public void downloadsBaseFileChangedOnDisk() throws Exception {
+        publish(newFiles);
+        // The base manifest still lists the original hash
+        byte[] tampered = "tampered".getBytes(StandardCharsets.UTF_8);
+        BundleExtractorTest.write(new File(baseDir, LOGO), tampered);
+
+        newSync(baseMetadataSha256()).sync(null);
+
+        assertBundle(newFiles);
+        assertEquals(1, dispatcher.requests(LOGO));
+        // Only the link was dropped, the base bundle's file is left as it was
+        assertArrayEquals(tampered, ResumableDownloadTest.readFile(new File(baseDir, LOGO)));
+    }
+
+    @Test
+    public void firstFailedFetchCancelsTheRest() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            files.put("assets/" + i + ".png", ResumableDownloadTest.content(1000, 10 + i));
+        }
+        publish(files);
+        // Every other file hangs until the test ends, so only cancellation lets sync() return
+        dispatcher.missing = "assets/7.png";
+        dispatcher.hold = new CountDownLatch(1);
+        // Room for all of them at once, so the failing one is not queued behind the others
+        okhttp3.Dispatcher calls = new okhttp3.Dispatcher();
+        calls.setMaxRequests(64);
+        calls.setMaxRequestsPerHost(64);
+        OkHttpClient client = UpdateHttpClient.get().newBuilder().dispatcher(calls).build();
+        BundleSync sync = new BundleSync(client, server.url("/files").toString(), null, null,
+                destDir, ResumableDownloadTest.sha256(BundleExtractorTest.metadataJson(files)));
+
+        try {
+            sync.sync(null);
+            fail("Expected the missing file to fail the sync");
+        } catch (ResumableDownload.HttpStatusException e) {
+            assertEquals(404, e.code);
+            // Returned while every other file was still being held
+            assertEquals(0, dispatcher.served.get());
+        } finally {
+            dispatcher.hold.countDown();
+        }
+
+        assertEquals(0, calls.runningCallsCount() + calls.queuedCallsCount());
+        assertFalse(destDir.exists());
+        assertFalse(new File(temp.getRoot(), destDir.getName() + ".staging").exists());
+    }
+
+    private BundleSync newSync(String baseMetadataSha256) throws Exception {
+        String metadataSha256 = ResumableDownloadTest.sha256(dispatcher.files.get(BundleExtractor.METADATA_FILE_NAME));
+        return new BundleSync(UpdateHttpClient.get(), server.url("/files/").toString(), baseDir, baseMetadataSha256,
+                destDir, metadataSha256);
+    }
+
+    private void publish(Map<String, byte[]> files) throws Exception {
+        dispatcher.files.putAll(files);
+        dispatcher.files.put(BundleExtractor.METADATA_FILE_NAME, BundleExtractorTest.metadataJson(files));
+    }
+
+    private String baseMetadataSha256() throws Exception {
+        return FileHasher.sha256(new File(baseDir, BundleExtractor.METADATA_FILE_NAME));
+    }
+
+    private void assertBundle(Map<String, byte[]> files) throws Exception {
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), ResumableDownloadTest.readFile(new File(destDir, file.getKey())));
+        }
+        assertArrayEquals(BundleExtractorTest.metadataJson(files), ResumableDownloadTest.readFile(new File(destDir, BundleExtractor.METADATA_FILE_NAME)));
+    }
+
+    private static Object inode(File file) throws Exception {
+        return Files.getAttribute(file.toPath(), "unix:ino");
+    }
+
+    /** Serves {@code /files/<path>} from a map and counts the requests for each path. */
+    private static class FileDispatcher extends Dispatcher {
+        final Map<String, byte[]> files = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        volatile String missing;
+        final AtomicInteger served = new AtomicInteger();
+        volatile CountDownLatch hold;
+
+        int requests(String path) {
+            AtomicInteger count = requests.get(path);
+            return count != null ? count.get() : 0;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getRequestUrl().encodedPath().substring("/files/".length());
+            requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            byte[] content = files.get(path);
+            if (content == null || path.equals(missing)) {
+                return new MockResponse().setResponseCode(404);
+            }
+            if (hold != null && !path.equals(BundleExtractor.METADATA_FILE_NAME)) {
+                hold.await(10, TimeUnit.SECONDS);
+                served.incrementAndGet();
+            }
+            return new MockResponse().setBody(new Buffer().write(content));
+        }
+    }
+}
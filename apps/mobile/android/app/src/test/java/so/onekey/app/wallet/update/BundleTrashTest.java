@@ -0,0 +1,114 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class BundleTrashTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private File trashDir;
+    private BundleTrash trash;
+
+    @Before
+    public void setUp() {
+        trashDir = new File(temp.getRoot(), "trash");
+        trash = new BundleTrash(trashDir);
+    }
+
+    @Test
+    public void sameNameTrashedTwiceBeforeSweepKeepsBoth() throws Exception {
+        File bundle = writeBundle("1.0.0-1", 3);
+        assertTrue(trash.moveToTrash(bundle));
+        assertFalse(bundle.exists());
+        writeBundle("1.0.0-1", 2);
+
+        assertTrue(trash.moveToTrash(bundle));
+
+        assertFalse(bundle.exists());
+        String[] names = trashDir.list();
+        assertEquals(2, names.length);
+        for (String name : names) {
+            assertTrue(name, name.endsWith("-1.0.0-1"));
+        }
+        // Each copy is its files, its assets dir and itself
+        assertEquals(5 + 4, trash.sweep(null));
+        assertFalse(trash.hasContents());
+    }
+
+    @Test
+    public void missingTargetIsNotTrashed() {
+        assertFalse(trash.moveToTrash(new File(temp.getRoot(), "missing")));
+        assertFalse(trash.hasContents());
+    }
+
+    @Test
+    public void cancelledSweepLeavesTheRestForTheNextOne() throws Exception {
+        trash.moveToTrash(writeBundle("1.0.0-1", 20));
+        trash.moveToTrash(writeBundle("1.0.0-2", 20));
+
+        int removed = trash.sweep(cancelledAfter(5));
+
+        assertTrue("removed " + removed, removed > 0 && removed < 44);
+        assertTrue(trash.hasContents());
+        assertEquals(44 - removed, trash.sweep(null));
+        assertFalse(trash.hasContents());
+    }
+
+    @Test
+    public void alreadyCancelledSweepDeletesNothing() throws Exception {
+        trash.moveToTrash(writeBundle("1.0.0-1", 2));
+        UpdateScheduler.CancellationToken token = new UpdateScheduler.CancellationToken();
+        token.cancel();
+
+        assertEquals(0, trash.sweep(token));
+        assertTrue(trash.hasContents());
+    }
+
+    @Test
+    public void sweepsWhatWasLeftBeforeRestart() throws Exception {
+        trash.moveToTrash(writeBundle("1.0.0-1", 2));
+        File nested = new File(new File(writeBundle("1.0.0-2", 1), "assets"), "fonts");
+        BundleExtractorTest.write(new File(nested, "font.ttf"), new byte[]{1});
+        trash.moveToTrash(nested.getParentFile().getParentFile());
+
+        // What a new process sees in the same trash directory
+        BundleTrash restarted = new BundleTrash(trashDir);
+
+        assertTrue(restarted.hasContents());
+        assertEquals(2, trashDir.list().length);
+        // Two files and two dirs, then two files and three dirs
+        assertEquals(4 + 5, restarted.sweep(null));
+        assertFalse(restarted.hasContents());
+        assertArrayEquals(new String[0], trashDir.list());
+    }
+
+    private File writeBundle(String name, int fileCount) throws Exception {
+        File dir = new File(temp.getRoot(), name);
+        for (int i = 0; i < fileCount; i++) {
+            BundleExtractorTest.write(new File(dir, "assets/file" + i + ".bin"), new byte[]{(byte) i});
+        }
+        return dir;
+    }
+
+    // Reports cancellation once polled more than checks times, mid-way through a sweep
+    private static UpdateScheduler.CancellationToken cancelledAfter(int checks) {
+        return new UpdateScheduler.CancellationToken() {
+            private int polled;
+
+            @Override
+            public boolean isCancelled() {
+                return ++polled > checks;
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+@RunWith(RobolectricTestRunner.class)
+public class DownloadSidecarTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void writeAndReadRoundTrip() throws Exception {
+        File file = new File(temp.getRoot(), "app.apk.part.json");
+        DownloadSidecar sidecar = new DownloadSidecar("https://example.com/app.apk");
+        sidecar.etag = "\"v1\"";
+        sidecar.lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+        sidecar.bytesWritten = 4096;
+        sidecar.totalBytes = 10000;
+        sidecar.chunkSize = 1024;
+        sidecar.completedChunks.set(0);
+        sidecar.completedChunks.set(1);
+        sidecar.completedChunks.set(5);
+        sidecar.write(file);
+
+        DownloadSidecar read = DownloadSidecar.read(file);
+        assertEquals("https://example.com/app.apk", read.url);
+        assertEquals("\"v1\"", read.etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", read.lastModified);
+        assertEquals(4096, read.bytesWritten);
+        assertEquals(10000, read.totalBytes);
+        assertEquals(1024, read.chunkSize);
+        assertEquals(sidecar.completedChunks, read.completedChunks);
+        assertFalse(new File(file.getAbsolutePath() + ".tmp").exists());
+    }
+
+    @Test
+    public void readReturnsNullForMissingOrCorruptFile() throws Exception {
+        File file = new File(temp.getRoot(), "missing.part.json");
+        assertNull(DownloadSidecar.read(file));
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write("{\"url\": \"https://exa".getBytes(StandardCharsets.UTF_8));
+        }
+        assertNull(DownloadSidecar.read(file));
+    }
+
+    @Test
+    public void ifRangeSkipsWeakEtag() {
+        DownloadSidecar sidecar = new DownloadSidecar("https://example.com/app.apk");
+        assertFalse(sidecar.hasValidator());
+        assertNull(sidecar.ifRangeValue());
+
+        sidecar.etag = "W/\"v1\"";
+        assertTrue(sidecar.hasValidator());
+        assertNull(sidecar.ifRangeValue());
+
+        sidecar.lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", sidecar.ifRangeValue());
+
+        sidecar.etag = "\"v1\"";
+        assertEquals("\"v1\"", sidecar.ifRangeValue());
+    }
+
+    @Test
+    public void resetClearsValidatorsAndProgress() {
+        DownloadSidecar sidecar = new DownloadSidecar("https://example.com/app.apk");
+        sidecar.etag = "\"v1\"";
+        sidecar.bytesWritten = 10;
+        sidecar.totalBytes = 20;
+        sidecar.chunkSize = 5;
+        sidecar.completedChunks.set(1);
+        sidecar.reset();
+        assertFalse(sidecar.hasValidator());
+        assertEquals(0, sidecar.bytesWritten);
+        assertEquals(0, sidecar.totalBytes);
+        assertEquals(0, sidecar.chunkSize);
+        assertTrue(sidecar.completedChunks.isEmpty());
+        assertEquals("https://example.com/app.apk", sidecar.url);
+    }
+}
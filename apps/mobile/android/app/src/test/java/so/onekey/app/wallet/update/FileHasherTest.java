@@ -0,0 +1,106 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class FileHasherTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void matchesMessageDigestForSmallFiles() throws Exception {
+        for (int size : new int[]{0, 1, 256 * 1024 - 1, 256 * 1024, 700 * 1024}) {
+            File file = writeFile("small-" + size, size);
+            assertEquals("size " + size, baselineSha256(file), FileHasher.sha256(file));
+        }
+    }
+
+    @Test
+    public void matchesMessageDigestForMappedFile() throws Exception {
+        File file = writeFile("mapped", 17 * 1024 * 1024 + 3);
+        assertEquals(baselineSha256(file), FileHasher.sha256(file));
+    }
+
+    @Test
+    public void recoversAfterFailedRead() throws Exception {
+        try {
+            FileHasher.sha256(new File(temp.getRoot(), "missing"));
+            fail("Expected a missing file to fail");
+        } catch (FileNotFoundException expected) {
+        }
+        File file = writeFile("after-failure", 1000);
+        assertEquals(baselineSha256(file), FileHasher.sha256(file));
+    }
+
+    /**
+     * Files from below the map threshold to well past one map window, and many small assets,
+     * against the former 8 KB stream loop.
+     */
+    @Test
+    public void benchmarkAgainstBufferedStream() throws Exception {
+        Benchmark.assumeEnabled();
+        for (int megabytes : new int[]{1, 16, 64, 200}) {
+            File large = writeFile("large-" + megabytes, megabytes * 1024 * 1024);
+            assertEquals(baselineSha256(large), FileHasher.sha256(large));
+            long baseline = Benchmark.measure("hash " + megabytes + " MB, buffered stream", () -> baselineSha256(large));
+            long hasher = Benchmark.measure("hash " + megabytes + " MB, FileHasher", () -> FileHasher.sha256(large));
+            System.out.println(String.format(Locale.US, "benchmark hash %d MB: buffered stream %.0f MB/s, FileHasher %.0f MB/s",
+                    megabytes, megabytes * 1e9 / baseline, megabytes * 1e9 / hasher));
+            large.delete();
+        }
+
+        List<File> small = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            small.add(writeFile("asset-" + i, 24 * 1024));
+        }
+        Benchmark.measure("hash 2000 x 24 KB, buffered stream", () -> {
+            for (File file : small) {
+                baselineSha256(file);
+            }
+        });
+        Benchmark.measure("hash 2000 x 24 KB, FileHasher", () -> {
+            for (File file : small) {
+                FileHasher.sha256(file);
+            }
+        });
+    }
+
+    private File writeFile(String name, int size) throws IOException {
+        File file = new File(temp.getRoot(), name);
+        byte[] chunk = ResumableDownloadTest.content(Math.min(size, 1024 * 1024), name.hashCode());
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            for (int written = 0; written < size; written += chunk.length) {
+                fos.write(chunk, 0, Math.min(chunk.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    // What calculateSHA256 did before FileHasher
+    private static String baselineSha256(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = bis.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return StreamingDigest.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,82 @@
+package so.onekey.app.wallet.update;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Robolectric turns {@link Os#link} and {@link Os#rename} into no-ops and reports zero inodes
+ * and link counts from {@link Os#stat}. Tests that depend on hard links run with this shadow,
+ * which does the same calls through the JVM's file system.
+ */
+@Implements(Os.class)
+public class FileSystemOsShadow {
+    @Implementation
+    protected static void link(String oldPath, String newPath) throws ErrnoException {
+        try {
+            Files.createLink(Paths.get(newPath), Paths.get(oldPath));
+        } catch (IOException e) {
+            throw errno("link", e);
+        }
+    }
+
+    @Implementation
+    protected static void rename(String oldPath, String newPath) throws ErrnoException {
+        try {
+            Files.move(Paths.get(oldPath), Paths.get(newPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw errno("rename", e);
+        }
+    }
+
+    @Implementation
+    protected static StructStat stat(String path) throws ErrnoException {
+        try {
+            Map<String, Object> attributes = Files.readAttributes(Paths.get(path), "unix:*");
+            return new StructStat(
+                    ((Number) attributes.get("dev")).longValue(),
+                    ((Number) attributes.get("ino")).longValue(),
+                    (Integer) attributes.get("mode"),
+                    ((Number) attributes.get("nlink")).longValue(),
+                    (Integer) attributes.get("uid"),
+                    (Integer) attributes.get("gid"),
+                    ((Number) attributes.get("rdev")).longValue(),
+                    (Long) attributes.get("size"),
+                    seconds(attributes.get("lastAccessTime")),
+                    seconds(attributes.get("lastModifiedTime")),
+                    seconds(attributes.get("ctime")),
+                    4096,
+                    0);
+        } catch (IOException e) {
+            throw errno("stat", e);
+        }
+    }
+
+    private static long seconds(Object time) {
+        return ((FileTime) time).to(TimeUnit.SECONDS);
+    }
+
+    private static ErrnoException errno(String functionName, IOException e) {
+        int errno = OsConstants.EIO;
+        if (e instanceof NoSuchFileException) {
+            errno = OsConstants.ENOENT;
+        } else if (e instanceof FileAlreadyExistsException) {
+            errno = OsConstants.EEXIST;
+        }
+        return new ErrnoException(functionName, errno, e);
+    }
+}
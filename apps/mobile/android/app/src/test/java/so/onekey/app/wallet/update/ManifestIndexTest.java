@@ -0,0 +1,189 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class ManifestIndexTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void looksUpEveryListedPath() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("main.jsbundle.hbc", ResumableDownloadTest.content(100, 1));
+        // Bytes from 0x80 up sort after ASCII only when compared unsigned
+        files.put("assets/\u00e9t\u00e9.png", ResumableDownloadTest.content(100, 2));
+        files.put("assets/\u65e5\u672c.png", ResumableDownloadTest.content(100, 3));
+        files.put("assets/zebra.png", ResumableDownloadTest.content(100, 4));
+        files.put("assets/Zebra.png", ResumableDownloadTest.content(100, 5));
+        files.put("a", ResumableDownloadTest.content(100, 6));
+        files.put("ab", ResumableDownloadTest.content(100, 7));
+        File dir = writeBundle(BundleExtractorTest.metadataJson(files));
+
+        ManifestIndex index = ManifestIndex.open(dir, metadataSha256(dir));
+
+        assertEquals(files.size(), index.size());
+        assertEquals(metadataSha256(dir), index.metadataSha256());
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(file.getValue());
+            assertTrue(file.getKey(), index.contains(file.getKey()));
+            assertTrue(file.getKey(), index.matches(file.getKey(), digest));
+            assertEquals(ResumableDownloadTest.sha256(file.getValue()), index.digestHex(file.getKey()));
+        }
+        assertEquals(-1, index.find("assets"));
+        assertEquals(-1, index.find("assets/zebra.pn"));
+        assertEquals(-1, index.find("b"));
+        assertNull(index.digestHex("missing.png"));
+    }
+
+    @Test
+    public void rejectsOtherDigests() throws Exception {
+        byte[] content = ResumableDownloadTest.content(100, 1);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("main.jsbundle.hbc", content);
+        File dir = writeBundle(BundleExtractorTest.metadataJson(files));
+        ManifestIndex index = ManifestIndex.open(dir, metadataSha256(dir));
+
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+        digest[31] ^= 1;
+        assertFalse(index.matches("main.jsbundle.hbc", digest));
+        assertFalse(index.matches("main.jsbundle.hbc", Arrays.copyOf(digest, 31)));
+        assertFalse(index.matches("main.jsbundle.hbc", null));
+        assertFalse(index.matches("other", MessageDigest.getInstance("SHA-256").digest(content)));
+    }
+
+    @Test
+    public void lastOfRepeatedPathsWins() throws Exception {
+        String first = ResumableDownloadTest.sha256(new byte[]{1});
+        String last = ResumableDownloadTest.sha256(new byte[]{2});
+        File dir = writeBundle(("{\"a.png\":\"" + first + "\",\"b.png\":\"" + first + "\",\"a.png\":\"" + last + "\"}")
+                .getBytes(StandardCharsets.UTF_8));
+
+        ManifestIndex index = ManifestIndex.open(dir, metadataSha256(dir));
+
+        assertEquals(2, index.size());
+        assertEquals(last, index.digestHex("a.png"));
+    }
+
+    @Test
+    public void rejectsMetadataWithOtherHash() throws Exception {
+        File dir = writeBundle(BundleExtractorTest.metadataJson(singleFile()));
+        String otherSha256 = ResumableDownloadTest.sha256(new byte[]{42});
+
+        try {
+            ManifestIndex.open(dir, otherSha256);
+            fail("Expected metadata.json with another hash to be rejected");
+        } catch (BundleExtractor.VerificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("SHA256 mismatch for metadata.json. Expected: " + otherSha256));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidHex() throws Exception {
+        File dir = writeBundle(BundleExtractorTest.metadataJson(singleFile()));
+        String sha256 = metadataSha256(dir);
+
+        for (String invalid : new String[]{null, "", sha256.substring(2), sha256.substring(2) + "zz"}) {
+            try {
+                ManifestIndex.open(dir, invalid);
+                fail("Expected " + invalid + " to be rejected");
+            } catch (BundleExtractor.VerificationException e) {
+                assertEquals("Invalid SHA256 for metadata.json: " + invalid, e.getMessage());
+            }
+        }
+
+        File badEntry = writeBundle("{\"a.png\":\"not-hex\"}".getBytes(StandardCharsets.UTF_8));
+        try {
+            ManifestIndex.open(badEntry, metadataSha256(badEntry));
+            fail("Expected a listed digest that is not hex to be rejected");
+        } catch (BundleExtractor.VerificationException e) {
+            assertEquals("Invalid SHA256 for file a.png in metadata", e.getMessage());
+        }
+    }
+
+    @Test
+    public void forgedIndexIsIgnored() throws Exception {
+        Map<String, byte[]> files = singleFile();
+        File dir = writeBundle(BundleExtractorTest.metadataJson(files));
+        String sha256 = metadataSha256(dir);
+        // Right layout and source hash, but listing a digest of the attacker's file and no valid MAC
+        byte[] forgedDigest = MessageDigest.getInstance("SHA-256").digest(new byte[]{6, 6, 6});
+        BundleExtractorTest.write(new File(dir, ManifestIndex.FILE_NAME), forgedIndex("main.jsbundle.hbc", forgedDigest, sha256));
+
+        ManifestIndex index = ManifestIndex.open(dir, sha256);
+
+        assertFalse(index.matches("main.jsbundle.hbc", forgedDigest));
+        assertEquals(ResumableDownloadTest.sha256(files.get("main.jsbundle.hbc")), index.digestHex("main.jsbundle.hbc"));
+    }
+
+    @Test
+    public void indexStaysOnHeapWithoutKeyStore() throws Exception {
+        Map<String, byte[]> files = singleFile();
+        File dir = writeBundle(BundleExtractorTest.metadataJson(files));
+        Map<String, String> metadata = ManifestJson.read(BundleExtractorTest.metadataJson(files));
+
+        // The JVM has no AndroidKeyStore, so there is no key to sign an index on disk with
+        ManifestIndex.write(dir, metadata, metadataSha256(dir));
+        ManifestIndex index = ManifestIndex.open(dir, metadataSha256(dir));
+
+        assertFalse(new File(dir, ManifestIndex.FILE_NAME).exists());
+        assertEquals(1, index.size());
+    }
+
+    private File writeBundle(byte[] metadata) throws IOException {
+        File dir = temp.newFolder();
+        BundleExtractorTest.write(new File(dir, BundleExtractor.METADATA_FILE_NAME), metadata);
+        return dir;
+    }
+
+    private static Map<String, byte[]> singleFile() {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("main.jsbundle.hbc", ResumableDownloadTest.content(100, 1));
+        return files;
+    }
+
+    private static String metadataSha256(File dir) throws Exception {
+        return FileHasher.sha256(new File(dir, BundleExtractor.METADATA_FILE_NAME));
+    }
+
+    // One entry in the metadata.idx layout, followed by a MAC made up by whoever wrote the file
+    private static byte[] forgedIndex(String path, byte[] digest, String metadataSha256) throws IOException {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x4f4b4d49);
+        out.writeInt(1);
+        out.writeInt(1);
+        for (int i = 0; i < 32; i++) {
+            out.write(Integer.parseInt(metadataSha256.substring(i * 2, i * 2 + 2), 16));
+        }
+        out.writeInt(0);
+        out.writeInt(pathBytes.length);
+        out.write(digest);
+        out.write(pathBytes);
+        byte[] mac = new byte[32];
+        Arrays.fill(mac, (byte) 0x5a);
+        out.write(mac);
+        return bytes.toByteArray();
+    }
+}
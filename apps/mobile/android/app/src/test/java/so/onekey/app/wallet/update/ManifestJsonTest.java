@@ -0,0 +1,136 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class ManifestJsonTest {
+    private static final String SHA_A = "a665a45920422f9d417e4867efdc4fb8a04a1f3fff1fa07e998e86f7f7a27ae3";
+    private static final String SHA_B = "b3a8e0e1f9ab1bfe3a36f231f676f78bb30a519d2b21e6c530c0eee8ebb4a5d0";
+
+    @Test
+    public void visitsEntriesInDocumentOrder() throws Exception {
+        String json = "{\"main.jsbundle.hbc\":\"" + SHA_A + "\",\n  \"assets/\\u00e9t\\u00e9.png\" : \"" + SHA_B + "\"}";
+        List<String> visited = new ArrayList<>();
+
+        ManifestJson.read(stream(json), (path, sha256) -> visited.add(path + "=" + sha256));
+
+        assertEquals(2, visited.size());
+        assertEquals("main.jsbundle.hbc=" + SHA_A, visited.get(0));
+        assertEquals("assets/\u00e9t\u00e9.png=" + SHA_B, visited.get(1));
+    }
+
+    @Test
+    public void decodesUtf8Paths() throws Exception {
+        String path = "assets/\u65e5\u672c/\u00e9t\u00e9.png";
+        Map<String, String> metadata = ManifestJson.read(("{\"" + path + "\":\"" + SHA_A + "\"}").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(SHA_A, metadata.get(path));
+    }
+
+    @Test
+    public void leavesStreamOpen() throws Exception {
+        byte[] content = ("{\"a\":\"" + SHA_A + "\"}").getBytes(StandardCharsets.UTF_8);
+        boolean[] closed = {false};
+        InputStream in = new ByteArrayInputStream(content) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        ManifestJson.read(in, (path, sha256) -> {
+        });
+
+        assertFalse(closed[0]);
+    }
+
+    @Test
+    public void readsManifestIntoMap() throws Exception {
+        Map<String, String> metadata = ManifestJson.read(("{\"a.png\":\"" + SHA_A + "\",\"b.png\":\"" + SHA_B + "\"}")
+                .getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("a.png", SHA_A);
+        expected.put("b.png", SHA_B);
+        assertEquals(expected, metadata);
+        assertTrue(ManifestJson.read("{}".getBytes(StandardCharsets.UTF_8)).isEmpty());
+    }
+
+    @Test
+    public void rejectsValuesOtherThanStrings() {
+        for (String value : new String[]{"{\"sha256\":\"" + SHA_A + "\"}", "[\"" + SHA_A + "\"]", "true", "null"}) {
+            assertInvalid("{\"a.png\":" + value + "}", "Invalid metadata.json: Expected a SHA256 string for a.png");
+        }
+    }
+
+    @Test
+    public void rejectsMalformedDocuments() {
+        for (String json : new String[]{"", "[]", "{\"a.png\":\"" + SHA_A + "\"", "{\"a.png\" \"" + SHA_A + "\"}", "not json"}) {
+            assertInvalid(json, "Invalid metadata.json: ");
+        }
+    }
+
+    @Test
+    public void visitorErrorsPassThrough() {
+        try {
+            ManifestJson.read(stream("{\"a.png\":\"x\"}"), (path, sha256) -> {
+                throw new BundleExtractor.VerificationException("Invalid SHA256 for file " + path + " in metadata");
+            });
+            fail("Expected the visitor's exception");
+        } catch (BundleExtractor.VerificationException e) {
+            assertEquals("Invalid SHA256 for file a.png in metadata", e.getMessage());
+        }
+    }
+
+    @Test
+    public void readsStringMember() throws Exception {
+        String payload = "{\"version\":2,\"fileName\":\"bundle.zip\",\"nested\":{\"sha256\":\"x\"},\"sha256\":\"" + SHA_A + "\"}";
+
+        assertEquals(SHA_A, ManifestJson.readString(payload, "sha256"));
+        assertEquals("bundle.zip", ManifestJson.readString(payload, "fileName"));
+        // Present but not a string
+        assertNull(ManifestJson.readString(payload, "version"));
+        assertNull(ManifestJson.readString(payload, "missing"));
+    }
+
+    @Test
+    public void readStringRejectsMalformedJson() {
+        try {
+            ManifestJson.readString("{\"sha256\":", "sha256");
+            fail("Expected malformed JSON to be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertInvalid(String json, String messagePrefix) {
+        try {
+            ManifestJson.read(stream(json), (path, sha256) -> {
+            });
+            fail("Expected " + json + " to be rejected");
+        } catch (BundleExtractor.VerificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(messagePrefix));
+        }
+    }
+}
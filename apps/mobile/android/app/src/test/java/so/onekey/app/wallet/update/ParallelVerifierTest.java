@@ -0,0 +1,165 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(RobolectricTestRunner.class)
+public class ParallelVerifierTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void acceptsIntactBundle() throws Exception {
+        File dir = writeBundle(200, 4096);
+
+        assertNull(verifier(dir).verify(dir));
+        assertNull(verifier(dir).verifyInBackground(dir));
+    }
+
+    @Test
+    public void reportsTamperedFile() throws Exception {
+        File dir = writeBundle(200, 4096);
+        BundleExtractorTest.write(new File(dir, "assets/dir2/file42.bin"), ResumableDownloadTest.content(4096, 99));
+
+        String reason = verifier(dir).verify(dir);
+
+        assertTrue(reason, reason.startsWith("SHA256 mismatch for file assets/dir2/file42.bin"));
+    }
+
+    @Test
+    public void unreadableFileIsNotReportedAsTampered() throws Exception {
+        File dir = writeBundle(20, 100);
+        File file = new File(dir, "assets/dir3/file3.bin");
+        assertTrue(file.delete());
+        // Listed and still in the directory, but reading it fails
+        Files.createSymbolicLink(file.toPath(), new File(dir, "gone.bin").toPath());
+
+        ParallelVerifier verifier = verifier(dir);
+        String reason = verifier.verify(dir);
+
+        assertEquals("Failed to calculate SHA256 for file assets/dir3/file3.bin", reason);
+        assertTrue(verifier.failedToRead());
+    }
+
+    @Test
+    public void mismatchIsNotAReadError() throws Exception {
+        File dir = writeBundle(20, 100);
+        BundleExtractorTest.write(new File(dir, "assets/dir3/file3.bin"), new byte[]{1});
+
+        ParallelVerifier verifier = verifier(dir);
+
+        assertTrue(verifier.verify(dir).startsWith("SHA256 mismatch"));
+        assertFalse(verifier.failedToRead());
+    }
+
+    @Test
+    public void reportsUnlistedFile() throws Exception {
+        File dir = writeBundle(20, 100);
+        BundleExtractorTest.write(new File(dir, "assets/injected.js"), new byte[]{1, 2, 3});
+
+        assertEquals("File assets/injected.js not found in metadata", verifier(dir).verify(dir));
+    }
+
+    @Test
+    public void stopsOnceCancelled() throws Exception {
+        File dir = writeBundle(20, 100);
+        ManifestIndex index = ManifestIndex.open(dir, metadataSha256(dir));
+
+        String reason = new ParallelVerifier(index, dir.getAbsolutePath() + File.separator, new AtomicBoolean(true)).verify(dir);
+
+        assertEquals("Verification cancelled", reason);
+    }
+
+    /**
+     * The work-stealing pool against hashing one file after another, from a small bundle up to
+     * web-embed sizes, where per-file overhead dominates over hashing.
+     */
+    @Test
+    public void benchmarkParallelAgainstSequential() throws Exception {
+        Benchmark.assumeEnabled();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int fileCount : new int[]{100, 1000, 10000}) {
+            File dir = writeBundle(fileCount, 8 * 1024);
+            ManifestIndex index = ManifestIndex.open(dir, metadataSha256(dir));
+            String rootPrefix = dir.getAbsolutePath() + File.separator;
+            List<File> files = listFiles(dir);
+
+            long sequential = Benchmark.measure("verify sequential, " + files.size() + " files", () -> {
+                for (File file : files) {
+                    String path = file.getAbsolutePath().substring(rootPrefix.length());
+                    if (!index.matches(path, FileHasher.digest(file))) {
+                        throw new AssertionError(path);
+                    }
+                }
+            });
+            long parallel = Benchmark.measure("verify parallel, " + files.size() + " files, " + cores + " cores", () -> {
+                String reason = new ParallelVerifier(index, rootPrefix).verify(dir);
+                if (reason != null) {
+                    throw new AssertionError(reason);
+                }
+            });
+            System.out.println(String.format(Locale.US, "benchmark verify speedup, %d files: %.2fx",
+                    files.size(), (double) sequential / parallel));
+        }
+    }
+
+    private File writeBundle(int fileCount, int fileSize) throws Exception {
+        File dir = temp.newFolder();
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("main.jsbundle.hbc", ResumableDownloadTest.content(fileSize * 4, 0));
+        for (int i = 0; i < fileCount; i++) {
+            files.put("assets/dir" + (i % 10) + "/file" + i + ".bin", ResumableDownloadTest.content(fileSize, i));
+        }
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            BundleExtractorTest.write(new File(dir, file.getKey()), file.getValue());
+        }
+        BundleExtractorTest.write(new File(dir, BundleExtractor.METADATA_FILE_NAME), BundleExtractorTest.metadataJson(files));
+        return dir;
+    }
+
+    private static String metadataSha256(File dir) throws Exception {
+        return FileHasher.sha256(new File(dir, BundleExtractor.METADATA_FILE_NAME));
+    }
+
+    private static ParallelVerifier verifier(File dir) throws Exception {
+        return new ParallelVerifier(ManifestIndex.open(dir, metadataSha256(dir)), dir.getAbsolutePath() + File.separator);
+    }
+
+    private static List<File> listFiles(File dir) {
+        List<File> files = new ArrayList<>();
+        ArrayDeque<File> pending = new ArrayDeque<>();
+        pending.push(dir);
+        while (!pending.isEmpty()) {
+            File[] children = pending.pop().listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    pending.push(child);
+                } else if (!child.getName().startsWith("metadata.")) {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+}
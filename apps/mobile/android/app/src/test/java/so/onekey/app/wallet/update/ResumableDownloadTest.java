@@ -0,0 +1,225 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResumableDownloadTest {
+    private static final int SIZE = 300 * 1024;
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final OkHttpClient client = new OkHttpClient();
+    private final byte[] content = content(SIZE, 7);
+    private File target;
+    private String url;
+
+    @Before
+    public void setUp() {
+        target = new File(temp.getRoot(), "app.apk");
+        url = server.url("/app.apk").toString();
+    }
+
+    @Test
+    public void freshDownloadRecordsValidatorsAndHashesBody() throws Exception {
+        server.enqueue(new MockResponse().setBody(new Buffer().write(content)).setHeader("ETag", "\"v1\""));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        download.run(null);
+
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertArrayEquals(content, readFile(download.getPartFile()));
+        assertEquals(sha256(content), download.getSha256());
+        DownloadSidecar sidecar = DownloadSidecar.read(sidecarFile());
+        assertEquals("\"v1\"", sidecar.etag);
+        assertEquals(SIZE, sidecar.bytesWritten);
+        assertEquals(SIZE, sidecar.totalBytes);
+
+        assertTrue(download.promote());
+        assertArrayEquals(content, readFile(target));
+        assertFalse(sidecarFile().exists());
+    }
+
+    @Test
+    public void resumesWithRangeAndIfRange() throws Exception {
+        int offset = 100 * 1024;
+        writeInterruptedDownload(offset, "\"v1\"");
+        server.enqueue(new MockResponse().setResponseCode(206)
+                .setHeader("Content-Range", "bytes " + offset + "-" + (SIZE - 1) + "/" + SIZE)
+                .setHeader("ETag", "\"v1\"")
+                .setBody(new Buffer().write(Arrays.copyOfRange(content, offset, SIZE))));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        download.run(null);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("bytes=" + offset + "-", request.getHeader("Range"));
+        assertEquals("\"v1\"", request.getHeader("If-Range"));
+        assertEquals(1, server.getRequestCount());
+        assertArrayEquals(content, readFile(download.getPartFile()));
+        // The prefix from the earlier process is hashed from disk
+        assertEquals(sha256(content), download.getSha256());
+    }
+
+    @Test
+    public void changedResourceReplacesPartFile() throws Exception {
+        int offset = 100 * 1024;
+        writeInterruptedDownload(offset, "\"v1\"");
+        byte[] changed = content(SIZE + 10, 11);
+        // If-Range did not match, the server answers with the whole new body
+        server.enqueue(new MockResponse().setBody(new Buffer().write(changed)).setHeader("ETag", "\"v2\""));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        download.run(null);
+
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-Range"));
+        assertArrayEquals(changed, readFile(download.getPartFile()));
+        assertEquals(sha256(changed), download.getSha256());
+        assertEquals("\"v2\"", DownloadSidecar.read(sidecarFile()).etag);
+    }
+
+    @Test
+    public void unsatisfiableRangeRestartsFromZero() throws Exception {
+        int offset = 100 * 1024;
+        writeInterruptedDownload(offset, "\"v1\"");
+        server.enqueue(new MockResponse().setResponseCode(416));
+        server.enqueue(new MockResponse().setBody(new Buffer().write(content)).setHeader("ETag", "\"v1\""));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        download.run(null);
+
+        assertEquals("bytes=" + offset + "-", server.takeRequest().getHeader("Range"));
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertArrayEquals(content, readFile(download.getPartFile()));
+        assertEquals(sha256(content), download.getSha256());
+    }
+
+    @Test
+    public void mismatchedContentRangeRestartsFromZero() throws Exception {
+        int offset = 100 * 1024;
+        writeInterruptedDownload(offset, "\"v1\"");
+        server.enqueue(new MockResponse().setResponseCode(206)
+                .setHeader("Content-Range", "bytes 0-" + (SIZE - 1) + "/" + SIZE)
+                .setBody(new Buffer().write(content)));
+        server.enqueue(new MockResponse().setBody(new Buffer().write(content)).setHeader("ETag", "\"v1\""));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        download.run(null);
+
+        assertEquals(2, server.getRequestCount());
+        assertArrayEquals(content, readFile(download.getPartFile()));
+        assertEquals(sha256(content), download.getSha256());
+    }
+
+    @Test
+    public void otherUrlDiscardsPartFile() throws Exception {
+        writeInterruptedDownload(100 * 1024, "\"v1\"");
+        DownloadSidecar sidecar = DownloadSidecar.read(sidecarFile());
+        sidecar.url = server.url("/other.apk").toString();
+        sidecar.write(sidecarFile());
+        server.enqueue(new MockResponse().setBody(new Buffer().write(content)));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        download.run(null);
+
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertArrayEquals(content, readFile(download.getPartFile()));
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        ResumableDownload download = new ResumableDownload(client, url, target);
+        try {
+            download.run(null);
+            fail("Expected HTTP 404");
+        } catch (ResumableDownload.HttpStatusException e) {
+            assertEquals(404, e.code);
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void parsesContentRange() {
+        assertEquals(200, ResumableDownload.parseContentRangeStart("bytes 200-1000/67589"));
+        assertEquals(67589, ResumableDownload.parseContentRangeTotal("bytes 200-1000/67589"));
+        assertEquals(-1, ResumableDownload.parseContentRangeTotal("bytes 200-1000/*"));
+        assertEquals(-1, ResumableDownload.parseContentRangeStart("items 200-1000/67589"));
+        assertEquals(-1, ResumableDownload.parseContentRangeStart(null));
+    }
+
+    private File sidecarFile() {
+        return new File(target.getAbsolutePath() + ".part.json");
+    }
+
+    // What an earlier process leaves behind after its last checkpoint at offset
+    private void writeInterruptedDownload(int offset, String etag) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(new File(target.getAbsolutePath() + ".part"))) {
+            fos.write(content, 0, offset);
+        }
+        DownloadSidecar sidecar = new DownloadSidecar(url);
+        sidecar.etag = etag;
+        sidecar.bytesWritten = offset;
+        sidecar.totalBytes = SIZE;
+        sidecar.write(sidecarFile());
+    }
+
+    static byte[] content(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + seed + (i >> 8));
+        }
+        return bytes;
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = fis.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+        }
+        return bytes;
+    }
+
+    static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
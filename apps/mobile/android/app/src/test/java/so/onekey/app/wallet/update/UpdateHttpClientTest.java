@@ -0,0 +1,194 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import okio.Buffer;
+
+@RunWith(RobolectricTestRunner.class)
+public class UpdateHttpClientTest {
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final byte[] content = ResumableDownloadTest.content(10 * 1024 * 1024 + 123, 3);
+    private final RangeDispatcher dispatcher = new RangeDispatcher(content);
+    private HandshakeCertificates clientCertificates;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() {
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName(server.getHostName())
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(localhost)
+                .build();
+        clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(localhost.certificate())
+                .build();
+        server.useHttps(serverCertificates.sslSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.setDispatcher(dispatcher);
+        // Only the trust store differs, the pool and dispatcher are the shared ones
+        client = UpdateHttpClient.get().newBuilder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        UpdateHttpClient.get().connectionPool().evictAll();
+    }
+
+    @Test
+    public void sharesOnePoolAndDispatcher() {
+        assertSame(UpdateHttpClient.get(), UpdateHttpClient.get());
+        assertSame(UpdateHttpClient.get().connectionPool(), client.connectionPool());
+        assertSame(UpdateHttpClient.get().dispatcher(), client.dispatcher());
+        assertEquals(4, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), client.protocols());
+    }
+
+    @Test
+    public void reusesConnectionAcrossCalls() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Request request = new Request.Builder().url(server.url("/bundle.zip")).header("Range", "bytes=0-99").build();
+            try (Response response = client.newCall(request).execute()) {
+                assertEquals(Protocol.HTTP_2, response.protocol());
+                assertEquals(206, response.code());
+                assertArrayEquals(Arrays.copyOf(content, 100), response.body().bytes());
+            }
+        }
+
+        assertEquals(1, countNewConnections(takeRequests(3)));
+        assertEquals(1, client.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void segmentedClientSharesPoolAndDispatcherOverHttp11() {
+        OkHttpClient segmented = UpdateHttpClient.segmented();
+
+        assertSame(segmented, UpdateHttpClient.segmented());
+        assertSame(UpdateHttpClient.get().connectionPool(), segmented.connectionPool());
+        assertSame(UpdateHttpClient.get().dispatcher(), segmented.dispatcher());
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), segmented.protocols());
+    }
+
+    @Test
+    public void segmentedDownloadUsesOneConnectionPerSegment() throws Exception {
+        // Each chunk holds its connection long enough for both initial segments to overlap
+        dispatcher.chunkDelayMs = 300;
+        OkHttpClient segmented = UpdateHttpClient.segmented().newBuilder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .build();
+        File target = new File(temp.getRoot(), "app.apk");
+        SegmentedDownload download = new SegmentedDownload(segmented, server.url("/app.apk").toString(), target);
+        download.run(null);
+
+        assertArrayEquals(content, ResumableDownloadTest.readFile(download.getPartFile()));
+        assertEquals(ResumableDownloadTest.sha256(content), download.getSha256());
+        // The probe and the three 4 MB chunks
+        int requests = server.getRequestCount();
+        assertEquals(4, requests);
+        List<RecordedRequest> recorded = takeRequests(requests);
+        assertEquals("bytes=0-0", recorded.get(0).getHeader("Range"));
+        for (RecordedRequest chunk : recorded.subList(1, requests)) {
+            assertEquals(ETAG, chunk.getHeader("If-Range"));
+        }
+        // Two segments run from the start, the second one opens its own connection
+        assertEquals(2, countNewConnections(recorded));
+        assertEquals(2, dispatcher.maxActiveChunks);
+    }
+
+    private List<RecordedRequest> takeRequests(int count) throws InterruptedException {
+        List<RecordedRequest> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(server.takeRequest());
+        }
+        return requests;
+    }
+
+    // MockWebServer numbers the requests of each connection from zero
+    private static int countNewConnections(List<RecordedRequest> requests) {
+        int connections = 0;
+        for (RecordedRequest request : requests) {
+            if (request.getSequenceNumber() == 0) {
+                connections++;
+            }
+        }
+        return connections;
+    }
+
+    /**
+     * Serves {@code Range: bytes=<start>-<end>} requests of one resource with a fixed ETag, and
+     * counts how many chunk requests were in flight at once.
+     */
+    private static class RangeDispatcher extends Dispatcher {
+        private final byte[] content;
+        private final AtomicInteger activeChunks = new AtomicInteger();
+        volatile long chunkDelayMs;
+        volatile int maxActiveChunks;
+
+        RangeDispatcher(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String range = request.getHeader("Range");
+            if (range == null) {
+                return new MockResponse().setHeader("ETag", ETAG).setBody(new Buffer().write(content));
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : content.length - 1;
+            if (end > start && chunkDelayMs > 0) {
+                int active = activeChunks.incrementAndGet();
+                synchronized (this) {
+                    maxActiveChunks = Math.max(maxActiveChunks, active);
+                }
+                try {
+                    Thread.sleep(chunkDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    activeChunks.decrementAndGet();
+                }
+            }
+            return new MockResponse().setResponseCode(206)
+                    .setHeader("ETag", ETAG)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length)
+                    .setBody(new Buffer().write(content, start, end - start + 1));
+        }
+    }
+}
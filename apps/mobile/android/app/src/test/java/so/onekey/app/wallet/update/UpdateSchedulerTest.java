@@ -0,0 +1,263 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class UpdateSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final UpdateScheduler scheduler = new UpdateScheduler(1, (jobId, message) -> {
+    });
+
+    @Test
+    public void runsQueuedJobsByPriorityThenSubmissionOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Holds the only disk worker so everything below is queued behind it
+        scheduler.submit(UpdateScheduler.JobType.CLEANUP, "blocker", null, token -> await(release), null);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(4);
+        for (String name : new String[]{"cleanup", "verify", "install", "unzip"}) {
+            UpdateScheduler.JobType type = UpdateScheduler.JobType.valueOf(name.toUpperCase());
+            scheduler.submit(type, name, null, token -> order.add(name), (job, error) -> done.countDown());
+        }
+
+        release.countDown();
+        await(done);
+
+        // UNZIP and VERIFY share a priority, so they keep the order they were submitted in
+        assertEquals(Arrays.asList("install", "verify", "unzip", "cleanup"), order);
+    }
+
+    @Test
+    public void eachLaneRunsUpToItsParallelism() throws Exception {
+        UpdateScheduler wide = new UpdateScheduler(2, (jobId, message) -> {
+        });
+        ConcurrencyProbe disk = new ConcurrencyProbe();
+        ConcurrencyProbe network = new ConcurrencyProbe();
+        CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 4; i++) {
+            wide.submit(UpdateScheduler.JobType.CLEANUP, "cleanup", null, token -> disk.run(), (job, error) -> done.countDown());
+            wide.submit(UpdateScheduler.JobType.DOWNLOAD, "download", null, token -> network.run(), (job, error) -> done.countDown());
+        }
+
+        await(done);
+
+        assertEquals(2, disk.max.get());
+        assertEquals(1, network.max.get());
+    }
+
+    @Test
+    public void metadataDoesNotWaitBehindDownload() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(UpdateScheduler.JobType.DOWNLOAD, "download", null, token -> await(release), null);
+        CountDownLatch fetched = new CountDownLatch(1);
+
+        scheduler.submit(UpdateScheduler.JobType.METADATA, "fetchSignature", null, token -> fetched.countDown(), null);
+
+        try {
+            await(fetched);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void sameTypeAndKeyJoinsActiveJob() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch notified = new CountDownLatch(2);
+        UpdateScheduler.Task task = token -> {
+            runs.incrementAndGet();
+            await(release);
+        };
+        UpdateScheduler.Listener listener = (job, error) -> {
+            errors.add(error);
+            notified.countDown();
+        };
+
+        UpdateScheduler.Job first = scheduler.submit(UpdateScheduler.JobType.DOWNLOAD, "download", "1.0.0-1", task, listener);
+        UpdateScheduler.Job joined = scheduler.submit(UpdateScheduler.JobType.DOWNLOAD, "download", "1.0.0-1", task, listener);
+        UpdateScheduler.Job otherKey = scheduler.submit(UpdateScheduler.JobType.DOWNLOAD, "download", "1.0.0-2", token -> {
+        }, null);
+        UpdateScheduler.Job otherType = scheduler.submit(UpdateScheduler.JobType.VERIFY, "verify", "1.0.0-1", token -> {
+        }, null);
+        release.countDown();
+        await(notified);
+
+        assertSame(first, joined);
+        assertNotSame(first, otherKey);
+        assertNotSame(first, otherType);
+        assertEquals(1, runs.get());
+        // Both callers hear about the one run
+        assertEquals(Arrays.asList(null, null), errors);
+        assertEquals(UpdateScheduler.JobState.SUCCEEDED, first.getState());
+        assertNull(scheduler.findActive(UpdateScheduler.JobType.DOWNLOAD, "1.0.0-1"));
+
+        // Once finished, the key starts a new job
+        UpdateScheduler.Job next = scheduler.submit(UpdateScheduler.JobType.DOWNLOAD, "download", "1.0.0-1", token -> {
+        }, null);
+        assertNotSame(first, next);
+    }
+
+    @Test
+    public void cancelledQueuedJobNeverRuns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(UpdateScheduler.JobType.CLEANUP, "blocker", null, token -> await(release), null);
+        AtomicInteger runs = new AtomicInteger();
+        List<Exception> errors = new ArrayList<>();
+        UpdateScheduler.Job queued = scheduler.submit(UpdateScheduler.JobType.VERIFY, "verify", null,
+                token -> runs.incrementAndGet(), (job, error) -> errors.add(error));
+
+        queued.cancel();
+
+        // Finished right away, without waiting for a worker
+        assertEquals(UpdateScheduler.JobState.CANCELLED, queued.getState());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof CancellationException);
+        CountDownLatch drained = new CountDownLatch(1);
+        scheduler.submit(UpdateScheduler.JobType.CLEANUP, "after", null, token -> {
+        }, (job, error) -> drained.countDown());
+        release.countDown();
+        await(drained);
+        assertEquals(0, runs.get());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void cancellingRunningJobFiresTokenCallbacks() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch aborted = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        Exception[] error = new Exception[1];
+        UpdateScheduler.Job job = scheduler.submit(UpdateScheduler.JobType.DOWNLOAD, "download", null, token -> {
+            // Stands in for closing the socket of an in-flight call
+            token.onCancel(aborted::countDown);
+            started.countDown();
+            await(aborted);
+            token.throwIfCancelled();
+            fail("Expected the token to be cancelled");
+        }, (finishedJob, e) -> {
+            error[0] = e;
+            finished.countDown();
+        });
+        await(started);
+        assertEquals(UpdateScheduler.JobState.RUNNING, job.getState());
+
+        job.cancel();
+        await(finished);
+
+        assertEquals(UpdateScheduler.JobState.CANCELLED, job.getState());
+        assertTrue(error[0] instanceof CancellationException);
+    }
+
+    @Test
+    public void taskIgnoringCancellationStillEndsCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        UpdateScheduler.Job job = scheduler.submit(UpdateScheduler.JobType.UNZIP, "unzip", null, token -> {
+            started.countDown();
+            await(release);
+        }, (finishedJob, e) -> finished.countDown());
+        await(started);
+
+        job.cancel();
+        release.countDown();
+        await(finished);
+
+        assertEquals(UpdateScheduler.JobState.CANCELLED, job.getState());
+    }
+
+    @Test
+    public void onCancelRunsAtOnceWhenAlreadyCancelled() {
+        UpdateScheduler.CancellationToken token = new UpdateScheduler.CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+
+        token.cancel();
+        token.cancel();
+        token.onCancel(calls::incrementAndGet);
+
+        assertTrue(token.isCancelled());
+        assertEquals(2, calls.get());
+        try {
+            token.throwIfCancelled();
+            fail("Expected a CancellationException");
+        } catch (CancellationException expected) {
+        }
+    }
+
+    @Test
+    public void snapshotListsActiveJobsOldestFirst() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        UpdateScheduler.Job running = scheduler.submit(UpdateScheduler.JobType.CLEANUP, "cleanup", null, token -> {
+            started.countDown();
+            await(release);
+        }, (job, error) -> done.countDown());
+        await(started);
+        UpdateScheduler.Job queued = scheduler.submit(UpdateScheduler.JobType.INSTALL, "install", null, token -> {
+        }, (job, error) -> done.countDown());
+
+        List<UpdateScheduler.Job> snapshot = scheduler.snapshot();
+
+        assertEquals(Arrays.asList(running, queued), snapshot);
+        assertEquals(UpdateScheduler.JobState.RUNNING, running.getState());
+        assertEquals(UpdateScheduler.JobState.QUEUED, queued.getState());
+        assertTrue(running.id.startsWith("cleanup#"));
+        assertFalse(running.isFinished());
+        try {
+            snapshot.clear();
+            fail("Expected the snapshot to be read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        release.countDown();
+        await(done);
+        assertTrue(scheduler.snapshot().isEmpty());
+        assertEquals(2, snapshot.size());
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("Timed out waiting for the scheduler");
+        }
+    }
+
+    // Counts how many tasks are inside run() at once
+    private static class ConcurrencyProbe {
+        private final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+
+        void run() throws InterruptedException {
+            int now = active.incrementAndGet();
+            max.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(100);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package so.onekey.app.wallet.update;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.crypto.spec.SecretKeySpec;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = FileSystemOsShadow.class)
+public class VerifiedBundleCacheTest {
+    private static final String VERSION = "1.0.0-1";
+    private static final String SIGNATURE = "-----BEGIN PGP SIGNED MESSAGE-----";
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private final Context context = RuntimeEnvironment.getApplication();
+    private File metadataFile;
+    private File mainBundleFile;
+
+    @Before
+    public void setUp() throws Exception {
+        VerifiedBundleCache.setKey(new SecretKeySpec(ResumableDownloadTest.content(32, 1), "HmacSHA256"));
+        metadataFile = new File(temp.getRoot(), BundleExtractor.METADATA_FILE_NAME);
+        mainBundleFile = new File(temp.getRoot(), "main.jsbundle.hbc");
+        BundleExtractorTest.write(metadataFile, ResumableDownloadTest.content(300, 2));
+        BundleExtractorTest.write(mainBundleFile, ResumableDownloadTest.content(64 * 1024, 3));
+        // Whole seconds, so a changed mtime survives file systems with coarse timestamps
+        metadataFile.setLastModified(1_700_000_000_000L);
+        mainBundleFile.setLastModified(1_700_000_000_000L);
+        VerifiedBundleCache.markVerified(context, VERSION, SIGNATURE,
+                metadataFile, ResumableDownloadTest.sha256(ResumableDownloadTest.readFile(metadataFile)),
+                mainBundleFile, ResumableDownloadTest.sha256(ResumableDownloadTest.readFile(mainBundleFile)));
+    }
+
+    @After
+    public void tearDown() {
+        VerifiedBundleCache.clear(context);
+        VerifiedBundleCache.setKey(null);
+    }
+
+    @Test
+    public void unchangedFilesStayVerified() {
+        assertTrue(isVerified());
+    }
+
+    @Test
+    public void changedSizeInvalidatesRecord() throws Exception {
+        try (FileOutputStream fos = new FileOutputStream(mainBundleFile, true)) {
+            fos.write(0);
+        }
+        mainBundleFile.setLastModified(1_700_000_000_000L);
+
+        assertFalse(isVerified());
+    }
+
+    @Test
+    public void changedMtimeInvalidatesRecord() {
+        assertTrue(metadataFile.setLastModified(1_700_000_002_000L));
+
+        assertFalse(isVerified());
+    }
+
+    @Test
+    public void changedInodeInvalidatesRecord() throws Exception {
+        // Same bytes and mtime, but a different file moved into place
+        File copy = new File(temp.getRoot(), "copy");
+        Files.copy(mainBundleFile.toPath(), copy.toPath());
+        copy.setLastModified(mainBundleFile.lastModified());
+        Object inode = Files.getAttribute(mainBundleFile.toPath(), "unix:ino");
+        Files.move(copy.toPath(), mainBundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertNotEquals(inode, Files.getAttribute(mainBundleFile.toPath(), "unix:ino"));
+
+        assertFalse(isVerified());
+    }
+
+    @Test
+    public void otherSignatureOrVersionIsNotVerified() {
+        assertFalse(VerifiedBundleCache.isVerified(context, VERSION, SIGNATURE + "\n", metadataFile, mainBundleFile));
+        assertFalse(VerifiedBundleCache.isVerified(context, "1.0.0-2", SIGNATURE, metadataFile, mainBundleFile));
+    }
+
+    @Test
+    public void invalidateDropsRecord() {
+        VerifiedBundleCache.invalidate(context, VERSION);
+
+        assertFalse(isVerified());
+    }
+
+    @Test
+    public void recordFromAnotherKeyIsRejected() {
+        VerifiedBundleCache.setKey(new SecretKeySpec(ResumableDownloadTest.content(32, 9), "HmacSHA256"));
+
+        assertFalse(isVerified());
+    }
+
+    @Test
+    public void cacheIsDisabledWithoutKeyStore() {
+        // Back to the AndroidKeyStore, which the JVM does not have
+        VerifiedBundleCache.setKey(null);
+        VerifiedBundleCache.markVerified(context, VERSION, SIGNATURE, metadataFile, "", mainBundleFile, "");
+
+        assertFalse(isVerified());
+    }
+
+    private boolean isVerified() {
+        return VerifiedBundleCache.isVerified(context, VERSION, SIGNATURE, metadataFile, mainBundleFile);
+    }
+}
@@ -385,7 +385,16 @@ export const useDownloadPackage = () => {
         downloadUrl: isJsBundle ? jsBundle?.downloadUrl : downloadUrl,
         fileSize: isJsBundle ? jsBundle?.fileSize : params.fileSize ?? 0,
         sha256: isJsBundle ? jsBundle?.sha256 : undefined,
+        filesUrl: isJsBundle ? jsBundle?.filesUrl : undefined,
         headers,
+        ...(isJsBundle && jsBundle?.patch
+          ? {
+              patchUrl: jsBundle.patch.downloadUrl,
+              patchSha256: jsBundle.patch.sha256,
+              patchFileSize: jsBundle.patch.fileSize,
+              patchBaseVersion: jsBundle.patch.baseBundleVersion,
+            }
+          : {}),
       };
       defaultLogger.app.appUpdate.startDownload(downloadParams);
       const result =
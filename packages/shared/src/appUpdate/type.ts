@@ -38,6 +38,15 @@ export interface IBasicAppUpdateInfo {
     fileSize?: number;
     sha256?: string;
     signature?: string;
+    /* delta from baseBundleVersion to this bundle */
+    patch?: {
+      downloadUrl?: string;
+      fileSize?: number;
+      sha256?: string;
+      baseBundleVersion?: string;
+    };
+    /* base url of the unpacked bundle, files live at <filesUrl>/<path in metadata.json> */
+    filesUrl?: string;
   };
 }
 
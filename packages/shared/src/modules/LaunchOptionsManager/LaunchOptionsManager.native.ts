@@ -96,6 +96,24 @@ const LaunchOptionsManagerModule: ILaunchOptionsManagerInterface = {
     }
     return Promise.resolve(true);
   },
+  getStartupTrace: () => {
+    if (LaunchOptionsManager && LaunchOptionsManager.getStartupTrace) {
+      return LaunchOptionsManager.getStartupTrace();
+    }
+    return Promise.resolve([]);
+  },
+  getStartupTraceJson: () => {
+    if (LaunchOptionsManager && LaunchOptionsManager.getStartupTraceJson) {
+      return LaunchOptionsManager.getStartupTraceJson();
+    }
+    return Promise.resolve('');
+  },
+  markStartupTrace: (name: string) => {
+    if (LaunchOptionsManager && LaunchOptionsManager.markStartupTrace) {
+      return LaunchOptionsManager.markStartupTrace(name);
+    }
+    return Promise.resolve(false);
+  },
 };
 
 export default LaunchOptionsManagerModule;
@@ -52,6 +52,15 @@ const LaunchOptionsManager: ILaunchOptionsManagerInterface = {
   registerDeviceToken: () => {
     return Promise.resolve(true);
   },
+  getStartupTrace: () => {
+    return Promise.resolve([]);
+  },
+  getStartupTraceJson: () => {
+    return Promise.resolve('');
+  },
+  markStartupTrace: () => {
+    return Promise.resolve(false);
+  },
 };
 
 export default LaunchOptionsManager;
@@ -19,6 +19,19 @@ export interface ILaunchOptionsManagerInterface {
   getJsReadyFromPerformanceNow(): Promise<number>;
   getUIVisibleFromPerformanceNow(): Promise<number>;
   registerDeviceToken(): Promise<boolean>;
+  getStartupTrace(): Promise<IStartupTraceSpan[]>;
+  getStartupTraceJson(): Promise<string>;
+  markStartupTrace(name: string): Promise<boolean>;
+}
+
+export interface IStartupTraceSpan {
+  name: string;
+  // Milliseconds since Application.onCreate, negative for the process start
+  startMs: number;
+  // -1 while the span is still open
+  durationMs: number;
+  depth: number;
+  threadId: number;
 }
 
 export enum ELaunchOptionsLaunchType {
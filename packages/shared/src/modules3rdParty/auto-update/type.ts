@@ -13,6 +13,13 @@ export interface IDownloadPackageParams {
   downloadedFile?: string;
   headers?: Record<string, string>;
   targetVersion?: string;
+  /* binary delta against the running bundle, native falls back to downloadUrl */
+  patchUrl?: string;
+  patchSha256?: string;
+  patchFileSize?: number;
+  patchBaseVersion?: string;
+  /* unpacked bundle, only files that differ from the running bundle are fetched */
+  filesUrl?: string;
 }
 
 export type IUpdateDownloadedEvent =
@@ -9,6 +9,16 @@ interface IFileParams {
   filePath: string;
 }
 
+// queued or running APK / bundle update work on the shared native scheduler
+export interface INativeUpdateJob {
+  id: string;
+  type: 'download' | 'metadata' | 'verify' | 'unzip' | 'install' | 'cleanup';
+  key: string | null;
+  state: 'queued' | 'running';
+  queuedMs: number;
+  runningMs: number;
+}
+
 type INativeBundleUpdateModule = {
   addListener: (eventType: string) => void;
   removeListeners: (count: number) => void;
@@ -45,6 +55,7 @@ type INativeBundleUpdateModule = {
   getNativeAppVersion: () => Promise<string>;
   getJsBundlePath: () => Promise<string>;
   getSha256FromFilePath: (filePath: string) => Promise<string>;
+  getUpdateJobs: () => Promise<INativeUpdateJob[]>;
 };
 
 export type IReactNativeModules = {